@@ -405,7 +405,7 @@ public class FsBucketDriverImpl implements IBucketDriver {
 	@Override
 	public IBucketDriver createBucketObject(final IBucketObjectName name, ReadStream<Buffer> is, Handler<AsyncResult<Void>> handler) {
 		String path = resolvedPath((FsBucketObjectName) name);
-		fileSystem.open(path, new OpenOptions(), result -> {
+		fileSystem.open(path, new OpenOptions().setTruncateExisting(true), result -> {
 			if (result.succeeded()) {
 				AsyncFile file = result.result();
 				Future<Void> pfut = is.pipeTo(file);
@@ -421,7 +421,7 @@ public class FsBucketDriverImpl implements IBucketDriver {
 	@Override
 	public IBucketDriver createBucketObject(final IBucketObjectName name, Handler<AsyncResult<WriteStream<Buffer>>> handler) {
 		String path = resolvedPath((FsBucketObjectName) name);
-		fileSystem.open(path, new OpenOptions(), result -> {
+		fileSystem.open(path, new OpenOptions().setTruncateExisting(true), result -> {
 			if (result.succeeded()) {
 				AsyncFile file = result.result();
 				AsyncResult<WriteStream<Buffer>> ffut = Future.succeededFuture(file);
@@ -0,0 +1,47 @@
+#!/bin/bash
+# Startup benchmark: the time from launching Hairball to its first rendered output, for a
+# small script read from a file and from standard input, with and without the class data
+# sharing archive made by ./gradlew :hairball:appCds. The median of each is printed, in ms.
+#
+# usage: startup.sh [launcher] [runs]
+#   launcher defaults to the installed application, build/install/hairball/bin/hairball
+#   runs defaults to 10
+cd "$(dirname "$0")"
+LAUNCHER=${1:-../../../build/install/hairball/bin/hairball}
+RUNS=${2:-10}
+
+now() {
+	date +%s%N
+}
+
+# Run the launcher once with the given JAVA_OPTS and input, printing ms to first output.
+first_output() {
+	local opts=$1 input=$2 start first
+	start=$(now)
+	if [ "$input" == "-" ]; then
+		JAVA_OPTS="$opts" "$LAUNCHER" < startup.hairball
+	else
+		JAVA_OPTS="$opts" "$LAUNCHER" "$input"
+	fi | {
+		grep -q -m1 "startup benchmark" # not the console's prompt
+		first=$(now)
+		cat > /dev/null
+		echo $(( (first - start) / 1000000 ))
+	}
+}
+
+median() {
+	sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+report() {
+	local label=$1 opts=$2 input=$3
+	local times=$(for ((i = 0; i < RUNS; i++)); do first_output "$opts" "$input"; done)
+	printf "%-24s %6s ms\n" "$label" "$(echo "$times" | median)"
+}
+
+echo "Time to first output, median of $RUNS runs"
+report "file" "" startup.hairball
+report "file, no sharing" "-Xshare:off" startup.hairball
+report "stdin" "" -
+report "stdin, no sharing" "-Xshare:off" -
@@ -0,0 +1,151 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+import com.giantelectronicbrain.catfood.buckets.IBucketDriver;
+import com.giantelectronicbrain.catfood.buckets.IBucketObjectName;
+import com.giantelectronicbrain.catfood.buckets.fs.FsBucketDriverImpl;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * An output which streams into a bucket object. Text is buffered just as in BufferedOutput
+ * and each full buffer is written to the bucket's WriteStream. When the stream's write
+ * queue is full we wait for it to drain, so a slow bucket holds up the document rather
+ * than having everything queue up in memory.
+ * 
+ * Opening, writing and closing all wait on the event loop, so a BucketOutput must not be
+ * used from an event loop thread.
+ * 
+ * Given an UnchangedWrites an object in a file system bucket is written to a temporary
+ * object beside it and hashed on the way, and the object is only replaced on close if
+ * its content has changed. Other drivers have no way to replace an object atomically,
+ * so they are always written.
+ * 
+ * @author tharter
+ *
+ */
+public class BucketOutput extends BufferedOutput {
+	public static final long TIME_OUT = WriteStreamChannel.TIME_OUT; // seconds to wait for the bucket
+	
+	private final WriteStreamChannel channel;
+	private final Path target;
+	private final Path temporary;
+	private final UnchangedWrites writes;
+	
+	/**
+	 * Create an output which writes a bucket object, replacing it if it exists.
+	 * 
+	 * @param driver the bucket driver
+	 * @param objectName the name of the object
+	 * @throws IOException if the object can't be created
+	 */
+	public BucketOutput(IBucketDriver driver, IBucketObjectName objectName) throws IOException {
+		this(new WriteStreamChannel(open(driver,objectName),objectName.getName(),null), null, null, null);
+	}
+	
+	/**
+	 * Create an output which writes an object in a file system bucket.
+	 * 
+	 * @param fileSystem Vertx file system to use
+	 * @param objectName name of the object
+	 * @param bucketName name of the bucket it goes in
+	 * @throws IOException if the object can't be created
+	 */
+	public BucketOutput(FileSystem fileSystem, String objectName, String bucketName) throws IOException {
+		this(driver(fileSystem), objectName, bucketName);
+	}
+	
+	/**
+	 * Create an output which writes an object in a file system bucket only if what is
+	 * written differs from what is there.
+	 * 
+	 * @param fileSystem Vertx file system to use
+	 * @param objectName name of the object
+	 * @param bucketName name of the bucket it goes in
+	 * @param writes where to count the object as written or unchanged
+	 * @throws IOException if the temporary object can't be created
+	 */
+	public BucketOutput(FileSystem fileSystem, String objectName, String bucketName, UnchangedWrites writes) throws IOException {
+		this(driver(fileSystem), objectName, bucketName, Paths.get(bucketName, objectName), writes);
+	}
+	
+	private BucketOutput(IBucketDriver driver, String objectName, String bucketName) throws IOException {
+		this(driver, driver.makeBucketObjectName(driver.makeBucketName(bucketName), objectName));
+	}
+	
+	private BucketOutput(IBucketDriver driver, String objectName, String bucketName, Path target, UnchangedWrites writes) throws IOException {
+		this(driver, objectName.substring(0, objectName.lastIndexOf('/') + 1), bucketName, target,
+				UnchangedWrites.temporaryFor(target), writes);
+	}
+	
+	private BucketOutput(IBucketDriver driver, String directory, String bucketName, Path target, Path temporary,
+			UnchangedWrites writes) throws IOException {
+		this(new WriteStreamChannel(open(driver, driver.makeBucketObjectName(driver.makeBucketName(bucketName),
+				directory + temporary.getFileName())), target.toString(), UnchangedWrites.newDigest()),
+				target, temporary, writes);
+	}
+	
+	private BucketOutput(WriteStreamChannel channel, Path target, Path temporary, UnchangedWrites writes) {
+		super(channel, DEFAULT_SIZE, true);
+		this.channel = channel;
+		this.target = target;
+		this.temporary = temporary;
+		this.writes = writes;
+	}
+	
+	private static IBucketDriver driver(FileSystem fileSystem) {
+		return FsBucketDriverImpl.builder().fileSystem(fileSystem).build();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(writes == null || !channel.isOpen()) {
+			super.close();
+			return;
+		}
+		try {
+			super.close();
+		} catch (IOException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		writes.replace(temporary, target, channel.getDigest().digest());
+	}
+	
+	private static WriteStream<Buffer> open(IBucketDriver driver, IBucketObjectName objectName) throws IOException {
+		if(Context.isOnEventLoopThread())
+			throw new IOException("A BucketOutput can't be opened on an event loop thread");
+		CompletableFuture<WriteStream<Buffer>> opened = new CompletableFuture<>();
+		driver.createBucketObject(objectName, result -> {
+			if(result.succeeded())
+				opened.complete(result.result());
+			else
+				opened.completeExceptionally(result.cause());
+		});
+		return WriteStreamChannel.await(opened, "open "+objectName.getName());
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import io.vertx.core.file.FileSystem;
+
+/**
+ * Loads vocabularies on demand from a search path of buckets. A vocabulary called
+ * /HTML is looked for as html.hairball in each bucket in turn, and then as
+ * HTML.hairball. The first one found is parsed into the dictionary which asked for
+ * it, with its output thrown away. The source is parsed by the interpreter of the
+ * engine which asked for it, so the engine's compiler, token limit and platform apply
+ * to it too. Names which can't be found aren't remembered, since a long running engine
+ * should find a vocabulary which is added to the path later.
+ * 
+ * @author tharter
+ *
+ */
+public class BucketVocabularyLoader implements IVocabularyLoader {
+	private static final Logger log = StandAloneHairball.PLATFORM.getLogger(BucketVocabularyLoader.class.getName());
+	public static final String SUFFIX = ".hairball";
+	
+	private final FileSystem fileSystem;
+	private final List<String> path;
+
+	/**
+	 * Create a loader.
+	 * 
+	 * @param fileSystem file system the buckets live in
+	 * @param path buckets to search, in order
+	 */
+	public BucketVocabularyLoader(FileSystem fileSystem, List<String> path) {
+		this.fileSystem = fileSystem;
+		this.path = new ArrayList<>(path);
+	}
+
+	@Override
+	public boolean load(String name, Dictionary dictionary) throws HairballException {
+		return load(name, dictionary, null);
+	}
+
+	@Override
+	public boolean load(String name, Dictionary dictionary, Interpreter interpreter) throws HairballException {
+		for(String bucket : path) {
+			for(String objectName : objectNames(name)) {
+				if(fileSystem.existsBlocking(bucket + "/" + objectName)) {
+					log.fine("loading vocabulary "+name+" from "+bucket+"/"+objectName);
+					parse(new BucketWordStream(fileSystem, objectName, bucket), dictionary, interpreter, name);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Work out the object names a vocabulary might be stored under.
+	 * 
+	 * @param name vocabulary name
+	 * @return object names to try, in order
+	 */
+	private static List<String> objectNames(String name) {
+		List<String> names = new ArrayList<>(2);
+		String bare = name.startsWith("/") ? name.substring(1) : name;
+		String lower = bare.toLowerCase(Locale.ROOT);
+		names.add(lower + SUFFIX);
+		if(!lower.equals(bare)) names.add(bare + SUFFIX);
+		return names;
+	}
+	
+	/**
+	 * Parse a vocabulary source into a dictionary. Given the interpreter of the engine the
+	 * dictionary belongs to, the source is parsed on it with just the word stream and output
+	 * swapped, as SourceIncludes does, otherwise with a parser of its own.
+	 */
+	private static void parse(IWordStream wordStream, Dictionary dictionary, Interpreter interpreter, String name)
+			throws HairballException {
+		ParserContext context = interpreter == null ? null : interpreter.getParserContext();
+		if(context == null || context.getDictionary() != dictionary) {
+			Parser parser = new Parser();
+			interpreter = new Interpreter();
+			context = new ParserContext(wordStream, dictionary, interpreter, new NullOutput(), parser,
+					StandAloneHairball.PLATFORM);
+			interpreter.setParserContext(context);
+			parser.setParserContext(context);
+		}
+		Parser parser = context.getParser();
+		boolean interpreting = parser.isInterpreting();
+		IWordStream engineStream = context.getWordStream();
+		Output engineOutput = context.getOutput();
+		context.setWordStream(wordStream);
+		context.setOutput(new NullOutput());
+		parser.interpret();
+		try {
+			parser.parse();
+		} catch (IOException e) {
+			throw new HairballException("Failed to load vocabulary "+name, e);
+		} finally {
+			context.setWordStream(engineStream);
+			context.setOutput(engineOutput);
+			if(interpreting) parser.interpret(); else parser.compile();
+		}
+	}
+}
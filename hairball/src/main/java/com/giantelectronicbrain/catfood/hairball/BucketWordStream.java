@@ -144,13 +144,11 @@ public class BucketWordStream extends WordStream {
 	@Override
 	public String getCurrentLocation() {
 		String name = boName.getName();
+		String bucket = bucketName.getNameString();
 		int lidx = name.lastIndexOf('/');
 		if(lidx != -1)
-			name = name.substring(0, lidx);
-		else
-			name = ".";
-		return name;
-//		return bucketName.getNameString();
+			return bucket + "/" + name.substring(0, lidx);
+		return bucket;
 	}
 
 }
@@ -0,0 +1,163 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An output which encodes text as UTF-8 straight into a direct buffer, using the
+ * same encoder for every emit, and only writes when the buffer fills up, when it is
+ * flushed or when it is closed. Emitting a word doesn't allocate a byte array or take
+ * a lock.
+ * 
+ * A BufferedOutput isn't thread safe, each Hairball instance should have its own.
+ * 
+ * @author tharter
+ *
+ */
+public class BufferedOutput implements Output {
+	public static final int DEFAULT_SIZE = 64 * 1024;
+	
+	private final WritableByteChannel channel;
+	private final boolean closeChannel;
+	private final ByteBuffer buffer;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final OutputStream stream = new OutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+			if(!buffer.hasRemaining()) drain();
+			buffer.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			while(length > 0) {
+				if(!buffer.hasRemaining()) drain();
+				int chunk = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, chunk);
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			BufferedOutput.this.flush();
+		}
+	};
+	
+	/**
+	 * Create an output which writes to a channel.
+	 * 
+	 * @param channel where the output goes
+	 * @param size size of the buffer in bytes
+	 * @param closeChannel true if closing this output should close the channel
+	 */
+	public BufferedOutput(WritableByteChannel channel, int size, boolean closeChannel) {
+		this.channel = channel;
+		this.closeChannel = closeChannel;
+		this.buffer = ByteBuffer.allocateDirect(size);
+	}
+	
+	/**
+	 * Create an output which writes to a stream, and closes it when it is closed.
+	 * File streams are written to through their channel.
+	 * 
+	 * @param out where the output goes
+	 */
+	public BufferedOutput(OutputStream out) {
+		this(out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out),
+				DEFAULT_SIZE, true);
+	}
+	
+	/**
+	 * Create an output which writes to the program's standard output. Closing it
+	 * flushes it but leaves standard output open.
+	 * 
+	 * @return the output
+	 */
+	public static BufferedOutput console() {
+		return new BufferedOutput(new FileOutputStream(FileDescriptor.out).getChannel(), DEFAULT_SIZE, false);
+	}
+	
+	/**
+	 * Get a stream which writes into the same buffer, so bytes written to it come out
+	 * in order with the text emitted.
+	 */
+	@Override
+	public OutputStream getOutputStream() {
+		return stream;
+	}
+
+	@Override
+	public void space() throws IOException {
+		if(!buffer.hasRemaining()) drain();
+		buffer.put((byte) ' ');
+	}
+
+	@Override
+	public void emit(String output) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(output);
+		CoderResult result = encoder.encode(chars, buffer, true);
+		while(result.isOverflow()) {
+			drain();
+			result = encoder.encode(chars, buffer, true);
+		}
+		while(encoder.flush(buffer).isOverflow())
+			drain();
+		encoder.reset();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			if(closeChannel) channel.close();
+		}
+	}
+	
+	/**
+	 * Write out everything in the buffer.
+	 * 
+	 * @throws IOException
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -20,6 +20,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.util.Scanner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,6 +46,18 @@ public class BufferedWordStream extends WordStream {
 		super();
 		reader = new BufferedReader(new InputStreamReader(in));
 	}
+	
+	/**
+	 * Create a word stream with the given input stream as its source, in the given
+	 * character set.
+	 * 
+	 * @param in the input
+	 * @param charset its character set
+	 */
+	public BufferedWordStream(InputStream in, Charset charset) {
+		super();
+		reader = new BufferedReader(new InputStreamReader(in, charset));
+	}
 
 	@Override
 	public String getSource() {
@@ -0,0 +1,261 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A cache of rendered documents, kept in a directory which can be shared between builds,
+ * so that a document whose inputs haven't changed is copied out of the cache instead of
+ * being rendered again.
+ * 
+ * Which files a document includes is only known once it has been rendered, so a document
+ * is looked up in two steps. Its document key is a hash of the build's context, such as
+ * the Hairball version, settings and preludes, of its name and of its content. Under the
+ * document key is a manifest listing the files it included the last time it was rendered.
+ * The content of those files, as they are now, is hashed along with the document key into
+ * its output key, and under the output key is the hash of the output. Outputs are kept by
+ * the hash of their content, so documents which render the same share one copy.
+ * 
+ * The directory holds manifests/, entries/ and objects/, and every file in it is written
+ * to a temporary file and moved into place, so builds running at the same time can share
+ * it. Paths under the base directory are kept relative to it, so builds of the same files
+ * checked out in different places hit the same entries. Hits and misses are counted.
+ * 
+ * @author tharter
+ *
+ */
+public class BuildCache {
+	private static final Logger log = StandAloneHairball.PLATFORM.getLogger(BuildCache.class.getName());
+	private static final String MISSING = "missing";
+	
+	private final Path manifests;
+	private final Path entries;
+	private final Path objects;
+	private final Path base;
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Create a cache.
+	 * 
+	 * @param directory directory the cache is kept in, created if need be
+	 * @param base directory the documents are relative to
+	 * @throws IOException if the cache directory can't be created
+	 */
+	public BuildCache(Path directory, Path base) throws IOException {
+		this.manifests = Files.createDirectories(directory.resolve("manifests"));
+		this.entries = Files.createDirectories(directory.resolve("entries"));
+		this.objects = Files.createDirectories(directory.resolve("objects"));
+		this.base = base.toAbsolutePath().normalize();
+	}
+	
+	/**
+	 * Hash what every document in a build depends on besides its own content and includes:
+	 * settings which change the output, and files which every document reads, such as
+	 * preludes and vocabularies.
+	 * 
+	 * @param settings settings by name, such as the version and output filters
+	 * @param files files which every document depends on
+	 * @return the context, in hex
+	 * @throws IOException if a file can't be read
+	 */
+	public String context(Map<String,String> settings, Collection<Path> files) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String,String> setting : new TreeMap<>(settings).entrySet())
+			sb.append(setting.getKey()).append('=').append(setting.getValue()).append('\n');
+		for(String name : names(files))
+			sb.append(name).append(' ').append(digestOf(base.resolve(name))).append('\n');
+		return hash(sb.toString());
+	}
+	
+	/**
+	 * Get the document key of a document.
+	 * 
+	 * @param context the build context
+	 * @param document document name, relative to the base
+	 * @return the key, in hex
+	 * @throws IOException if the document can't be read
+	 */
+	public String documentKey(String context, String document) throws IOException {
+		return hash(context+"\n"+document+"\n"+digestOf(base.resolve(document)));
+	}
+	
+	/**
+	 * Copy a document's output out of the cache, if its includes haven't changed since it
+	 * was stored. The target is only replaced if its content differs. This counts a hit
+	 * or a miss.
+	 * 
+	 * @param documentKey the document key
+	 * @param target the file the output goes to
+	 * @param writes counts the target as written or unchanged
+	 * @return true if the output was restored, false if the document must be rendered
+	 * @throws IOException if the target can't be written
+	 */
+	public boolean restore(String documentKey, Path target, UnchangedWrites writes) throws IOException {
+		Path object = find(documentKey);
+		if(object == null) {
+			misses.incrementAndGet();
+			return false;
+		}
+		Files.createDirectories(target.toAbsolutePath().getParent());
+		Path temporary = UnchangedWrites.temporaryFor(target);
+		Files.copy(object, temporary, StandardCopyOption.REPLACE_EXISTING);
+		writes.replace(temporary, target, fromHex(object.getFileName().toString()));
+		hits.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * Find the cached output for a document key.
+	 * 
+	 * @return the object, or null if there isn't one for the current includes
+	 */
+	private Path find(String documentKey) {
+		try {
+			Path manifest = manifests.resolve(documentKey);
+			if(!Files.exists(manifest)) return null;
+			List<String> includes = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+			Path entry = entries.resolve(outputKey(documentKey, includes));
+			if(!Files.exists(entry)) return null;
+			Path object = objects.resolve(new String(Files.readAllBytes(entry), StandardCharsets.US_ASCII).trim());
+			return Files.exists(object) ? object : null;
+		} catch (IOException e) {
+			log.warning("Ignoring unreadable cache entry for "+documentKey+": "+e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Store a document's output after it has been rendered.
+	 * 
+	 * @param documentKey the document key
+	 * @param includes paths of the files the document included, as SourceIncludes gives them
+	 * @param output the rendered output
+	 * @throws IOException if the cache can't be written
+	 */
+	public void store(String documentKey, Collection<String> includes, Path output) throws IOException {
+		List<Path> paths = new ArrayList<>();
+		for(String include : includes) paths.add(Paths.get(include));
+		List<String> names = names(paths);
+		String digest = UnchangedWrites.digestOf(output);
+		Path object = objects.resolve(digest);
+		if(!Files.exists(object)) write(object, Files.readAllBytes(output));
+		write(entries.resolve(outputKey(documentKey, names)), digest.getBytes(StandardCharsets.US_ASCII));
+		write(manifests.resolve(documentKey), String.join("\n", names).getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private String outputKey(String documentKey, List<String> includes) throws IOException {
+		StringBuilder sb = new StringBuilder(documentKey).append('\n');
+		for(String include : includes)
+			if(!include.isEmpty())
+				sb.append(include).append(' ').append(digestOf(base.resolve(include))).append('\n');
+		return hash(sb.toString());
+	}
+	
+	/**
+	 * Get the names files are kept under, relative to the base if they are in it, in order.
+	 */
+	private List<String> names(Collection<Path> files) {
+		TreeSet<String> names = new TreeSet<>();
+		for(Path file : files) {
+			Path absolute = file.toAbsolutePath().normalize();
+			names.add((absolute.startsWith(base) ? base.relativize(absolute) : absolute).toString());
+		}
+		return new ArrayList<>(names);
+	}
+	
+	private static String digestOf(Path file) throws IOException {
+		return Files.isRegularFile(file) ? UnchangedWrites.digestOf(file) : MISSING;
+	}
+	
+	private static String hash(String text) {
+		MessageDigest digest = UnchangedWrites.newDigest();
+		return UnchangedWrites.toHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	private static byte[] fromHex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		return bytes;
+	}
+	
+	private static void write(Path file, byte[] content) throws IOException {
+		Path temporary = UnchangedWrites.temporaryFor(file);
+		Files.write(temporary, content);
+		Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Get every regular file under some directories, for hashing into the context.
+	 * 
+	 * @param directories the directories, any which don't exist are skipped
+	 * @return the files
+	 * @throws IOException if a directory can't be walked
+	 */
+	public static List<Path> filesUnder(Collection<Path> directories) throws IOException {
+		List<Path> files = new ArrayList<>();
+		for(Path directory : directories) {
+			if(!Files.isDirectory(directory)) continue;
+			try(Stream<Path> walk = Files.walk(directory)) {
+				walk.filter(Files::isRegularFile).forEach(files::add);
+			}
+		}
+		return files;
+	}
+	
+	/**
+	 * Get the number of documents restored from the cache.
+	 * 
+	 * @return hits
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Get the number of documents which had to be rendered.
+	 * 
+	 * @return misses
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+	
+	@Override
+	public String toString() {
+		int hit = hits.get();
+		int total = hit + misses.get();
+		return hit+" hits, "+(total - hit)+" misses, "+(total == 0 ? 0 : hit * 100 / total)+"% hit rate";
+	}
+}
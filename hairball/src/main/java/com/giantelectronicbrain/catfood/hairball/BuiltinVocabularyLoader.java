@@ -0,0 +1,83 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.giantelectronicbrain.catfood.hairball.pdf.PdfVocabulary;
+
+/**
+ * Loads the vocabularies which are built into Hairball but which most documents never
+ * use, such as PDF, the first time a dictionary asks for them. Until then neither the
+ * vocabulary's words nor the libraries behind them are loaded, so an engine which only
+ * writes HTML doesn't pay for PDF. Names which aren't built in are passed on to the
+ * next loader, if there is one.
+ * 
+ * @author tharter
+ *
+ */
+public class BuiltinVocabularyLoader implements IVocabularyLoader {
+	private static final Map<String,Supplier<IVocabulary>> BUILTINS = new HashMap<>();
+	static {
+		BUILTINS.put(PdfVocabulary.NAME, () -> PdfVocabulary.create()); // a lambda, so the class isn't even loaded until then
+	}
+	
+	private final IVocabularyLoader next;
+
+	/**
+	 * Create a loader.
+	 * 
+	 * @param next loader for vocabularies which aren't built in, or null
+	 */
+	public BuiltinVocabularyLoader(IVocabularyLoader next) {
+		this.next = next;
+	}
+	
+	/**
+	 * Check whether a vocabulary is built in.
+	 * 
+	 * @param name vocabulary name
+	 * @return true if it is
+	 */
+	public static boolean isBuiltin(String name) {
+		return BUILTINS.containsKey(name);
+	}
+
+	@Override
+	public boolean load(String name, Dictionary dictionary) throws HairballException {
+		return load(name, dictionary, null);
+	}
+
+	@Override
+	public boolean load(String name, Dictionary dictionary, Interpreter interpreter) throws HairballException {
+		Supplier<IVocabulary> builtin = BUILTINS.get(name);
+		if(builtin == null) return next != null && next.load(name, dictionary, interpreter);
+		dictionary.makeCurrent(builtin.get()); // makes it known, the dictionary puts back the current vocabulary
+		return true;
+	}
+	
+	/**
+	 * Get the loader vocabularies which aren't built in are passed on to.
+	 * 
+	 * @return the loader, or null
+	 */
+	public IVocabularyLoader getNext() {
+		return next;
+	}
+}
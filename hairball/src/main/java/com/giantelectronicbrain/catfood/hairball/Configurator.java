@@ -55,6 +55,40 @@ public class Configurator {
 			.setShortName("l").setDescription("loop through the input N times, print performance stats");
 	private static Option outputOption = new Option().setLongName("output")
 			.setShortName("s").setDescription("direct output to a named file");
+	private static Option compileOption = new Option().setLongName("compile")
+			.setShortName("C").setFlag(true).setDescription("compile definitions to method handle chains");
+	private static Option maxTokensOption = new Option().setLongName("maxtokens")
+			.setShortName("m").setDescription("stop with an error after executing this many tokens");
+	private static Option profileOption = new Option().setLongName("profile")
+			.setShortName("p").setDescription("profile words, report to standard error and write collapsed stacks to the named file");
+	private static Option vocabPathOption = new Option().setLongName("vocabpath")
+			.setShortName("V").setDescription("buckets to load vocabularies from when first used, separated by the path separator");
+	private static Option targetOption = new Option().setLongName("target")
+			.setShortName("t").setMultiValued(true).setDescription("render to a target, given as --target=prelude=output and repeated for each target, the input is only read once for all of them");
+	private static Option parallelOption = new Option().setLongName("parallel")
+			.setShortName("P").setFlag(true).setDescription("render each target on its own thread");
+	private static Option filterOption = new Option().setLongName("filter")
+			.setShortName("f").setDescription("filter output through comma separated stages: minify, gzip, deflate, digest");
+	private static Option jobsOption = new Option().setLongName("jobs")
+			.setShortName("j").setDescription("render each script, or each file matched by a glob, as a document on its own, N at once");
+	private static Option preludeOption = new Option().setLongName("prelude")
+			.setShortName("r").setDescription("with --jobs, files loaded once before every document, separated by the path separator");
+	private static Option outdirOption = new Option().setLongName("outdir")
+			.setShortName("o").setDescription("with --jobs, directory each document's output is written to");
+	private static Option extensionOption = new Option().setLongName("extension")
+			.setShortName("e").setDescription("with --jobs, extension of each document's output, html by default");
+	private static Option watchOption = new Option().setLongName("watch")
+			.setShortName("W").setFlag(true).setDescription("render each document as --jobs does, then keep watching the documents, what they include and the preludes, and render again the documents each change affects");
+	private static Option cacheOption = new Option().setLongName("cache")
+			.setShortName("K").setDescription("with --jobs, copy documents whose inputs haven't changed out of a build cache in this directory instead of rendering them, not used with --watch");
+	private static Option daemonOption = new Option().setLongName("daemon")
+			.setShortName("D").setDescription("run as a render daemon, keeping engines warm between jobs, on this loopback port, only rendering files under --base");
+	private static Option idleOption = new Option().setLongName("idle")
+			.setShortName("I").setDescription("with --daemon, seconds without a job before shutting down, 600 by default, 0 for never");
+	private static Option connectOption = new Option().setLongName("connect")
+			.setShortName("k").setDescription("send the job to the render daemon on this loopback port instead of rendering it here");
+	private static Option statusOption = new Option().setLongName("status")
+			.setShortName("S").setFlag(true).setDescription("with --connect, print the daemon's status");
 	private static Option helpOption = new Option().setLongName("help")
 			.setShortName("h").setFlag(true).setHelp(true);
 	private static Argument scriptFiles = new Argument()
@@ -149,6 +183,60 @@ public class Configurator {
 		if(commandLine.isOptionAssigned(loopOption)) {
 			config.setProperty("loopOption", commandLine.getRawValueForOption(loopOption));
 		}
+		if(commandLine.isSeenInCommandLine(compileOption)) {
+			config.setProperty("compile", Boolean.TRUE.toString());
+		}
+		if(commandLine.isOptionAssigned(maxTokensOption)) {
+			config.setProperty("maxTokens", commandLine.getRawValueForOption(maxTokensOption));
+		}
+		if(commandLine.isOptionAssigned(targetOption)) {
+			config.setProperty("targets", String.join(File.pathSeparator, commandLine.getRawValuesForOption(targetOption)));
+		}
+		if(commandLine.isSeenInCommandLine(parallelOption)) {
+			config.setProperty("parallel", Boolean.TRUE.toString());
+		}
+		if(commandLine.isOptionAssigned(filterOption)) {
+			config.setProperty("filters", commandLine.getRawValueForOption(filterOption));
+		}
+		if(commandLine.isOptionAssigned(jobsOption)) {
+			config.setProperty("jobs", commandLine.getRawValueForOption(jobsOption));
+		}
+		if(commandLine.isOptionAssigned(preludeOption)) {
+			config.setProperty("prelude", commandLine.getRawValueForOption(preludeOption));
+		}
+		if(commandLine.isOptionAssigned(outdirOption)) {
+			config.setProperty("outdir", commandLine.getRawValueForOption(outdirOption));
+		}
+		if(commandLine.isOptionAssigned(extensionOption)) {
+			config.setProperty("extension", commandLine.getRawValueForOption(extensionOption));
+		}
+		if(commandLine.isSeenInCommandLine(watchOption)) {
+			config.setProperty("watch", Boolean.TRUE.toString());
+		}
+		if(commandLine.isOptionAssigned(cacheOption)) {
+			config.setProperty("cache", commandLine.getRawValueForOption(cacheOption));
+		}
+		if(commandLine.isOptionAssigned(daemonOption)) {
+			config.setProperty("daemon", commandLine.getRawValueForOption(daemonOption));
+		}
+		if(commandLine.isOptionAssigned(idleOption)) {
+			config.setProperty("idle", commandLine.getRawValueForOption(idleOption));
+		}
+		if(commandLine.isOptionAssigned(connectOption)) {
+			config.setProperty("connect", commandLine.getRawValueForOption(connectOption));
+		}
+		if(commandLine.isSeenInCommandLine(statusOption)) {
+			config.setProperty("status", Boolean.TRUE.toString());
+		}
+		if(commandLine.isOptionAssigned(outputOption)) {
+			config.setProperty("output", commandLine.getRawValueForOption(outputOption));
+		}
+		if(commandLine.isOptionAssigned(vocabPathOption)) {
+			config.setProperty("vocabPath", commandLine.getRawValueForOption(vocabPathOption));
+		}
+		if(commandLine.isOptionAssigned(profileOption)) {
+			config.setProperty("profile", commandLine.getRawValueForOption(profileOption));
+		}
 		return config;
 	}
 
@@ -165,6 +253,23 @@ public class Configurator {
 		cli.addOption(baseOption);
 		cli.addOption(loopOption);
 		cli.addOption(outputOption);
+		cli.addOption(compileOption);
+		cli.addOption(maxTokensOption);
+		cli.addOption(profileOption);
+		cli.addOption(vocabPathOption);
+		cli.addOption(targetOption);
+		cli.addOption(parallelOption);
+		cli.addOption(filterOption);
+		cli.addOption(jobsOption);
+		cli.addOption(preludeOption);
+		cli.addOption(outdirOption);
+		cli.addOption(extensionOption);
+		cli.addOption(watchOption);
+		cli.addOption(cacheOption);
+		cli.addOption(daemonOption);
+		cli.addOption(idleOption);
+		cli.addOption(connectOption);
+		cli.addOption(statusOption);
 		cli.addOption(helpOption);
 		cli.addArgument(scriptFiles);
 		//TODO: add options here. Might also need to add usage/help/name, not sure how that works...
@@ -17,12 +17,10 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
-import io.vertx.core.Vertx;
-import io.vertx.core.file.FileSystem;
-
 /**
  * Extend the HairballVocabulary which is found in hairball_core to include some
  * additional file handling utilities which cannot be implemented there because
@@ -34,24 +32,23 @@ import io.vertx.core.file.FileSystem;
 public class ExtendHairballVocabulary {
 	
 	/**
-	 * Static factory to create the one and only needed instance of this class.
-	 * This is how HairballVocabulary should always be created, there is no need
-	 * for more than one.
+	 * Static factory to create a HAIRBALL vocabulary for an engine, with the extra
+	 * words added. As with HairballVocabulary, the built in words are frozen and
+	 * shared by all engines, apart from the ones addEngineWords makes for each one.
 	 * 
 	 * @return
 	 */
 	public static IVocabulary create() {
-		IVocabulary hbVocab = HairballVocabulary.create();
-		for(Definition def : defList) {
-			hbVocab.add(def);
-		}
-		return hbVocab;
+		Vocabulary vocabulary = new Vocabulary("HAIRBALL",builtins);
+		HairballVocabulary.addEngineWords(vocabulary);
+		return vocabulary;
 	}
 	
 	/**
 	 * The actual definitions which will be placed within the vocabulary.
 	 */
 	private static final List<Definition> defList = new ArrayList<>();
+	private static final FrozenVocabulary builtins;
 	static {
 
 		Token compile = new NativeToken("compile",(interpreter) -> {
@@ -80,42 +77,79 @@ public class ExtendHairballVocabulary {
 		});
 		
 		/*
-		 * Source input from another file. This will construct a new parser 
-		 * context and a new parser, and then
-		 * launch the parser. Output should be interpolated seamlessly into
-		 * the current output stream. 
+		 * Source input from another file, relative to the current input. Output is
+		 * interpolated seamlessly into the current output stream. See SourceIncludes.
 		 */
 		Token source = new NativeToken("source", (interpreter) -> {
-			Vertx vertx = Vertx.vertx();
-			FileSystem fileSystem = vertx.fileSystem();
-			ParserContext cContext = interpreter.getParserContext();
-			String fileName = null;
+			SourceIncludes.of(interpreter).include(interpreter, (String) interpreter.pop(), false);
+			return true;
+		});
+		Token sourceQuote = InterpreterToken.makeToken("sourceQuote", quoteRT,source);
+		defList.add(new Definition(new Word("/SOURCE\""),compile,sourceQuote));
+
+		/**
+		 * Source input from another file just as /SOURCE" does, unless this engine has
+		 * already included it. Vocabulary files should be included this way.
+		 */
+		Token require = new NativeToken("require", (interpreter) -> {
+			SourceIncludes.of(interpreter).include(interpreter, (String) interpreter.pop(), true);
+			return true;
+		});
+		Token requireQuote = InterpreterToken.makeToken("requireQuote", quoteRT,require);
+		defList.add(new Definition(new Word("/REQUIRE\""),compile,requireQuote));
+
+		/**
+		 * Open an output to a bucket object. The object name is on the stack, and is
+		 * relative to the bucket the current input came from. The output is left on
+		 * the stack, ready for /OUTPUT or /WRITE. A confined engine can only open
+		 * objects inside its directory, see PathConfinement.
+		 */
+		Token open = new NativeToken("open", (interpreter) -> {
+			String objectName = (String) interpreter.pop();
 			try {
 				String currentBucket = interpreter.getParserContext().getWordStream().getCurrentLocation();
-				fileName = (String) interpreter.pop();
-				IWordStream wordStream = new BucketWordStream(fileSystem,fileName,currentBucket);
-				Parser nParser = new Parser();
-				nParser.setEmit(cContext.getParser().getEmit());
-				Interpreter nInterpreter = new Interpreter();
-				ParserContext nContext = new ParserContext(wordStream, cContext.getDictionary(), 
-						nInterpreter, cContext.getOutput(), nParser);
-				nInterpreter.setParserContext(nContext);
-				nParser.setParserContext(nContext);
-				nParser.parse();
+				PathConfinement.check(interpreter, Paths.get(currentBucket, objectName));
+				interpreter.push(new BucketOutput(SharedVertx.get().fileSystem(),objectName,currentBucket,
+						UnchangedWrites.PROCESS));
 			} catch (IOException e) {
-				throw new HairballException("Failed to parse /SOURCE file"+fileName);
+				throw new HairballException("Failed to open output "+objectName,e);
 			}
-			vertx.close();
 			return true;
 		});
-		Token sourceQuote = InterpreterToken.makeToken("sourceQuote", quoteRT,source);
-		defList.add(new Definition(new Word("/SOURCE\""),compile,sourceQuote));
-
-		Token version = new NativeToken("version", (interpreter) -> {
-			interpreter.push(StandAloneHairball.VERSION);
+		defList.add(new Definition(new Word("/OPEN"),compile,open));
+		
+		/**
+		 * Filter the current output through a chain of stages, such as minify,gzip. See
+		 * FilteredOutput for the stages. Closing the output finishes the filters.
+		 */
+		Token filter = new NativeToken("filter", (interpreter) -> {
+			String stages = (String) interpreter.pop();
+			ParserContext context = interpreter.getParserContext();
+			try {
+				context.setOutput(new FilteredOutput(context.getOutput(),stages));
+			} catch (IOException e) {
+				throw new HairballException("Cannot filter output through "+stages,e);
+			}
+			return true;
+		});
+		Token filterQuote = InterpreterToken.makeToken("filterQuote", quoteRT, filter);
+		defList.add(new Definition(new Word("/FILTER\""),compile,filterQuote));
+		
+		/**
+		 * Replace a filtered output on the stack with the digest its digest stage
+		 * computed, which is only known once the output has been closed.
+		 */
+		Token digest = new NativeToken("digest", (interpreter) -> {
+			Object output = interpreter.pop();
+			if(!(output instanceof FilteredOutput))
+				throw new HairballException("/DIGEST needs a filtered output");
+			interpreter.push(((FilteredOutput) output).getDigest());
 			return true;
 		});
-		defList.add(new Definition(new Word("/VERSION"),compile,version));
+		defList.add(new Definition(new Word("/DIGEST"),compile,digest));
 
+		List<Definition> allDefinitions = new ArrayList<>(HairballVocabulary.getBuiltins().getDefinitions());
+		allDefinitions.addAll(defList);
+		builtins = new FrozenVocabulary("HAIRBALL",allDefinitions);
 	}
 }
@@ -0,0 +1,166 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An output which passes everything through a chain of filters on its way to another
+ * output. The chain is given as a comma separated list of stages, applied in order,
+ * so "minify,gzip" minifies and then compresses. The stages are:
+ * 
+ * <ul>
+ * <li>minify - collapse HTML white space, see MinifyingOutputStream</li>
+ * <li>gzip - gzip compression</li>
+ * <li>deflate - zlib compression</li>
+ * <li>digest - compute a SHA-256 digest of the bytes which reach this point, or
+ * digest:ALGORITHM for another algorithm</li>
+ * </ul>
+ * 
+ * Each stage works on the bytes a buffer at a time as they go past, nothing is held
+ * back until the end. The bytes end up in the other output's stream, which it must
+ * support, and closing this output closes the other one.
+ * 
+ * @author tharter
+ *
+ */
+public class FilteredOutput extends BufferedOutput {
+	public static final int STAGE_SIZE = 8192;
+	
+	private final Output output;
+	private final Chain chain;
+	private String digest = null;
+	
+	/**
+	 * The streams of a filter chain.
+	 */
+	private static class Chain {
+		private OutputStream top;
+		private MessageDigest digest = null;
+	}
+	
+	/**
+	 * Create a filtered output.
+	 * 
+	 * @param output where the filtered bytes go
+	 * @param stages comma separated list of stages
+	 * @throws IOException if a stage is unknown
+	 */
+	public FilteredOutput(Output output, String stages) throws IOException {
+		this(output, makeChain(output, stages));
+	}
+	
+	private FilteredOutput(Output output, Chain chain) {
+		super(Channels.newChannel(chain.top), STAGE_SIZE, true);
+		this.output = output;
+		this.chain = chain;
+	}
+	
+	private static Chain makeChain(Output output, String stages) throws IOException {
+		Chain chain = new Chain();
+		OutputStream stream = new FilterOutputStream(output.getOutputStream()) {
+			@Override
+			public void write(byte[] bytes, int offset, int length) throws IOException {
+				out.write(bytes, offset, length);
+			}
+			
+			@Override
+			public void close() throws IOException {
+				flush(); // the output is closed by FilteredOutput.close
+			}
+		};
+		String[] names = stages.split(",");
+		for(int i = names.length - 1; i >= 0; i--) { // build from the sink back
+			String name = names[i].trim();
+			if(name.equals("minify")) {
+				stream = new MinifyingOutputStream(stream, STAGE_SIZE);
+			} else if(name.equals("gzip")) {
+				stream = new GZIPOutputStream(stream, STAGE_SIZE);
+			} else if(name.equals("deflate")) {
+				stream = new DeflaterOutputStream(stream, new Deflater(), STAGE_SIZE);
+			} else if(name.equals("digest") || name.startsWith("digest:")) {
+				if(chain.digest != null) throw new IOException("Only one digest stage is allowed");
+				String algorithm = name.equals("digest") ? "SHA-256" : name.substring("digest:".length());
+				try {
+					chain.digest = MessageDigest.getInstance(algorithm);
+				} catch (NoSuchAlgorithmException e) {
+					throw new IOException("Unknown digest algorithm "+algorithm,e);
+				}
+				stream = new DigestOutputStream(stream, chain.digest);
+			} else if(!name.isEmpty()) {
+				throw new IOException("Unknown output filter "+name);
+			}
+		}
+		chain.top = stream;
+		return chain;
+	}
+	
+	/**
+	 * Get the digest computed by the digest stage, once the output is closed.
+	 * 
+	 * @return the digest in hex, or null if there is no digest stage
+	 */
+	public String getDigest() {
+		return digest;
+	}
+
+	/**
+	 * Push everything through the stages which don't hold bytes back, and flush the
+	 * output at the end of the chain.
+	 */
+	@Override
+	public void flush() throws IOException {
+		super.flush();
+		chain.top.flush();
+		output.flush();
+	}
+
+	/**
+	 * Finish every stage, then close the output the bytes went to.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+			if(chain.digest != null && digest == null) {
+				StringBuilder sb = new StringBuilder();
+				for(byte b : chain.digest.digest())
+					sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+				digest = sb.toString();
+			}
+		} finally {
+			output.close();
+		}
+	}
+	
+	/**
+	 * Abort the output the bytes went to, without finishing the stages.
+	 */
+	@Override
+	public void abort() throws IOException {
+		output.abort();
+	}
+}
@@ -17,55 +17,237 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-
-import io.vertx.core.Vertx;
-import io.vertx.core.buffer.Buffer;
-import io.vertx.core.file.AsyncFile;
-import io.vertx.core.file.FileSystem;
-import io.vertx.core.file.OpenOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
- * Create an output based on a Vertx fileSystem.
+ * An output to a file. Text is buffered just as in BufferedOutput, and each full
+ * buffer is handed to a writer thread which writes it to the file's channel while
+ * the document carries on being processed. The writer has a fixed number of chunks,
+ * so a slow disk makes the producer wait rather than using more memory.
+ * 
+ * Flushing waits until everything emitted so far is in the file. Closing waits for
+ * the writer to finish and reports any write which failed along the way.
+ * 
+ * Given an UnchangedWrites the output goes to a temporary file instead, and is hashed
+ * on the way; the file is only replaced on close if its content has changed. Flushing
+ * then only makes sure the temporary file is up to date, and aborting the output
+ * deletes the temporary file so a failed run leaves the file as it was.
  * 
  * @author tharter
  *
  */
-public class FsOutput implements Output {
-	private final Vertx vertx;
-	private final AsyncFile file;
-	private int position = 0;
+public class FsOutput extends BufferedOutput {
+	public static final int CHUNKS = 4;
 	
-	public FsOutput(String fileName) {
-		vertx = Vertx.vertx();
-		FileSystem fileSystem = vertx.fileSystem();
-		//TODO: implement async versions of stuff
-		file = fileSystem.openBlocking(fileName, new OpenOptions() {});
+	private final WriteBehind writeBehind;
+	private final Path target;
+	private final Path file;
+	private final UnchangedWrites writes;
+	
+	/**
+	 * Create an output which replaces the named file, or creates it.
+	 * 
+	 * @param fileName the file
+	 * @throws IOException if the file can't be opened
+	 */
+	public FsOutput(String fileName) throws IOException {
+		this(Paths.get(fileName), Paths.get(fileName), null);
 	}
-
-	@Override
-	public void space() throws IOException {
-		emit(" ");
+	
+	/**
+	 * Create an output which replaces the named file only if what is written to it differs
+	 * from what is there.
+	 * 
+	 * @param fileName the file
+	 * @param writes where to count the file as written or unchanged
+	 * @throws IOException if the temporary file can't be opened
+	 */
+	public FsOutput(String fileName, UnchangedWrites writes) throws IOException {
+		this(Paths.get(fileName), UnchangedWrites.temporaryFor(Paths.get(fileName)), writes);
+	}
+	
+	private FsOutput(Path target, Path file, UnchangedWrites writes) throws IOException {
+		this(new WriteBehind(FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), target.toString(),
+				writes == null ? null : UnchangedWrites.newDigest()), target, file, writes);
+	}
+	
+	private FsOutput(WriteBehind writeBehind, Path target, Path file, UnchangedWrites writes) {
+		super(writeBehind, DEFAULT_SIZE, true);
+		this.writeBehind = writeBehind;
+		this.target = target;
+		this.file = file;
+		this.writes = writes;
 	}
 
 	@Override
-	public void emit(String output) throws IOException {
-		Buffer buf = Buffer.buffer(output, StandardCharsets.UTF_8.name());
-		file.write(buf, position);
-		position += buf.length();
+	public void flush() throws IOException {
+		super.flush();
+		writeBehind.await();
 	}
-
+	
 	@Override
 	public void close() throws IOException {
-		file.flush();
-		file.close();
-		vertx.close();
+		if(writes == null || !writeBehind.isOpen()) {
+			super.close();
+			return;
+		}
+		try {
+			super.close();
+		} catch (IOException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		writes.replace(file, target, writeBehind.digest.digest());
 	}
-
+	
+	/**
+	 * Stop the writer without writing out what is still buffered. Given an UnchangedWrites
+	 * the temporary file is deleted, otherwise the file is left with whatever had been
+	 * written to it.
+	 */
 	@Override
-	public OutputStream getOutputStream() throws UnsupportedOperationException {
-		throw new UnsupportedOperationException("FsOutput doesn't support streams");
+	public void abort() throws IOException {
+		try {
+			writeBehind.close();
+		} catch (IOException e) {
+			// the output is being thrown away
+		} finally {
+			if(writes != null) Files.deleteIfExists(file);
+		}
 	}
+	
+	/**
+	 * A channel which copies what is written to it into a chunk and queues the chunk
+	 * for the writer thread.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	private static class WriteBehind implements WritableByteChannel {
+		private static final ByteBuffer END = ByteBuffer.allocate(0);
+		private final FileChannel file;
+		private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(CHUNKS);
+		private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(CHUNKS + 1);
+		private final Thread writer;
+		private final MessageDigest digest;
+		private volatile IOException failure = null;
+		private boolean open = true;
+		
+		WriteBehind(FileChannel file, String fileName, MessageDigest digest) {
+			this.file = file;
+			this.digest = digest;
+			for(int i = 0; i < CHUNKS; i++)
+				free.add(ByteBuffer.allocateDirect(DEFAULT_SIZE));
+			writer = new Thread(this::writeChunks, "hairball-writer-"+fileName);
+			writer.setDaemon(true);
+			writer.start();
+		}
+		
+		/**
+		 * Body of the writer thread. After a failure chunks are thrown away, so the
+		 * producer never waits forever.
+		 */
+		private void writeChunks() {
+			try {
+				ByteBuffer chunk = full.take();
+				while(chunk != END) {
+					try {
+						if(failure == null)
+							while(chunk.hasRemaining()) file.write(chunk);
+					} catch (IOException e) {
+						failure = e;
+					}
+					chunk.clear();
+					free.put(chunk);
+					chunk = full.take();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
 
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if(!open) throw new ClosedChannelException();
+			checkFailure();
+			if(digest != null) digest.update(src.duplicate());
+			int written = src.remaining();
+			while(src.hasRemaining()) {
+				ByteBuffer chunk = take();
+				int limit = src.limit();
+				if(src.remaining() > chunk.remaining()) src.limit(src.position() + chunk.remaining());
+				chunk.put(src);
+				src.limit(limit);
+				chunk.flip();
+				put(chunk);
+			}
+			return written;
+		}
+		
+		/**
+		 * Wait until every chunk queued so far has been written.
+		 * 
+		 * @throws IOException if a write failed
+		 */
+		void await() throws IOException {
+			ByteBuffer[] chunks = new ByteBuffer[CHUNKS];
+			for(int i = 0; i < CHUNKS; i++) chunks[i] = take(); // all chunks back means all written
+			for(ByteBuffer chunk : chunks) free.add(chunk);
+			checkFailure();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(!open) return;
+			open = false;
+			put(END);
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while closing output",e);
+			} finally {
+				file.close();
+			}
+			checkFailure();
+		}
+		
+		private ByteBuffer take() throws IOException {
+			try {
+				return free.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing output",e);
+			}
+		}
+		
+		private void put(ByteBuffer chunk) throws IOException {
+			try {
+				full.put(chunk);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing output",e);
+			}
+		}
+		
+		private void checkFailure() throws IOException {
+			if(failure != null) throw new IOException("Failed to write output",failure);
+		}
+	}
 }
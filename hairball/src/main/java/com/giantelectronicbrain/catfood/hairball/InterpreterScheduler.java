@@ -0,0 +1,182 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shares a fixed number of running slots fairly between any number of Hairball
+ * instances. Each submitted instance is given a slice size and yields at the end of
+ * every slice, giving up its slot to the instance which has waited longest, so one
+ * long running or runaway document can't starve the others. A token limit can also
+ * be set, which stops runaway documents outright.
+ * 
+ * Java gives us no way to capture the state of an interpreter which is part way
+ * through a word, so each job parks on its own thread while it waits for a slot.
+ * Only as many jobs as there are slots ever run at once.
+ * 
+ * @author tharter
+ *
+ */
+public class InterpreterScheduler {
+	private final Semaphore slots;
+	private final int sliceSize;
+	private final long tokenLimit;
+	private final ExecutorService executor = Executors.newCachedThreadPool((runnable) -> {
+		Thread thread = new Thread(runnable, "hairball-job");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Create a scheduler.
+	 * 
+	 * @param slotCount number of jobs which may run at once
+	 * @param sliceSize number of tokens a job runs before yielding
+	 * @param tokenLimit number of tokens after which a job is stopped, zero for no limit
+	 */
+	public InterpreterScheduler(int slotCount, int sliceSize, long tokenLimit) {
+		this.slots = new Semaphore(slotCount, true);
+		this.sliceSize = sliceSize;
+		this.tokenLimit = tokenLimit;
+	}
+
+	/**
+	 * Submit a Hairball instance to be run. It must already have its input and
+	 * output set.
+	 * 
+	 * @param hairball the instance to run
+	 * @return a Job which can be used to wait for the result and see what it cost
+	 */
+	public Job submit(StandAloneHairball hairball) {
+		Job job = new Job(hairball);
+		job.future = executor.submit(job::run);
+		return job;
+	}
+
+	/**
+	 * Stop accepting jobs. Jobs already submitted will still be run.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * A Hairball instance which has been submitted to the scheduler, along with the
+	 * tokens executed and time consumed by it so far.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	public class Job implements IYieldHandler {
+		private final StandAloneHairball hairball;
+		private Future<ParserContext> future;
+		private volatile long nanosConsumed = 0;
+		private volatile int slices = 0;
+		private long sliceStart;
+
+		private Job(StandAloneHairball hairball) {
+			this.hairball = hairball;
+		}
+
+		private ParserContext run() throws Exception {
+			hairball.setSlice(sliceSize, this);
+			hairball.setTokenLimit(tokenLimit);
+			slots.acquire();
+			sliceStart = System.nanoTime();
+			try {
+				return hairball.execute();
+			} finally {
+				endSlice();
+				slots.release();
+			}
+		}
+
+		@Override
+		public void yieldSlice(Interpreter interpreter) throws HairballException {
+			endSlice();
+			slots.release();
+			slots.acquireUninterruptibly(); // run always gives the slot back, so we must hold one
+			sliceStart = System.nanoTime();
+			if(Thread.interrupted())
+				throw new HairballException("Interrupted, giving up");
+		}
+
+		private void endSlice() {
+			nanosConsumed += System.nanoTime() - sliceStart;
+			slices++;
+		}
+
+		/**
+		 * Wait for the job to finish.
+		 * 
+		 * @return the ParserContext from the run
+		 * @throws HairballException if the run failed, including by going over the token limit
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		public ParserContext get() throws HairballException, InterruptedException {
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof HairballException) throw (HairballException) cause;
+				throw new HairballException(cause);
+			}
+		}
+
+		/**
+		 * Test if the job has finished, one way or another.
+		 * 
+		 * @return true if done
+		 */
+		public boolean isDone() {
+			return future.isDone();
+		}
+
+		/**
+		 * Get the number of tokens executed by the job so far.
+		 * 
+		 * @return tokens executed
+		 */
+		public long getTokensExecuted() {
+			return hairball.getTokensExecuted();
+		}
+
+		/**
+		 * Get the time the job has spent running, not counting time spent
+		 * waiting for a turn.
+		 * 
+		 * @return nanoseconds consumed
+		 */
+		public long getNanosConsumed() {
+			return nanosConsumed;
+		}
+
+		/**
+		 * Get the number of slices the job has run.
+		 * 
+		 * @return slice count
+		 */
+		public int getSlices() {
+			return slices;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A cheap compilation tier for Hairball. Instead of generating classes, the body of an
+ * InterpreterToken is folded into a single MethodHandle chain. NativeTokens become their
+ * HairballBehavior lambda bound as a constant, LiteralTokens become a push of their data,
+ * and nested InterpreterTokens which can also be compiled are spliced in whole. Since the
+ * entire tree of handles hangs off of one invokeExact call site, the JIT is free to inline
+ * lambdas right across word boundaries. Anything else is simply bound to Token.execute.
+ * 
+ * The chain mimics the inner interpreter exactly. Each step leaves the instruction pointer
+ * of the token's context where getNextToken would, counts the token with the interpreter,
+ * and stops if the token returns false.
+ * If a token moves the ip itself (IE a branch) the chain bails out and hands the rest of
+ * the context back to the interpreter, so control flow words keep working.
+ * 
+ * A compiler keeps no state of its own, so one can be shared by any number of engines and
+ * threads. Compiled forms are remembered per compiler, so engines which share INSTANCE
+ * also share the work of compiling the built in words.
+ * 
+ * @author tharter
+ *
+ */
+public class MethodHandleCompiler implements ITokenCompiler {
+	/**
+	 * Bodies larger than this are left to the interpreter, the handle trees get silly.
+	 */
+	public static final int MAX_TOKENS = 128;
+	
+	/**
+	 * A compiler for everyone to share.
+	 */
+	public static final MethodHandleCompiler INSTANCE = new MethodHandleCompiler();
+
+	private static final MethodHandle RUN;
+	private static final MethodHandle EXECUTE;
+	private static final MethodHandle PUSH;
+	private static final MethodHandle ENTER;
+	private static final MethodHandle LEAVE;
+	private static final MethodHandle STEP;
+	private static final MethodHandle STAYED;
+	private static final MethodHandle RESUME;
+	private static final MethodHandle TRUE;
+	private static final MethodHandle CHAIN_TRUE;
+	private static final MethodHandle CHAIN_FALSE;
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType tokenType = MethodType.methodType(boolean.class, Interpreter.class);
+		try {
+			RUN = lookup.findVirtual(HairballBehavior.class, "run", tokenType);
+			EXECUTE = lookup.findVirtual(Token.class, "execute", tokenType);
+			PUSH = lookup.findVirtual(Interpreter.class, "push", MethodType.methodType(void.class, Object.class));
+			ENTER = lookup.findStatic(MethodHandleCompiler.class, "enter",
+					MethodType.methodType(Context.class, Interpreter.class, List.class));
+			LEAVE = lookup.findStatic(MethodHandleCompiler.class, "leave",
+					MethodType.methodType(boolean.class, Interpreter.class, Context.class));
+			STEP = lookup.findStatic(MethodHandleCompiler.class, "step",
+					MethodType.methodType(void.class, Interpreter.class, Context.class, int.class));
+			STAYED = lookup.findStatic(MethodHandleCompiler.class, "stayed",
+					MethodType.methodType(boolean.class, Context.class, int.class));
+			RESUME = lookup.findStatic(MethodHandleCompiler.class, "resume", tokenType);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+		TRUE = MethodHandles.constant(boolean.class, true);
+		CHAIN_TRUE = MethodHandles.dropArguments(TRUE, 0, Interpreter.class, Context.class);
+		CHAIN_FALSE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false),
+				0, Interpreter.class, Context.class);
+	}
+
+	@Override
+	public Token compile(InterpreterToken token) {
+		return compile(token, new HashSet<>());
+	}
+	
+	/**
+	 * Compile a token which is used by the ones already being compiled.
+	 * 
+	 * @param token the token
+	 * @param inProgress the tokens being compiled, outermost first
+	 * @return the compiled token, or null
+	 */
+	private Token compile(InterpreterToken token, Set<InterpreterToken> inProgress) {
+		List<Token> tokens = new ArrayList<>(token.getTokens());
+		if(tokens.size() == 0 || tokens.size() > MAX_TOKENS) return null;
+		if(!inProgress.add(token)) return null; // recursive word, it stays a call
+		try {
+			MethodHandle chain = CHAIN_TRUE;
+			for(int i = tokens.size() - 1; i >= 0; i--) {
+				chain = makeStep(i, makeHandle(tokens.get(i), inProgress), chain);
+			}
+			return new CompiledToken(token.getName(), makeRoot(tokens, chain));
+		} finally {
+			inProgress.remove(token);
+		}
+	}
+
+	/**
+	 * Make a handle of type (Interpreter)boolean which does whatever the given token does.
+	 * 
+	 * @param token the token
+	 * @param inProgress the tokens being compiled
+	 * @return a handle for the token
+	 */
+	private MethodHandle makeHandle(Token token, Set<InterpreterToken> inProgress) {
+		if(token instanceof NativeToken)
+			return RUN.bindTo(((NativeToken) token).getBehavior());
+		if(token.getClass() == LiteralToken.class) {
+			MethodHandle push = MethodHandles.insertArguments(PUSH, 1, ((LiteralToken) token).getData());
+			return MethodHandles.filterReturnValue(push, TRUE);
+		}
+		if(token instanceof InterpreterToken && !inProgress.contains(token)) {
+			Token ctoken = ((InterpreterToken) token).getCompiled(this, nested -> compile(nested, inProgress));
+			if(ctoken instanceof CompiledToken)
+				return ((CompiledToken) ctoken).getHandle();
+		}
+		return EXECUTE.bindTo(token);
+	}
+
+	/**
+	 * Make one step in the chain, of type (Interpreter,Context)boolean. The step advances
+	 * the ip, runs the token, and then either quits, carries on to the next step, or if the
+	 * ip was moved by the token, resumes interpreting the context from wherever it now is.
+	 * 
+	 * @param index position of the token in the body
+	 * @param token handle for the token
+	 * @param next the rest of the chain
+	 * @return handle for this step
+	 */
+	private static MethodHandle makeStep(int index, MethodHandle token, MethodHandle next) {
+		MethodHandle stayed = MethodHandles.dropArguments(
+				MethodHandles.insertArguments(STAYED, 1, index + 1), 0, Interpreter.class);
+		MethodHandle resume = MethodHandles.dropArguments(RESUME, 1, Context.class);
+		MethodHandle carryOn = MethodHandles.guardWithTest(stayed, next, resume);
+		MethodHandle run = MethodHandles.guardWithTest(
+				MethodHandles.dropArguments(token, 1, Context.class), carryOn, CHAIN_FALSE);
+		MethodHandle advance = MethodHandles.insertArguments(STEP, 2, index + 1);
+		return MethodHandles.foldArguments(run, advance);
+	}
+
+	/**
+	 * Wrap a chain up so it behaves like InterpreterToken.execute, the result has the type
+	 * (Interpreter)boolean. A context is created and jumped to, the chain runs, and then we
+	 * return from the context and answer its continue flag.
+	 * 
+	 * @param tokens the body, needed for the context
+	 * @param chain the chain of steps
+	 * @return the root handle
+	 */
+	private static MethodHandle makeRoot(List<Token> tokens, MethodHandle chain) {
+		MethodHandle run = chain.asType(MethodType.methodType(void.class, Interpreter.class, Context.class));
+		MethodHandle runAndLeave = MethodHandles.foldArguments(LEAVE, run);
+		MethodHandle contextFirst = MethodHandles.permuteArguments(runAndLeave,
+				MethodType.methodType(boolean.class, Context.class, Interpreter.class), 1, 0);
+		return MethodHandles.foldArguments(contextFirst, MethodHandles.insertArguments(ENTER, 1, tokens));
+	}
+
+	private static Context enter(Interpreter interpreter, List<Token> tokens) {
+		Context context = new Context(tokens, 0);
+		interpreter.jumpToContext(context);
+		return context;
+	}
+
+	private static boolean leave(Interpreter interpreter, Context context) {
+		interpreter.returnFromContext();
+		return context.isContinue();
+	}
+
+	private static void step(Interpreter interpreter, Context context, int ip) throws HairballException {
+		interpreter.tick();
+		context.advanceTo(ip);
+	}
+
+	private static boolean stayed(Context context, int ip) {
+		return context.getIp() == ip;
+	}
+
+	private static boolean resume(Interpreter interpreter) throws HairballException {
+		interpreter.executeContext();
+		return false;
+	}
+
+	/**
+	 * The result of compiling an InterpreterToken, it just invokes the root of the
+	 * handle chain.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	public static final class CompiledToken implements Token {
+		private final String name;
+		private final MethodHandle handle;
+		
+		private CompiledToken(String name, MethodHandle handle) {
+			this.name = name;
+			this.handle = handle;
+		}
+
+		@Override
+		public boolean execute(Interpreter interpreter) throws HairballException {
+			try {
+				return (boolean) handle.invokeExact(interpreter);
+			} catch (HairballException | RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new HairballException(t);
+			}
+		}
+
+		/**
+		 * Get the root handle, this is how one compiled token is spliced into another.
+		 * 
+		 * @return the handle, of type (Interpreter)boolean
+		 */
+		public MethodHandle getHandle() {
+			return handle;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return "CompiledToken [name=" + name + "]";
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A stream which collapses each run of white space in HTML into a single character,
+ * a newline if the run held one and a space otherwise. Text in pre and textarea
+ * elements is left alone. It works on bytes, which is safe for UTF-8 since white
+ * space and markup are all ASCII, and passes them on in buffer sized writes.
+ * 
+ * @author tharter
+ *
+ */
+public class MinifyingOutputStream extends FilterOutputStream {
+	private static final byte[][] PRESERVED = { "pre".getBytes(StandardCharsets.US_ASCII), "textarea".getBytes(StandardCharsets.US_ASCII) };
+	
+	private final byte[] buffer;
+	private int count = 0;
+	private boolean inWhiteSpace = false;
+	private boolean sawNewline = false;
+	private int preserving = 0; // depth of pre or textarea elements we are in
+	private final byte[] tag = new byte[10]; // the start of the tag being read, lower case
+	private int tagLength = -1; // -1 when not in a tag name
+	private boolean closingTag = false;
+	
+	/**
+	 * Create a minifying stream.
+	 * 
+	 * @param out where the minified bytes go
+	 * @param size size of the buffer
+	 */
+	public MinifyingOutputStream(OutputStream out, int size) {
+		super(out);
+		buffer = new byte[size];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		boolean white = b == ' ' || b == '\t' || b == '\n' || b == '\r';
+		if(white && preserving == 0) {
+			inWhiteSpace = true;
+			if(b == '\n') sawNewline = true;
+			return;
+		}
+		if(inWhiteSpace) {
+			put(sawNewline ? '\n' : ' ');
+			inWhiteSpace = false;
+			sawNewline = false;
+		}
+		track(b);
+		put(b);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; i++)
+			write(bytes[i]);
+	}
+	
+	/**
+	 * Follow tag names, so we know when we are in an element whose white space matters.
+	 */
+	private void track(int b) {
+		if(b == '<') {
+			tagLength = 0;
+			closingTag = false;
+		} else if(tagLength == 0 && b == '/' && !closingTag) {
+			closingTag = true;
+		} else if(tagLength >= 0) {
+			if(Character.isLetter(b) && tagLength < tag.length) {
+				tag[tagLength++] = (byte) Character.toLowerCase(b);
+			} else {
+				for(byte[] name : PRESERVED)
+					if(matches(name)) preserving = Math.max(0, preserving + (closingTag ? -1 : 1));
+				tagLength = -1;
+			}
+		}
+	}
+	
+	private boolean matches(byte[] name) {
+		if(name.length != tagLength) return false;
+		for(int i = 0; i < tagLength; i++)
+			if(tag[i] != name[i]) return false;
+		return true;
+	}
+	
+	private void put(int b) throws IOException {
+		if(count == buffer.length) drain();
+		buffer[count++] = (byte) b;
+	}
+	
+	private void drain() throws IOException {
+		if(count > 0) out.write(buffer, 0, count);
+		count = 0;
+	}
+
+	/**
+	 * Pass on what has been buffered. A run of white space at the end is held back,
+	 * since it may not have ended yet.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(inWhiteSpace) put(sawNewline ? '\n' : ' ');
+		inWhiteSpace = false;
+		drain();
+		out.close();
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Render one input with several engines, each with its own dictionary and output,
+ * for instance one set up with an HTML prelude and one with a Markdown prelude. The
+ * input is read and tokenized once through a SharedWordStream, and each engine
+ * executes it. The engines can run one after another, or all at once on their own
+ * threads.
+ * 
+ * @author tharter
+ *
+ */
+public class MultiTargetRunner {
+	private final SharedWordStream input;
+	private final List<StandAloneHairball> engines = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+	
+	/**
+	 * Create a runner for an input.
+	 * 
+	 * @param source the input
+	 */
+	public MultiTargetRunner(IWordStream source) {
+		this.input = new SharedWordStream(source);
+	}
+	
+	/**
+	 * Add an engine. It should already have its output and anything else it needs
+	 * loaded, since its input will be replaced by the shared input.
+	 * 
+	 * @param name name for the target, used in error messages
+	 * @param engine the engine
+	 */
+	public void add(String name, StandAloneHairball engine) {
+		names.add(name);
+		engines.add(engine);
+	}
+	
+	/**
+	 * Run every engine to the end of the input. If any of them fail the others still
+	 * run, and the failure of the first target to fail is thrown afterwards.
+	 * 
+	 * @param threaded true to run each engine on its own thread
+	 * @throws HairballException
+	 */
+	public void run(boolean threaded) throws HairballException {
+		for(StandAloneHairball engine : engines)
+			engine.setInput(input.newReader());
+		Exception[] failures = new Exception[engines.size()];
+		if(threaded) {
+			List<Thread> threads = new ArrayList<>();
+			for(int i = 0; i < engines.size(); i++) {
+				int target = i;
+				Thread thread = new Thread(() -> failures[target] = execute(target),
+						"hairball-target-"+names.get(i));
+				threads.add(thread);
+				thread.start();
+			}
+			for(Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new HairballException("Interrupted waiting for targets",e);
+				}
+			}
+		} else {
+			for(int i = 0; i < engines.size(); i++)
+				failures[i] = execute(i);
+		}
+		for(int i = 0; i < failures.length; i++) {
+			if(failures[i] != null) throw new HairballException("Target "+names.get(i)+" failed: "+failures[i].getMessage(),failures[i]);
+		}
+	}
+	
+	/**
+	 * Run one engine. If it fails its input and output are closed, so it doesn't hold
+	 * the others up.
+	 * 
+	 * @return the failure, or null
+	 */
+	private Exception execute(int target) {
+		StandAloneHairball engine = engines.get(target);
+		try {
+			engine.execute();
+			return null;
+		} catch (Exception e) {
+			try {
+				engine.getParser().close();
+			} catch (IOException ce) {
+				// the first failure is the one to report
+			}
+			return e;
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Render many documents independently on a pool of worker threads. Each document is
+ * run by a fork of a prototype engine, which has already loaded the preludes the
+ * documents share, so the shared vocabularies are only parsed once. Every document has
+ * its own input and output, which are only opened when a worker gets to it.
+ * 
+ * A document which fails doesn't stop the others. The failures are reported afterwards
+ * in the order the documents were added, along with how much each worker got through.
+ * 
+ * @author tharter
+ *
+ */
+public class ParallelBuild {
+	private final StandAloneHairball prototype;
+	private final int workers;
+	private final Consumer<StandAloneHairball> setUp;
+	private final List<Document> documents = new ArrayList<>();
+	
+	/**
+	 * Something which opens a document's input or output when it is needed.
+	 */
+	@FunctionalInterface
+	public static interface Opener<T> {
+		public T open() throws IOException;
+	}
+	
+	/**
+	 * Create a build.
+	 * 
+	 * @param prototype the engine each document is forked from, with its preludes loaded
+	 * @param workers number of documents to render at once
+	 * @param setUp sets up each forked engine, for instance with a token limit, or null
+	 */
+	public ParallelBuild(StandAloneHairball prototype, int workers, Consumer<StandAloneHairball> setUp) {
+		this.prototype = prototype;
+		this.workers = workers;
+		this.setUp = setUp;
+	}
+	
+	/**
+	 * Add a document.
+	 * 
+	 * @param name name of the document, used in the report
+	 * @param input opens the document's input
+	 * @param output opens the document's output
+	 */
+	public void add(String name, Opener<IWordStream> input, Opener<Output> output) {
+		documents.add(new Document(name, input, output));
+	}
+	
+	/**
+	 * Render every document.
+	 * 
+	 * @return the report, check it for failures
+	 * @throws HairballException if interrupted while waiting for the workers
+	 */
+	public Report run() throws HairballException {
+		prototype.share(); // the workers all fork it at once
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(workers, (runnable) -> {
+			Thread thread = new Thread(runnable, "hairball-build-"+threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Report report = new Report();
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for(Document document : documents)
+				futures.add(pool.submit(() -> render(document, report)));
+			for(Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HairballException("Interrupted while building", e);
+		} catch (ExecutionException e) {
+			throw new HairballException("Build worker failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		report.nanos = System.nanoTime() - start;
+		for(Document document : documents) {
+			if(document.failure != null) {
+				report.failures.add(document.name+": "+document.failure.getMessage());
+				report.failed.add(document.name);
+			}
+			report.includes.put(document.name, document.includes);
+		}
+		return report;
+	}
+	
+	private void render(Document document, Report report) {
+		long start = System.nanoTime();
+		StandAloneHairball engine = prototype.fork();
+		if(setUp != null) setUp.accept(engine);
+		IWordStream input = null;
+		Output output = null;
+		try {
+			input = document.input.open();
+			output = document.output.open();
+			engine.setIO(input, output);
+			engine.execute();
+		} catch (IOException | HairballException | RuntimeException e) {
+			document.failure = e;
+			abortQuietly(input, output);
+		} finally {
+			document.includes = engine.getIncludes().getIncluded();
+			report.count(Thread.currentThread().getName(), System.nanoTime() - start, engine.getTokensExecuted());
+		}
+	}
+	
+	private static void abortQuietly(IWordStream input, Output output) {
+		try {
+			if(input != null) input.close();
+		} catch (IOException e) {
+			// the document has already failed
+		}
+		try {
+			if(output != null) output.abort(); // don't replace the last good output
+		} catch (IOException e) {
+			// the document has already failed
+		}
+	}
+	
+	/**
+	 * Expand a list of document names, relative to a base directory, into the documents
+	 * they name. A name with any of the characters *?[{ in it is a glob, which is matched
+	 * against every file under the base and replaced by the matches in sorted order.
+	 * 
+	 * @param base the base directory
+	 * @param names document names and globs
+	 * @return the document names
+	 * @throws IOException if the base directory can't be walked
+	 */
+	public static List<String> expand(String base, List<String> names) throws IOException {
+		List<String> expanded = new ArrayList<>();
+		Path basePath = Paths.get(base);
+		for(String name : names) {
+			if(name.chars().noneMatch(c -> "*?[{".indexOf(c) != -1)) {
+				expanded.add(name);
+				continue;
+			}
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:"+name);
+			try(Stream<Path> files = Files.walk(basePath)) {
+				expanded.addAll(files.filter(Files::isRegularFile)
+						.map(basePath::relativize)
+						.filter(matcher::matches)
+						.map(Path::toString)
+						.sorted()
+						.collect(Collectors.toList()));
+			}
+		}
+		return expanded;
+	}
+	
+	/**
+	 * Get the name of the output of a document, which is its name with the extension
+	 * replaced.
+	 * 
+	 * @param document the document name
+	 * @param extension the output extension, without the dot
+	 * @return the output name
+	 */
+	public static String outputName(String document, String extension) {
+		int dot = document.lastIndexOf('.');
+		if(dot <= document.lastIndexOf('/')) dot = document.length();
+		return document.substring(0, dot)+"."+extension;
+	}
+	
+	private static class Document {
+		final String name;
+		final Opener<IWordStream> input;
+		final Opener<Output> output;
+		volatile Exception failure = null;
+		volatile Set<String> includes = Collections.emptySet();
+		
+		Document(String name, Opener<IWordStream> input, Opener<Output> output) {
+			this.name = name;
+			this.input = input;
+			this.output = output;
+		}
+	}
+	
+	/**
+	 * What a build did: the documents which failed, in order, the files each document
+	 * included, and how many documents, how much time and how many tokens each worker
+	 * got through.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	public static class Report {
+		private final List<String> failures = new ArrayList<>();
+		private final Map<String,Set<String>> includes = new LinkedHashMap<>();
+		private final Set<String> failed = new HashSet<>();
+		private final Map<String,long[]> workers = new TreeMap<>(); // documents, nanos, tokens
+		private long nanos;
+		
+		private synchronized void count(String worker, long nanos, long tokens) {
+			long[] counts = workers.computeIfAbsent(worker, w -> new long[3]);
+			counts[0]++;
+			counts[1] += nanos;
+			counts[2] += tokens;
+		}
+		
+		/**
+		 * Get the failures, in the order the documents were added.
+		 * 
+		 * @return the failures, each the document name and the error
+		 */
+		public List<String> getFailures() {
+			return failures;
+		}
+		
+		/**
+		 * Find out if a document failed.
+		 * 
+		 * @param document the document name
+		 * @return true if it failed
+		 */
+		public boolean hasFailed(String document) {
+			return failed.contains(document);
+		}
+		
+		/**
+		 * Get the files each document included with /SOURCE" or /REQUIRE", as far as it
+		 * got if it failed. This includes the files the preludes included.
+		 * 
+		 * @return paths of the included files, keyed by document name in the order the
+		 * documents were added
+		 */
+		public Map<String,Set<String>> getIncludes() {
+			return includes;
+		}
+		
+		/**
+		 * Throw if any documents failed.
+		 * 
+		 * @throws HairballException listing every failure
+		 */
+		public void check() throws HairballException {
+			if(!failures.isEmpty())
+				throw new HairballException(failures.size()+" documents failed:\n"+String.join("\n", failures));
+		}
+		
+		@Override
+		public synchronized String toString() {
+			StringBuilder sb = new StringBuilder();
+			long documents = 0;
+			for(Map.Entry<String,long[]> worker : workers.entrySet()) {
+				long[] counts = worker.getValue();
+				documents += counts[0];
+				sb.append(worker.getKey()).append(": ").append(counts[0]).append(" documents, ")
+					.append(perSecond(counts[0], counts[1])).append(" documents/s, ")
+					.append(counts[2]).append(" tokens\n");
+			}
+			sb.append(documents).append(" documents in ").append(nanos / 1000000).append("ms, ")
+				.append(perSecond(documents, nanos)).append(" documents/s, ")
+				.append(failures.size()).append(" failed");
+			return sb.toString();
+		}
+		
+		private static long perSecond(long count, long nanos) {
+			return nanos == 0 ? 0 : count * 1000000000L / nanos;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Keeps the files an engine includes with /SOURCE" and /REQUIRE", and the outputs it opens
+ * with /OPEN, inside one directory. An engine which runs source it doesn't trust, such as
+ * a request body, is confined so the source can't read or write anything else. Forks of a
+ * confined engine are confined to the same directory.
+ * 
+ * @author tharter
+ *
+ */
+public class PathConfinement {
+	private final Path root;
+	
+	/**
+	 * Create a confinement to a directory.
+	 * 
+	 * @param root the directory
+	 */
+	public PathConfinement(Path root) {
+		this.root = root.toAbsolutePath().normalize();
+	}
+	
+	/**
+	 * Get the directory the engine is confined to.
+	 * 
+	 * @return the directory
+	 */
+	public Path getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Check that an engine may use a file. An engine which isn't confined may use any file.
+	 * 
+	 * @param interpreter the engine's interpreter
+	 * @param path the file, absolute or relative to the working directory
+	 * @throws HairballException if the engine is confined and the file is outside of its directory
+	 */
+	public static void check(Interpreter interpreter, Path path) throws HairballException {
+		PathConfinement confinement = interpreter.getExtension(PathConfinement.class);
+		if(confinement != null && !path.toAbsolutePath().normalize().startsWith(confinement.root))
+			throw new HairballException(path+" is outside of "+confinement.root);
+	}
+	
+	/**
+	 * Check that an engine may use a file, given as a string.
+	 * 
+	 * @param interpreter the engine's interpreter
+	 * @param path the file, absolute or relative to the working directory
+	 * @throws HairballException if the engine is confined and the file is outside of its directory
+	 */
+	public static void check(Interpreter interpreter, String path) throws HairballException {
+		check(interpreter, Paths.get(path));
+	}
+}
@@ -0,0 +1,389 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.vertx.core.Vertx;
+
+/**
+ * A long lived Hairball which renders jobs sent to it over a loopback socket, so that
+ * the JVM, Vertx and the vocabularies a job uses are only started and loaded once. For
+ * each set of preludes a warm engine is kept which has loaded them, and every job runs
+ * in a fork of it. A warm engine is rebuilt when one of its preludes changes. The
+ * daemon shuts itself down once it has been idle for a while.
+ * 
+ * The protocol is plain text, so a client can be as thin as nc. A request is a command
+ * line, RENDER or STATUS, followed for RENDER by name=value lines and ended by an empty
+ * line:
+ * 
+ * <pre>
+ * RENDER
+ * base=/home/me/site
+ * prelude=html.hairball
+ * input=index.hairball
+ * output=index.html
+ * filter=minify
+ * </pre>
+ * 
+ * input and prelude may be repeated, and are relative to base. An output of '-', or no
+ * output, sends the rendered document back. The reply is a line of OK or ERROR and the
+ * length of the body in bytes, followed by the body.
+ * 
+ * Anyone on the machine can connect to a loopback port, so the daemon is given a root
+ * directory and refuses a job whose base, inputs, preludes or output are outside of it.
+ * 
+ * @author tharter
+ *
+ */
+public class RenderDaemon {
+	private static final Logger log = StandAloneHairball.PLATFORM.getLogger(RenderDaemon.class.getName());
+	public static final long DEFAULT_IDLE = 600; // seconds without a job before shutting down
+	public static final String RENDER = "RENDER";
+	public static final String STATUS = "STATUS";
+	
+	private final ServerSocket server;
+	private final Path root;
+	private final Vertx vertx;
+	private final Consumer<StandAloneHairball> setUp;
+	private final long idleMillis;
+	private final ExecutorService workers;
+	private final Map<String,Warm> engines = new HashMap<>();
+	private final long started = System.currentTimeMillis();
+	private final AtomicLong lastUsed = new AtomicLong(started);
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicLong jobs = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile boolean stopped = false;
+	
+	/**
+	 * Create a daemon listening on a loopback port.
+	 * 
+	 * @param port the port, or 0 for any free port
+	 * @param root the directory every job's files must be in
+	 * @param vertx Vertx to read inputs with
+	 * @param workers number of jobs to run at once
+	 * @param idleSeconds seconds without a job before shutting down, or 0 to never shut down
+	 * @param setUp sets up each engine, for instance with a token limit, or null
+	 * @throws IOException if the port can't be listened on
+	 */
+	public RenderDaemon(int port, Path root, Vertx vertx, int workers, long idleSeconds, Consumer<StandAloneHairball> setUp) throws IOException {
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.root = root.toAbsolutePath().normalize();
+		this.vertx = vertx;
+		this.idleMillis = idleSeconds * 1000;
+		this.setUp = setUp;
+		this.workers = Executors.newFixedThreadPool(workers, (runnable) -> {
+			Thread thread = new Thread(runnable, "hairball-daemon");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Get the port the daemon is listening on.
+	 * 
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+	
+	/**
+	 * Accept jobs until the daemon is stopped or has been idle for too long.
+	 * 
+	 * @throws IOException if the socket fails
+	 */
+	public void run() throws IOException {
+		server.setSoTimeout(1000);
+		try {
+			while(!stopped) {
+				try {
+					Socket socket = server.accept();
+					lastUsed.set(System.currentTimeMillis());
+					running.incrementAndGet();
+					workers.execute(() -> serve(socket));
+				} catch (SocketTimeoutException e) {
+					if(idleMillis > 0 && running.get() == 0
+							&& System.currentTimeMillis() - lastUsed.get() > idleMillis) {
+						log.info("Idle for "+idleMillis / 1000+"s, shutting down");
+						stopped = true;
+					}
+				}
+			}
+		} finally {
+			server.close();
+			workers.shutdown();
+		}
+	}
+	
+	/**
+	 * Stop accepting jobs. Jobs already accepted are finished.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+	
+	private void serve(Socket socket) {
+		try(Socket client = socket) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+			OutputStream out = client.getOutputStream();
+			String command = in.readLine();
+			if(STATUS.equals(command)) {
+				reply(out, "OK", status().getBytes(StandardCharsets.UTF_8));
+			} else if(RENDER.equals(command)) {
+				render(readRequest(in), out);
+			} else {
+				reply(out, "ERROR", ("Unknown command "+command+"\n").getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Failed to serve a client", e);
+		} finally {
+			lastUsed.set(System.currentTimeMillis());
+			running.decrementAndGet();
+		}
+	}
+	
+	private static Map<String,List<String>> readRequest(BufferedReader in) throws IOException {
+		Map<String,List<String>> request = new HashMap<>();
+		for(String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+			int split = line.indexOf('=');
+			if(split == -1) continue;
+			request.computeIfAbsent(line.substring(0, split), k -> new ArrayList<>()).add(line.substring(split + 1));
+		}
+		return request;
+	}
+	
+	private static String first(Map<String,List<String>> request, String name, String defaultValue) {
+		List<String> values = request.get(name);
+		return values == null ? defaultValue : values.get(0);
+	}
+	
+	private void render(Map<String,List<String>> request, OutputStream out) throws IOException {
+		long start = System.nanoTime();
+		jobs.incrementAndGet();
+		String base = first(request, "base", ".");
+		String outputName = first(request, "output", "-");
+		String filters = first(request, "filter", null);
+		List<String> inputs = request.getOrDefault("input", new ArrayList<>());
+		List<String> preludes = request.getOrDefault("prelude", new ArrayList<>());
+		ByteArrayOutputStream document = new ByteArrayOutputStream();
+		IWordStream input = null;
+		Output output = null;
+		try {
+			confined(".", base);
+			for(String prelude : preludes)
+				confined(base, prelude);
+			for(String name : inputs)
+				if(!Files.isReadable(confined(base, name)))
+					throw new IOException("Can't read input "+name);
+			StandAloneHairball engine = warm(base, preludes).fork();
+			if(setUp != null) setUp.accept(engine);
+			output = outputName.equals("-") ? new StreamOutput(document)
+					: new FsOutput(confined(base, outputName).toString(), UnchangedWrites.PROCESS);
+			if(filters != null) output = new FilteredOutput(output, filters);
+			input = new FileCollectionWordStream(vertx, base, new ArrayList<>(inputs));
+			engine.setIO(input, output);
+			engine.execute();
+			if(outputName.equals("-")) {
+				reply(out, "OK", document.toByteArray());
+			} else {
+				String summary = "Rendered "+outputName+", "+engine.getTokensExecuted()+" tokens in "
+						+(System.nanoTime() - start) / 1000000+"ms\n";
+				reply(out, "OK", summary.getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (HairballException | IOException | RuntimeException e) {
+			abortQuietly(input, output); // before the client hears about it
+			failures.incrementAndGet();
+			reply(out, "ERROR", (e.getMessage()+"\n").getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * Resolve a path from a job, making sure it is inside the daemon's root.
+	 * 
+	 * @param base the directory the path is relative to
+	 * @param name the path
+	 * @return the absolute path
+	 * @throws IOException if the path is outside of the root
+	 */
+	private Path confined(String base, String name) throws IOException {
+		Path path = Paths.get(base).resolve(name).toAbsolutePath().normalize();
+		if(!path.startsWith(root)) throw new IOException(name+" is outside of "+root);
+		return path;
+	}
+	
+	/**
+	 * Throw away a job which failed. Its output is aborted, so an output file is left as
+	 * it was rather than replaced by part of the document.
+	 */
+	private static void abortQuietly(IWordStream input, Output output) {
+		try {
+			if(input != null) input.close();
+		} catch (IOException e) {
+			// the job has already failed
+		}
+		try {
+			if(output != null) output.abort();
+		} catch (IOException e) {
+			// the job has already failed
+		}
+	}
+	
+	/**
+	 * Get the warm engine for a set of preludes, loading it if there isn't one or one of
+	 * the preludes has changed since it was loaded.
+	 */
+	private Warm warm(String base, List<String> preludes) throws IOException, HairballException {
+		Path basePath = Paths.get(base).toAbsolutePath();
+		List<FileTime> stamps = new ArrayList<>();
+		for(String prelude : preludes)
+			stamps.add(Files.getLastModifiedTime(basePath.resolve(prelude)));
+		String key = basePath+" "+preludes;
+		synchronized(engines) {
+			Warm warm = engines.get(key);
+			if(warm == null || !warm.stamps.equals(stamps)) {
+				StandAloneHairball prototype = new StandAloneHairball();
+				if(setUp != null) setUp.accept(prototype);
+				prototype.getIncludes(); // so that every fork shares one file cache
+				if(!preludes.isEmpty()) {
+					prototype.setIO(new FileCollectionWordStream(vertx, base, new ArrayList<>(preludes)),
+							new StreamOutput(OutputStream.nullOutputStream()));
+					prototype.load();
+				}
+				prototype.share(); // jobs fork it at once
+				warm = new Warm(key, prototype, stamps);
+				engines.put(key, warm);
+				log.fine("Loaded warm engine for "+key);
+			}
+			return warm;
+		}
+	}
+	
+	/**
+	 * Describe the daemon: how long it has been up and idle, the jobs it has run, and
+	 * the warm engines and their file caches.
+	 * 
+	 * @return the status, one item to a line
+	 */
+	public String status() {
+		long now = System.currentTimeMillis();
+		StringBuilder sb = new StringBuilder();
+		sb.append("up ").append((now - started) / 1000).append("s, idle ")
+			.append(running.get() > 0 ? 0 : (now - lastUsed.get()) / 1000).append("s\n");
+		sb.append("jobs ").append(jobs.get()).append(", failed ").append(failures.get())
+			.append(", running ").append(running.get()).append('\n');
+		synchronized(engines) {
+			sb.append("warm engines ").append(engines.size()).append('\n');
+			for(Warm warm : engines.values())
+				sb.append("  ").append(warm.key).append(": ").append(warm.renders.get()).append(" renders, ")
+					.append(warm.prototype.getIncludes().getCachedCount()).append(" files cached\n");
+		}
+		sb.append("outputs ").append(UnchangedWrites.PROCESS).append('\n');
+		return sb.toString();
+	}
+	
+	private static void reply(OutputStream out, String result, byte[] body) throws IOException {
+		out.write((result+" "+body.length+"\n").getBytes(StandardCharsets.UTF_8));
+		out.write(body);
+		out.flush();
+	}
+	
+	/**
+	 * Send a request to a daemon and copy the body of the reply to out, or to err if the
+	 * request failed.
+	 * 
+	 * @param port the daemon's loopback port
+	 * @param request the command line and name=value lines of the request
+	 * @param out where the reply goes
+	 * @param err where an error reply goes
+	 * @return 0 if the request succeeded, else 1
+	 * @throws IOException if the daemon can't be reached
+	 */
+	public static int send(int port, List<String> request, OutputStream out, PrintStream err) throws IOException {
+		try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			OutputStream toDaemon = socket.getOutputStream();
+			toDaemon.write((String.join("\n", request)+"\n\n").getBytes(StandardCharsets.UTF_8));
+			toDaemon.flush();
+			InputStream fromDaemon = socket.getInputStream();
+			StringBuilder header = new StringBuilder();
+			for(int c = fromDaemon.read(); c != -1 && c != '\n'; c = fromDaemon.read())
+				header.append((char) c);
+			String[] parts = header.toString().split(" ");
+			if(parts.length != 2) throw new IOException("Bad reply from daemon: "+header);
+			boolean ok = parts[0].equals("OK");
+			OutputStream target = ok ? out : err;
+			byte[] buffer = new byte[BufferedOutput.DEFAULT_SIZE];
+			long remaining = Long.parseLong(parts[1]);
+			while(remaining > 0) {
+				int n = fromDaemon.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if(n == -1) throw new IOException("Reply from daemon was cut short");
+				target.write(buffer, 0, n);
+				remaining -= n;
+			}
+			target.flush();
+			return ok ? 0 : 1;
+		}
+	}
+	
+	/**
+	 * An engine which has loaded a set of preludes, and when they were last modified.
+	 */
+	private static class Warm {
+		final String key;
+		final StandAloneHairball prototype;
+		final List<FileTime> stamps;
+		final AtomicLong renders = new AtomicLong();
+		
+		Warm(String key, StandAloneHairball prototype, List<FileTime> stamps) {
+			this.key = key;
+			this.prototype = prototype;
+			this.stamps = stamps;
+		}
+		
+		StandAloneHairball fork() {
+			renders.incrementAndGet();
+			return prototype.fork();
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Promise;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A verticle which renders Hairball over HTTP. POST Hairball source to /render, or GET
+ * /render?path=name to render a file under the base directory, and the output comes
+ * back as a chunked response while it is being rendered. The engine reads the request
+ * body as it arrives, and when the client is slow to read the response the engine waits
+ * for it rather than buffering the whole document. GET /metrics reports the requests
+ * served and how long they took.
+ * 
+ * Every request runs in a fork of an engine which has loaded the preludes once, on a
+ * worker pool with a thread for each request allowed at once. Requests beyond that get
+ * a 503 straight away. Request engines are confined to the base directory, so a request
+ * can only include and open files under it, and are stopped once they have run too many
+ * tokens. The configuration is:
+ * 
+ * <dl>
+ * <dt>port</dt><dd>port to listen on, 8080 by default, 0 for any free port</dd>
+ * <dt>host</dt><dd>host to listen on, localhost by default</dd>
+ * <dt>base</dt><dd>directory prelude and path names are relative to, . by default</dd>
+ * <dt>prelude</dt><dd>array of files every request's engine loads first</dd>
+ * <dt>maxConcurrent</dt><dd>requests rendered at once, twice the processors by default</dd>
+ * <dt>tokenLimit</dt><dd>tokens after which a request is stopped, 10 million by default, 0 for no limit</dd>
+ * <dt>bufferSize</dt><dd>bytes of output gathered before it is sent, 8192 by default</dd>
+ * <dt>contentType</dt><dd>the response's content type, text/html by default</dd>
+ * </dl>
+ * 
+ * @author tharter
+ *
+ */
+public class RenderVerticle extends AbstractVerticle {
+	private static final Logger log = StandAloneHairball.PLATFORM.getLogger(RenderVerticle.class.getName());
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	public static final long DEFAULT_TOKEN_LIMIT = 10000000L;
+	
+	private final Metrics metrics = new Metrics();
+	private HttpServer server;
+	private WorkerExecutor executor;
+	private StandAloneHairball prototype;
+	private Path base;
+	private int maxConcurrent;
+	private long tokenLimit;
+	private int bufferSize;
+	private String contentType;
+	
+	@Override
+	public void start(Promise<Void> startPromise) {
+		JsonObject config = config();
+		base = Paths.get(config.getString("base", ".")).toAbsolutePath().normalize();
+		maxConcurrent = config.getInteger("maxConcurrent", 2 * Runtime.getRuntime().availableProcessors());
+		tokenLimit = config.getLong("tokenLimit", DEFAULT_TOKEN_LIMIT);
+		bufferSize = config.getInteger("bufferSize", DEFAULT_BUFFER_SIZE);
+		contentType = config.getString("contentType", "text/html; charset=utf-8");
+		List<String> preludes = new ArrayList<>();
+		for(Object prelude : config.getJsonArray("prelude", new JsonArray()))
+			preludes.add((String) prelude);
+		executor = vertx.createSharedWorkerExecutor("hairball-render", maxConcurrent);
+		executor.<Void>executeBlocking(promise -> {
+			try {
+				prototype = new StandAloneHairball();
+				prototype.getIncludes(); // so that every fork shares one file cache
+				if(!preludes.isEmpty()) {
+					prototype.setIO(new FileCollectionWordStream(vertx, base.toString(), preludes),
+							new StreamOutput(OutputStream.nullOutputStream()));
+					prototype.load();
+				}
+				prototype.confine(base); // the preludes are trusted, requests aren't
+				prototype.share(); // requests fork it at once
+				promise.complete();
+			} catch (Exception e) {
+				promise.fail(e);
+			}
+		}, loaded -> {
+			if(loaded.failed()) {
+				startPromise.fail(loaded.cause());
+				return;
+			}
+			server = vertx.createHttpServer();
+			server.requestHandler(this::handle)
+				.listen(config.getInteger("port", DEFAULT_PORT), config.getString("host", "localhost"), listening -> {
+					if(listening.succeeded())
+						startPromise.complete();
+					else
+						startPromise.fail(listening.cause());
+				});
+		});
+	}
+	
+	@Override
+	public void stop() {
+		if(executor != null) executor.close();
+	}
+	
+	/**
+	 * Get the port the verticle is listening on, which is useful when it was configured
+	 * with port 0.
+	 * 
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.actualPort();
+	}
+	
+	/**
+	 * Get the metrics for the requests served so far.
+	 * 
+	 * @return the metrics
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+	
+	private void handle(HttpServerRequest request) {
+		HttpServerResponse response = request.response();
+		if(request.path().equals("/metrics")) {
+			response.putHeader("Content-Type", "text/plain; charset=utf-8").end(metrics.toString());
+			return;
+		}
+		if(!request.path().equals("/render")) {
+			response.setStatusCode(404).end();
+			return;
+		}
+		String name = request.getParam("path");
+		boolean post = request.method() == HttpMethod.POST;
+		if(!post && !(request.method() == HttpMethod.GET && name != null)) {
+			response.setStatusCode(405).end("POST source, or GET with a path\n");
+			return;
+		}
+		Path file = name == null ? null : base.resolve(name).normalize();
+		if(file != null && !file.startsWith(base)) {
+			response.setStatusCode(400).end("Path is outside of the base directory\n");
+			return;
+		}
+		if(!metrics.admit(maxConcurrent)) {
+			response.setStatusCode(503).putHeader("Retry-After", "1").end("Too many requests\n");
+			return;
+		}
+		long start = System.nanoTime();
+		// the body handlers must be set before returning to the event loop, or data is lost
+		IWordStream body = post ? new BufferedWordStream(bodyOf(request), StandardCharsets.UTF_8) : null;
+		response.setChunked(true).putHeader("Content-Type", contentType);
+		executor.<Void>executeBlocking(promise -> {
+			try {
+				IWordStream input = body;
+				if(input == null) {
+					if(!Files.isReadable(file)) throw new FileNotFoundException("No such file "+name);
+					input = new BucketWordStream(vertx.fileSystem(), base.relativize(file).toString(), base.toString());
+				}
+				render(input, response);
+				promise.complete();
+			} catch (Exception e) {
+				promise.fail(e);
+			}
+		}, false, result -> finish(request, start, result));
+	}
+	
+	private static VertxBlockingInputStream bodyOf(HttpServerRequest request) {
+		VertxBlockingInputStream in = new VertxBlockingInputStream(request);
+		request.exceptionHandler(in::error);
+		return in;
+	}
+	
+	/**
+	 * Render an input to a response. This runs on a worker, and waits whenever the
+	 * response's write queue is full. The response is left open for finish to end,
+	 * so the request has been counted as done before the client can see the end of it.
+	 */
+	private void render(IWordStream input, HttpServerResponse response) throws Exception {
+		StandAloneHairball engine = prototype.fork();
+		engine.setTokenLimit(tokenLimit);
+		engine.setIO(input, new BufferedOutput(new WriteStreamChannel(response, "response", null), bufferSize, false));
+		engine.execute();
+	}
+	
+	/**
+	 * Finish a request on the event loop. The request stops counting against the
+	 * concurrency limit first, and then the response is ended, so a client which sends
+	 * its next request as soon as it has this one's isn't turned away. If rendering
+	 * failed before anything was sent the client gets an error status, otherwise the
+	 * connection is closed so the client can see the response was cut short.
+	 */
+	private void finish(HttpServerRequest request, long start, AsyncResult<Void> result) {
+		long nanos = System.nanoTime() - start;
+		metrics.done(nanos, result.succeeded());
+		HttpServerResponse response = request.response();
+		if(result.succeeded()) {
+			log.log(Level.FINE, "Rendered "+request.uri()+" in "+nanos / 1000000+"ms");
+			if(!response.closed()) response.end();
+			return;
+		}
+		Throwable cause = result.cause();
+		log.log(Level.FINE, "Failed to render "+request.uri(), cause);
+		if(!response.headWritten())
+			response.setStatusCode(cause instanceof FileNotFoundException ? 404 : 500).end(cause.getMessage()+"\n");
+		else if(!response.ended())
+			request.connection().close();
+	}
+	
+	/**
+	 * Counts of requests and how long they took.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	public static class Metrics {
+		private long requests = 0;
+		private int active = 0;
+		private long completed = 0;
+		private long failed = 0;
+		private long rejected = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+		
+		private synchronized boolean admit(int maxConcurrent) {
+			if(active >= maxConcurrent) {
+				rejected++;
+				return false;
+			}
+			active++;
+			requests++;
+			return true;
+		}
+		
+		private synchronized void done(long nanos, boolean succeeded) {
+			active--;
+			if(succeeded)
+				completed++;
+			else
+				failed++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+		
+		public synchronized long getRequests() {
+			return requests;
+		}
+		
+		public synchronized int getActive() {
+			return active;
+		}
+		
+		public synchronized long getFailed() {
+			return failed;
+		}
+		
+		public synchronized long getRejected() {
+			return rejected;
+		}
+		
+		@Override
+		public synchronized String toString() {
+			long finished = completed + failed;
+			return "requests "+requests+", active "+active+", completed "+completed+", failed "+failed
+					+", rejected "+rejected+", latency mean "+(finished == 0 ? 0 : totalNanos / finished / 1000000)
+					+"ms max "+maxNanos / 1000000+"ms\n";
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import io.vertx.core.Vertx;
+
+/**
+ * The Vertx instance shared by everything in a Hairball process which needs one, such
+ * as file and bucket words. It is only created when it is first asked for, so runs
+ * which never touch the file system don't start an event loop.
+ * 
+ * @author tharter
+ *
+ */
+public final class SharedVertx {
+	private static final Logger log = StandAloneHairball.PLATFORM.getLogger(SharedVertx.class.getName());
+	private static Vertx vertx = null;
+	
+	private SharedVertx() {
+	}
+	
+	/**
+	 * Get the shared Vertx, creating it if need be.
+	 * 
+	 * @return the shared Vertx
+	 */
+	public static synchronized Vertx get() {
+		if(vertx == null) vertx = Vertx.vertx();
+		return vertx;
+	}
+	
+	/**
+	 * Close the shared Vertx, if it was ever created, and wait until it has closed. A
+	 * later call to get will create a new one.
+	 */
+	public static synchronized void close() {
+		if(vertx != null) {
+			try {
+				WriteStreamChannel.await(vertx.close().toCompletionStage().toCompletableFuture(), "close Vert.x");
+			} catch (IOException e) {
+				log.warning(e.getLocalizedMessage());
+			} finally {
+				vertx = null;
+			}
+		}
+	}
+}
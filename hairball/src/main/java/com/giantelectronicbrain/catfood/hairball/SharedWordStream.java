@@ -0,0 +1,213 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One input shared by several engines, for instance to render the same document to
+ * several formats. The input is read and tokenized once. Each engine gets its own
+ * reader, and whatever one engine reads first is logged, so the others are handed
+ * the same words and the same delimited text when they get there. Entries are
+ * dropped once every reader has passed them.
+ * 
+ * The engines have to read the input in the same way, which they will if their
+ * vocabularies parse the same words. If one engine asks for something different
+ * from what the first one asked for at the same point, its read fails.
+ * 
+ * The readers can be used from different threads.
+ * 
+ * @author tharter
+ *
+ */
+public class SharedWordStream {
+	private static final int NEXT_WORD = 0;
+	private static final int TO_MATCHING = 1;
+	private static final int TO_DELIMITER = 2;
+	private static final int HAS_MORE = 3;
+	
+	private final IWordStream source;
+	private final List<Entry> log = new ArrayList<>();
+	private final List<Reader> readers = new ArrayList<>();
+	private long base = 0; // position of the first entry still in the log
+	private int open = 0;
+	
+	/**
+	 * One read from the source, and where the source was after it.
+	 */
+	private static class Entry {
+		private final int kind;
+		private final String argument;
+		private final Object result;
+		private final String location;
+		private final int line;
+		private final int column;
+		
+		private Entry(int kind, String argument, Object result, IWordStream source) {
+			this.kind = kind;
+			this.argument = argument;
+			this.result = result;
+			this.location = source.getCurrentLocation();
+			this.line = source.getLine();
+			this.column = source.getColumn();
+		}
+	}
+	
+	/**
+	 * Share an input.
+	 * 
+	 * @param source the input
+	 */
+	public SharedWordStream(IWordStream source) {
+		this.source = source;
+	}
+	
+	/**
+	 * Make a reader for another engine. Readers start at the beginning of the input, so
+	 * all of them should be made before any of them are read from.
+	 * 
+	 * @return the reader
+	 */
+	public synchronized IWordStream newReader() {
+		Reader reader = new Reader();
+		readers.add(reader);
+		open++;
+		return reader;
+	}
+	
+	/**
+	 * Get the entry at a reader's position, reading it from the source if no other
+	 * reader has got there yet.
+	 */
+	private synchronized Object read(Reader reader, int kind, String argument) throws IOException {
+		int offset = (int) (reader.position - base);
+		Entry entry;
+		if(offset == log.size()) {
+			Object result;
+			switch(kind) {
+			case NEXT_WORD:
+				result = source.getNextWord();
+				break;
+			case TO_MATCHING:
+				result = source.getToMatching(argument);
+				break;
+			case TO_DELIMITER:
+				result = source.getToDelimiter(argument);
+				break;
+			default:
+				result = Boolean.valueOf(source.hasMoreTokens());
+			}
+			entry = new Entry(kind, argument, result, source);
+			log.add(entry);
+		} else {
+			entry = log.get(offset);
+			if(entry.kind != kind || !Objects.equals(entry.argument, argument))
+				throw new IOException("Engines read "+source.getSource()+" differently at line "+entry.line
+						+", column "+entry.column);
+		}
+		reader.position++;
+		reader.last = entry;
+		trim();
+		return entry.result;
+	}
+	
+	/**
+	 * Drop the entries which every reader has passed, once they are at least half of
+	 * the log, so that dropping them costs a constant amount per entry.
+	 */
+	private void trim() {
+		long slowest = Long.MAX_VALUE;
+		for(Reader reader : readers)
+			if(!reader.closed) slowest = Math.min(slowest, reader.position);
+		if(slowest == Long.MAX_VALUE) slowest = base + log.size();
+		int passed = (int) (slowest - base);
+		if(passed > 0 && passed * 2 >= log.size()) {
+			log.subList(0, passed).clear();
+			base = slowest;
+		}
+	}
+	
+	private synchronized void close(Reader reader) throws IOException {
+		if(reader.closed) return;
+		reader.closed = true;
+		trim();
+		if(--open == 0) source.close();
+	}
+	
+	/**
+	 * An engine's view of the shared input.
+	 */
+	private class Reader implements IWordStream {
+		private long position = 0;
+		private Entry last = null;
+		private boolean closed = false;
+
+		@Override
+		public String getCurrentLocation() {
+			synchronized(SharedWordStream.this) {
+				return last == null ? source.getCurrentLocation() : last.location;
+			}
+		}
+
+		@Override
+		public String getSource() {
+			return source.getSource();
+		}
+
+		@Override
+		public int getLine() {
+			synchronized(SharedWordStream.this) {
+				return last == null ? 0 : last.line;
+			}
+		}
+
+		@Override
+		public int getColumn() {
+			synchronized(SharedWordStream.this) {
+				return last == null ? 0 : last.column;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			SharedWordStream.this.close(this);
+		}
+
+		@Override
+		public Word getNextWord() throws IOException {
+			return (Word) read(this, NEXT_WORD, null);
+		}
+
+		@Override
+		public String getToMatching(String match) throws IOException {
+			return (String) read(this, TO_MATCHING, match);
+		}
+
+		@Override
+		public boolean hasMoreTokens() throws IOException {
+			return ((Boolean) read(this, HAS_MORE, null)).booleanValue();
+		}
+
+		@Override
+		public String getToDelimiter(String match) throws IOException {
+			return (String) read(this, TO_DELIMITER, match);
+		}
+	}
+}
@@ -0,0 +1,250 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.vertx.core.file.FileProps;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.file.FileSystemException;
+
+/**
+ * The files an engine includes with /SOURCE" and /REQUIRE". Each file is read through the
+ * shared Vertx file system and kept, along with its modification time and size, so including
+ * it again only reads it again if it has changed. Forked engines share the file cache with
+ * the engine they were forked from, so a family of engines reads each file once.
+ * /REQUIRE" only includes a file which hasn't been included already, which is what
+ * vocabulary files want.
+ * 
+ * An included file is parsed by the including engine's own parser and interpreter, with just
+ * the word stream swapped for the file's, so the engine's token limit and slice handler
+ * cover included words as well. A confined engine can only include files inside its
+ * directory, see PathConfinement. How deeply each include is nested and how long it took is logged,
+ * and an error in an included file says which includes it was found in.
+ * 
+ * @author tharter
+ *
+ */
+public class SourceIncludes {
+	private static final Logger log = StandAloneHairball.PLATFORM.getLogger(SourceIncludes.class.getName());
+	public static final int MAX_DEPTH = 32;
+	
+	private final Map<String,Source> sources;
+	private final Set<String> included;
+	private final Deque<String> including = new ArrayDeque<>();
+	
+	/**
+	 * Create the includes for a new engine, with nothing included yet.
+	 */
+	public SourceIncludes() {
+		this(new ConcurrentHashMap<>(), new HashSet<>());
+	}
+	
+	private SourceIncludes(Map<String,Source> sources, Set<String> included) {
+		this.sources = sources;
+		this.included = included;
+	}
+	
+	/**
+	 * Get the includes of the engine an interpreter belongs to, creating them if need be.
+	 * 
+	 * @param interpreter the interpreter
+	 * @return the includes
+	 */
+	public static SourceIncludes of(Interpreter interpreter) {
+		SourceIncludes includes = interpreter.getExtension(SourceIncludes.class);
+		if(includes == null) {
+			includes = new SourceIncludes();
+			interpreter.setExtension(SourceIncludes.class, includes);
+		}
+		return includes;
+	}
+	
+	/**
+	 * Copy these includes for a forked engine. The fork has the definitions the included
+	 * files made, so it counts them as included too, and it shares the file cache.
+	 * 
+	 * @return the copy
+	 */
+	public SourceIncludes fork() {
+		return new SourceIncludes(sources, new HashSet<>(included));
+	}
+	
+	/**
+	 * Get the number of files in the file cache.
+	 * 
+	 * @return files cached
+	 */
+	public int getCachedCount() {
+		return sources.size();
+	}
+	
+	/**
+	 * Find out if a file has been included.
+	 * 
+	 * @param path path of the file, as it was included
+	 * @return true if it has been included
+	 */
+	public boolean isIncluded(String path) {
+		return included.contains(path);
+	}
+	
+	/**
+	 * Get every file which has been included, including those the engine this one was
+	 * forked from included.
+	 * 
+	 * @return paths of the files, as they were included
+	 */
+	public Set<String> getIncluded() {
+		return Collections.unmodifiableSet(new HashSet<>(included));
+	}
+	
+	/**
+	 * Drop files from the file cache, so they are read again the next time they are
+	 * included even if their modification time and size haven't changed. This affects
+	 * every engine sharing the cache.
+	 * 
+	 * @param changed absolute paths of the files
+	 */
+	public void forget(Collection<Path> changed) {
+		sources.keySet().removeIf(path -> changed.contains(Paths.get(path).toAbsolutePath().normalize()));
+	}
+	
+	/**
+	 * Include a file, relative to the location of the input the interpreter is parsing.
+	 * 
+	 * @param interpreter the interpreter running the include
+	 * @param fileName name of the file
+	 * @param once true to skip the file if it has already been included
+	 * @throws HairballException if the file can't be read or fails to parse
+	 */
+	public void include(Interpreter interpreter, String fileName, boolean once) throws HairballException {
+		ParserContext context = interpreter.getParserContext();
+		String path = resolve(context.getWordStream().getCurrentLocation(), fileName);
+		if(once && included.contains(path)) {
+			log.log(Level.FINE, "Skipping "+path+", it is already included");
+			return;
+		}
+		PathConfinement.check(interpreter, path);
+		if(including.size() >= MAX_DEPTH)
+			throw new HairballException("Includes are nested more than "+MAX_DEPTH+" deep, including "+path);
+		long start = System.nanoTime();
+		boolean cached = read(path);
+		Source source = sources.get(path);
+		included.add(path);
+		including.push(path);
+		IWordStream wordStream = new IncludedWordStream(source.text, path);
+		IWordStream includer = context.getWordStream();
+		Parser parser = context.getParser();
+		boolean interpreting = parser.isInterpreting();
+		context.setWordStream(wordStream);
+		parser.interpret();
+		try {
+			parser.parse();
+			wordStream.close();
+		} catch (IOException e) {
+			throw new HairballException("Failed to parse "+path+" included at depth "+including.size(), e);
+		} catch (HairballException e) {
+			throw new HairballException(e.getMessage()+"\n  in "+path+" included at depth "+including.size(), e);
+		} finally {
+			context.setWordStream(includer);
+			if(interpreting) parser.interpret(); else parser.compile();
+			including.pop();
+			if(log.isLoggable(Level.FINE))
+				log.log(Level.FINE, "Included "+path+" at depth "+(including.size() + 1)+" in "
+						+(System.nanoTime() - start) / 1000000+"ms"+(cached ? ", cached" : ""));
+		}
+	}
+	
+	private static String resolve(String location, String fileName) {
+		return Paths.get(location).resolve(fileName).normalize().toString();
+	}
+	
+	/**
+	 * Make sure the cached source of a file is up to date.
+	 * 
+	 * @param path path of the file
+	 * @return true if the cached source was used
+	 * @throws HairballException if the file can't be read
+	 */
+	private boolean read(String path) throws HairballException {
+		FileSystem fileSystem = SharedVertx.get().fileSystem();
+		try {
+			FileProps props = fileSystem.propsBlocking(path);
+			Source source = sources.get(path);
+			if(source != null && source.modified == props.lastModifiedTime() && source.size == props.size())
+				return true;
+			String text = fileSystem.readFileBlocking(path).toString(StandardCharsets.UTF_8);
+			sources.put(path, new Source(text, props.lastModifiedTime(), props.size()));
+			return false;
+		} catch (FileSystemException e) {
+			throw new HairballException("Failed to read included file "+path, e);
+		}
+	}
+	
+	/**
+	 * The text of a file as it was when it was read.
+	 */
+	private static class Source {
+		final String text;
+		final long modified;
+		final long size;
+		
+		Source(String text, long modified, long size) {
+			this.text = text;
+			this.modified = modified;
+			this.size = size;
+		}
+	}
+	
+	/**
+	 * A word stream over the text of an included file, which knows where the file came
+	 * from so that errors name it and includes within it are relative to it.
+	 */
+	private static class IncludedWordStream extends StringWordStream {
+		private final String path;
+		
+		IncludedWordStream(String text, String path) {
+			super(text);
+			this.path = path;
+		}
+		
+		@Override
+		public String getSource() {
+			return path;
+		}
+		
+		@Override
+		public String getCurrentLocation() {
+			Path parent = Paths.get(path).getParent();
+			return parent == null ? "." : parent.toString();
+		}
+	}
+}
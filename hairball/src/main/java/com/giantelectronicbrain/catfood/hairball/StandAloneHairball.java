@@ -16,10 +16,18 @@
 */
 package com.giantelectronicbrain.catfood.hairball;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Stack;
 import java.util.logging.Logger;
@@ -39,55 +47,140 @@ import io.vertx.core.Vertx;
  *
  */
 public class StandAloneHairball {
-	public static ServerPlatform PLATFORM = new ServerPlatform();
-	private final Dictionary rootDictionary = new Dictionary("root");
+	public static final ServerPlatform PLATFORM = new ServerPlatform();
+	private final IPlatform platform;
+	private final Dictionary rootDictionary;
 	private final Parser parser;
 	private final Interpreter interpreter;
-	public static String VERSION = null; // Hairball version string, get it here
 
 	public static void main(String[] args) throws IOException, HairballException, ConfigurationException {
-		Vertx vertx = Vertx.vertx();
 		int statusCode = 0;
 		try {
 			Object[] conf = Configurator.createConfiguration(Arrays.asList(args));
 			if(conf == null) return;
 			Properties configuration = (Properties) conf[0];
 			List<String> argList = (List<String>) conf[1];
-			VERSION = getVersion();
-			String loopOption = configuration.getProperty("loopOption");
-			int loopCount = loopOption == null ? 1 : Integer.parseInt(loopOption);
-			long startingTime = System.currentTimeMillis(); 
-			for(int i = 0; i < loopCount; i++) {
-				IWordStream wordStream = makeWordStream(vertx, argList, configuration);
-				Output output = makeOutput(configuration);
-				StandAloneHairball hairball = new StandAloneHairball(wordStream,output);
-				hairball.execute();
-			}
-			long endingTime = System.currentTimeMillis();
-			if(loopCount > 1) printElapsed(startingTime,endingTime);
+			if(configuration.getProperty("connect") != null)
+				statusCode = sendToDaemon(argList, configuration);
+			else if(configuration.getProperty("daemon") != null)
+				runDaemon(SharedVertx.get(), configuration);
+			else
+				render(argList, configuration);
 		} catch (Exception e) {
 			System.out.println(e.getLocalizedMessage());
 			e.printStackTrace();
 			statusCode = -1;
 		} finally {
-			if(vertx != null) vertx.close();
+			SharedVertx.close();
 		}
-		if(statusCode != 0)
-			System.exit(statusCode);
+		// Vert.x's event loop threads linger for most of a second after it has closed,
+		// and everything has been written by now, so don't wait for them
+		System.exit(statusCode);
 	}
 	
 	/**
-	 * Gets the implementation version from the package. This should be the version
-	 * of Hairball which is running, although it may be wrong if you are not running
-	 * a packaged version of the application, I'm not sure...
+	 * Render the input files, or the console, as the configuration asks, as many times as
+	 * --loop says. Vert.x is only started if something needs a bucket, so rendering the
+	 * console doesn't pay for it.
 	 * 
-	 * @return Hairball version string
+	 * @param argList input files
+	 * @param configuration
+	 * @throws IOException
+	 * @throws HairballException
 	 */
-	private static String getVersion() {
-		Package aPackage = StandAloneHairball.class.getPackage();
-		return aPackage.getImplementationVersion();
+	private static void render(List<String> argList, Properties configuration) throws IOException, HairballException {
+		String loopOption = configuration.getProperty("loopOption");
+		int loopCount = loopOption == null ? 1 : Integer.parseInt(loopOption);
+		String maxTokens = configuration.getProperty("maxTokens");
+		long tokenLimit = maxTokens == null ? 0 : Long.parseLong(maxTokens);
+		String stacksFile = configuration.getProperty("profile");
+		Profiler profiler = stacksFile == null ? null : new Profiler();
+		IVocabularyLoader vocabularyLoader = makeVocabularyLoader(configuration);
+		long startingTime = System.currentTimeMillis(); 
+		for(int i = 0; i < loopCount; i++) {
+			if(configuration.getProperty("targets") != null) {
+				runTargets(SharedVertx.get(), argList, configuration, tokenLimit, profiler, vocabularyLoader);
+				continue;
+			}
+			if(configuration.getProperty("jobs") != null || Boolean.parseBoolean(configuration.getProperty("watch"))) {
+				runBuild(SharedVertx.get(), argList, configuration, tokenLimit, vocabularyLoader);
+				continue;
+			}
+			IWordStream wordStream = makeWordStream(argList, configuration);
+			Output output = makeOutput(configuration, wordStream);
+			StandAloneHairball hairball = new StandAloneHairball(wordStream,output);
+			configure(hairball, configuration, tokenLimit, profiler, vocabularyLoader);
+			boolean rendered = false;
+			try {
+				hairball.execute();
+				rendered = true;
+			} finally {
+				if(rendered)
+					output.flush();
+				else
+					output.abort(); // the console keeps what was emitted, an output file is left as it was
+			}
+			profiler = hairball.getProfiler(); // /PROFILE-ON may have made one
+		}
+		long endingTime = System.currentTimeMillis();
+		if(loopCount > 1) printElapsed(startingTime,endingTime);
+		if(profiler != null) printProfile(profiler,stacksFile);
+		printWrites(UnchangedWrites.PROCESS);
 	}
-
+	
+	/**
+	 * Run as a render daemon on the --daemon loopback port until it has been idle for
+	 * --idle seconds. Jobs are set up just as they would be on the command line, and can
+	 * only use files under --base.
+	 * 
+	 * @param vertx
+	 * @param configuration
+	 * @throws IOException if the port can't be listened on
+	 */
+	private static void runDaemon(Vertx vertx, Properties configuration) throws IOException {
+		String maxTokens = configuration.getProperty("maxTokens");
+		long tokenLimit = maxTokens == null ? 0 : Long.parseLong(maxTokens);
+		IVocabularyLoader vocabularyLoader = makeVocabularyLoader(configuration);
+		String jobs = configuration.getProperty("jobs");
+		RenderDaemon daemon = new RenderDaemon(Integer.parseInt(configuration.getProperty("daemon")),
+				Paths.get(configuration.getProperty("base", ".")), vertx,
+				jobs == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(jobs),
+				Long.parseLong(configuration.getProperty("idle", Long.toString(RenderDaemon.DEFAULT_IDLE))),
+				engine -> configure(engine, configuration, tokenLimit, null, vocabularyLoader));
+		System.err.println("Hairball daemon listening on port "+daemon.getPort());
+		daemon.run();
+	}
+	
+	/**
+	 * Send the job on the command line to the render daemon on the --connect port instead
+	 * of rendering it here, or ask it for its status with --status. Paths are sent
+	 * absolute, since the daemon may be running somewhere else.
+	 * 
+	 * @param argList input files
+	 * @param configuration
+	 * @return the exit status, 0 if the job succeeded
+	 * @throws IOException if the daemon can't be reached
+	 */
+	private static int sendToDaemon(List<String> argList, Properties configuration) throws IOException {
+		int port = Integer.parseInt(configuration.getProperty("connect"));
+		List<String> request = new ArrayList<>();
+		if(Boolean.parseBoolean(configuration.getProperty("status"))) {
+			request.add(RenderDaemon.STATUS);
+		} else {
+			request.add(RenderDaemon.RENDER);
+			request.add("base="+Paths.get(configuration.getProperty("base", ".")).toAbsolutePath().normalize());
+			String prelude = configuration.getProperty("prelude");
+			if(prelude != null)
+				for(String file : prelude.split(File.pathSeparator)) request.add("prelude="+file);
+			for(String input : argList) request.add("input="+input);
+			String output = configuration.getProperty("output");
+			if(output != null) request.add("output="+Paths.get(output).toAbsolutePath());
+			String filters = configuration.getProperty("filters");
+			if(filters != null) request.add("filter="+filters);
+		}
+		return RenderDaemon.send(port, request, System.out, System.err);
+	}
+	
 	/**
 	 * Output the elapsed execution time, including setup of inputs and outputs
 	 * plus the run of the parser.
@@ -107,6 +200,38 @@ public class StandAloneHairball {
 		System.out.println(result);
 	}
 
+	/**
+	 * Report how many output files were written and how many were left alone because
+	 * their content hadn't changed. Nothing is printed if there were no output files.
+	 * 
+	 * @param writes the counts
+	 */
+	private static void printWrites(UnchangedWrites writes) {
+		if(writes.getWritten() + writes.getUnchanged() > 0)
+			System.err.println("Outputs: "+writes);
+	}
+
+	/**
+	 * Print the profiler report to standard error, and write the collapsed stacks to
+	 * the given file, or also to standard error if there is no file.
+	 * 
+	 * @param profiler the profiler to report on
+	 * @param stacksFile file for the collapsed stacks, or null
+	 * @throws IOException if the file can't be written
+	 */
+	private static void printProfile(Profiler profiler, String stacksFile) throws IOException {
+		System.err.println(profiler.report());
+		if(stacksFile == null) {
+			System.err.println(profiler.collapsedStacks());
+		} else {
+			Files.write(Paths.get(stacksFile), profiler.collapsedStacks().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * The platform for running on a server. It keeps no state, so every instance in
+	 * the process can share it.
+	 */
 	static class ServerPlatform implements IPlatform {
 
 		@Override
@@ -119,41 +244,282 @@ public class StandAloneHairball {
 			return Logger.getLogger(name);
 		}
 
+		/**
+		 * Gets the implementation version from the package. This should be the version
+		 * of Hairball which is running, although it may be wrong if you are not running
+		 * a packaged version of the application, I'm not sure...
+		 * 
+		 * @return Hairball version string
+		 */
 		@Override
 		public String getVersion() {
-			// TODO Auto-generated method stub
-			return null;
+			Package aPackage = StandAloneHairball.class.getPackage();
+			return aPackage.getImplementationVersion();
 		}
 		
 	}
 	
 	/**
-	 * Create a console output. This ignores args.
+	 * Put an output behind a chain of filters, if any are given.
 	 * 
-	 * @param args
-	 * @return
+	 * @param output the output
+	 * @param stages comma separated filter stages, or null
+	 * @return the filtered output, or the output if there are no filters
+	 * @throws IOException if a stage is unknown
+	 */
+	private static Output filter(Output output, String stages) throws IOException {
+		return stages == null ? output : new FilteredOutput(output, stages);
+	}
+	
+	/**
+	 * Create the output, which is a file if one was given with --output, and otherwise
+	 * is a buffered console output, behind any filters given with --filter. The file
+	 * is only replaced if its content changes. When the input is typed at the console the
+	 * console output isn't buffered, so what each line does appears before the next prompt.
+	 * 
+	 * @param properties
+	 * @param wordStream the input
+	 * @return the output
+	 * @throws IOException if the output file can't be opened
+	 */
+	private static Output makeOutput(Properties properties, IWordStream wordStream) throws IOException {
+		String fileName = properties.getProperty("output");
+		Output output;
+		if(fileName != null)
+			output = new FsOutput(fileName, UnchangedWrites.PROCESS);
+		else if(wordStream instanceof ConsoleWordStream)
+			output = new ConsoleOutput();
+		else
+			output = BufferedOutput.console();
+		return filter(output, properties.getProperty("filters"));
+	}
+
+	/**
+	 * Set up an engine as the configuration asks.
+	 * 
+	 * @param hairball the engine
+	 * @param properties
+	 * @param tokenLimit maximum tokens to run, or zero
+	 * @param profiler profiler, or null
+	 * @param vocabularyLoader vocabulary loader, or null
+	 */
+	private static void configure(StandAloneHairball hairball, Properties properties, long tokenLimit,
+			Profiler profiler, IVocabularyLoader vocabularyLoader) {
+		if(Boolean.parseBoolean(properties.getProperty("compile")))
+			hairball.setTokenCompiler(MethodHandleCompiler.INSTANCE);
+		hairball.setTokenLimit(tokenLimit);
+		hairball.setProfiler(profiler);
+		hairball.setVocabularyLoader(vocabularyLoader);
+	}
+	
+	/**
+	 * Render the input once for each target given with --target. A target is a prelude,
+	 * which sets up the engine for an output format, and the file the output goes to,
+	 * separated by '='. An output of '-' is standard output. A target's output goes through
+	 * the filters given by the property filters.output, or filters if there isn't one. The input is only read and
+	 * tokenized once for all of the targets. With --parallel each target runs on its own
+	 * thread, and isn't profiled since the profiler can't be shared between threads.
+	 * 
+	 * @param vertx
+	 * @param args input files
+	 * @param properties
+	 * @param tokenLimit maximum tokens for each target, or zero
+	 * @param profiler profiler, or null
+	 * @param vocabularyLoader vocabulary loader, or null
+	 * @throws IOException
+	 * @throws HairballException
 	 */
-	private static Output makeOutput(Properties properties) {
-		//TODO: support directing output to other places besides STDOUT
-		return new ConsoleOutput();
+	private static void runTargets(Vertx vertx, List<String> args, Properties properties, long tokenLimit,
+			Profiler profiler, IVocabularyLoader vocabularyLoader) throws IOException, HairballException {
+		String base = properties.getProperty("base", ".");
+		boolean parallel = Boolean.parseBoolean(properties.getProperty("parallel"));
+		MultiTargetRunner runner = new MultiTargetRunner(makeWordStream(args, properties));
+		for(String target : properties.getProperty("targets").split(File.pathSeparator)) {
+			int split = target.indexOf('=');
+			if(split == -1) throw new HairballException("Target "+target+" should be prelude=output");
+			String outputName = target.substring(split + 1);
+			Output output = outputName.equals("-") ? BufferedOutput.console() : new FsOutput(outputName, UnchangedWrites.PROCESS);
+			output = filter(output, properties.getProperty("filters."+outputName, properties.getProperty("filters")));
+			IWordStream prelude = new BucketWordStream(vertx.fileSystem(), target.substring(0, split), base);
+			StandAloneHairball engine = new StandAloneHairball(prelude, output);
+			configure(engine, properties, tokenLimit, parallel ? null : profiler, vocabularyLoader);
+			engine.load();
+			runner.add(target, engine);
+		}
+		runner.run(parallel);
+	}
+
+	/**
+	 * Render each input file, or each file matched by a glob, as a document on its own
+	 * with --jobs workers. Every document is run by a fork of an engine which has loaded
+	 * the --prelude files, and its output goes to a file of the same name under --outdir,
+	 * with the --extension. Each document is filtered as the output given with --filter
+	 * would be, and is only replaced if it changes. The throughput of each worker is
+	 * reported afterwards, along with any documents which failed. With --cache documents
+	 * whose inputs haven't changed are copied out of a BuildCache instead, and the hit
+	 * rate is reported. With --watch the build then carries on rendering documents again
+	 * as they change, see WatchBuild.
+	 * 
+	 * @param vertx
+	 * @param args input files and globs
+	 * @param properties
+	 * @param tokenLimit maximum tokens for each document, or zero
+	 * @param vocabularyLoader vocabulary loader, or null
+	 * @throws IOException
+	 * @throws HairballException if any document failed
+	 */
+	private static void runBuild(Vertx vertx, List<String> args, Properties properties, long tokenLimit,
+			IVocabularyLoader vocabularyLoader) throws IOException, HairballException {
+		String base = properties.getProperty("base", ".");
+		String prelude = properties.getProperty("prelude");
+		List<String> preludes = prelude == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(prelude.split(File.pathSeparator)));
+		WatchBuild.Loader loader = () -> {
+			StandAloneHairball prototype = new StandAloneHairball();
+			configure(prototype, properties, 0, null, vocabularyLoader);
+			if(!preludes.isEmpty()) {
+				prototype.setIO(new FileCollectionWordStream(vertx, base, new ArrayList<>(preludes)),
+						new StreamOutput(OutputStream.nullOutputStream()));
+				prototype.load();
+			}
+			return prototype;
+		};
+		if(Boolean.parseBoolean(properties.getProperty("watch"))) {
+			WatchBuild.Renderer renderer = (prototype, documents) ->
+				build(vertx, prototype, documents, properties, tokenLimit, vocabularyLoader, null);
+			try(WatchBuild watch = new WatchBuild(base, args, preludes, loader, renderer)) {
+				watch.run(System.err);
+			}
+			return;
+		}
+		String cacheDirectory = properties.getProperty("cache");
+		BuildCache cache = cacheDirectory == null ? null : new BuildCache(Paths.get(cacheDirectory), Paths.get(base));
+		ParallelBuild.Report report = build(vertx, loader.load(), ParallelBuild.expand(base, args), properties,
+				tokenLimit, vocabularyLoader, cache);
+		System.err.println(report);
+		if(cache != null) System.err.println("Cache: "+cache);
+		report.check();
+	}
+	
+	/**
+	 * Render documents with forks of a prototype, as runBuild describes.
+	 * 
+	 * @param vertx
+	 * @param prototype engine with the preludes loaded
+	 * @param documents names of the documents
+	 * @param properties
+	 * @param tokenLimit maximum tokens for each document, or zero
+	 * @param vocabularyLoader vocabulary loader, or null
+	 * @param cache build cache, or null
+	 * @return the build report, which only covers the documents which were rendered
+	 * @throws IOException if the cache can't be used
+	 * @throws HairballException if interrupted
+	 */
+	private static ParallelBuild.Report build(Vertx vertx, StandAloneHairball prototype, List<String> documents,
+			Properties properties, long tokenLimit, IVocabularyLoader vocabularyLoader, BuildCache cache)
+			throws IOException, HairballException {
+		String base = properties.getProperty("base", ".");
+		Path outdir = Paths.get(properties.getProperty("outdir", "."));
+		String extension = properties.getProperty("extension", "html");
+		String filters = properties.getProperty("filters");
+		String jobs = properties.getProperty("jobs");
+		ParallelBuild build = new ParallelBuild(prototype,
+				jobs == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(jobs),
+				engine -> configure(engine, properties, tokenLimit, null, vocabularyLoader));
+		String context = cache == null ? null : cache.context(cacheSettings(properties, extension, filters),
+				cacheFiles(prototype, properties));
+		Map<String,String> keys = new HashMap<>();
+		for(String document : documents) {
+			Path target = outdir.resolve(ParallelBuild.outputName(document, extension));
+			if(cache != null) {
+				String key = cache.documentKey(context, document);
+				if(cache.restore(key, target, UnchangedWrites.PROCESS)) continue;
+				keys.put(document, key);
+			}
+			build.add(document, () -> new BucketWordStream(vertx.fileSystem(), document, base), () -> {
+				Files.createDirectories(target.toAbsolutePath().getParent());
+				return filter(new FsOutput(target.toString(), UnchangedWrites.PROCESS), filters);
+			});
+		}
+		ParallelBuild.Report report = build.run();
+		for(Map.Entry<String,String> key : keys.entrySet()) {
+			if(report.hasFailed(key.getKey())) continue;
+			cache.store(key.getValue(), report.getIncludes().get(key.getKey()),
+					outdir.resolve(ParallelBuild.outputName(key.getKey(), extension)));
+		}
+		return report;
+	}
+	
+	/**
+	 * Get the settings which change what a build renders, for the build cache.
+	 * 
+	 * @param properties
+	 * @param extension output extension
+	 * @param filters output filters, or null
+	 * @return the settings
+	 */
+	private static Map<String,String> cacheSettings(Properties properties, String extension, String filters) {
+		Map<String,String> settings = new HashMap<>();
+		settings.put("version", String.valueOf(PLATFORM.getVersion()));
+		settings.put("extension", extension);
+		settings.put("filters", String.valueOf(filters));
+		settings.put("prelude", properties.getProperty("prelude", ""));
+		return settings;
+	}
+	
+	/**
+	 * Get the files which every document in a build depends on, for the build cache. These
+	 * are the preludes, what they included, and everything in the vocabulary path, since
+	 * which vocabularies a document loads isn't recorded.
+	 * 
+	 * @param prototype engine with the preludes loaded
+	 * @param properties
+	 * @return the files
+	 * @throws IOException if the vocabulary path can't be walked
+	 */
+	private static List<Path> cacheFiles(StandAloneHairball prototype, Properties properties) throws IOException {
+		Path base = Paths.get(properties.getProperty("base", "."));
+		List<Path> files = new ArrayList<>();
+		String prelude = properties.getProperty("prelude");
+		if(prelude != null)
+			for(String file : prelude.split(File.pathSeparator)) files.add(base.resolve(file));
+		for(String file : prototype.getIncludes().getIncluded()) files.add(Paths.get(file));
+		String vocabPath = properties.getProperty("vocabPath");
+		if(vocabPath != null) {
+			List<Path> buckets = new ArrayList<>();
+			for(String bucket : vocabPath.split(File.pathSeparator)) buckets.add(Paths.get(bucket));
+			files.addAll(BuildCache.filesUnder(buckets));
+		}
+		return files;
+	}
+
+	/**
+	 * Create a loader for the vocabulary path, if one was configured.
+	 * 
+	 * @param properties
+	 * @return the loader, or null if there is no vocabulary path
+	 */
+	private static IVocabularyLoader makeVocabularyLoader(Properties properties) {
+		String vocabPath = properties.getProperty("vocabPath");
+		if(vocabPath == null) return null;
+		return new BucketVocabularyLoader(SharedVertx.get().fileSystem(), Arrays.asList(vocabPath.split(File.pathSeparator)));
 	}
 
 	/**
 	 * Create a WordStream which uses the current working directory and a list
 	 * of arguments. If the argument list is empty, it will be a ConsoleWordStream,
-	 * else a FileCollectionWordStream.
+	 * else a FileCollectionWordStream, which is the only one which needs Vert.x.
 	 * 
 	 * @param args
 	 * @return
 	 */
-	private static IWordStream makeWordStream(Vertx vertx, List<String> args, Properties properties) {
+	private static IWordStream makeWordStream(List<String> args, Properties properties) {
 		if(args == null || args.size() == 0)
 			return new ConsoleWordStream("\n>");
 		else {
 			String cwd = (String) properties.get("base");
 			if(cwd == null) cwd = ".";
 			List<String> copyOfArgs = new ArrayList<>(args);
-			return new FileCollectionWordStream(vertx,cwd,copyOfArgs);
+			return new FileCollectionWordStream(SharedVertx.get(),cwd,copyOfArgs);
 		}
 	}
 
@@ -173,12 +539,83 @@ public class StandAloneHairball {
 	 * input IWordStream. Those will have to be supplied by a call to setIO.
 	 */
 	public StandAloneHairball() {
+		this(PLATFORM);
+	}
+	
+	/**
+	 * Create a Hairball instance on the given platform, without any associated output
+	 * stream or input IWordStream. Instances share nothing which changes while they
+	 * run, so any number of them can run at once, each on its own thread.
+	 * 
+	 * @param platform the platform this instance logs to and gets its version from
+	 */
+	public StandAloneHairball(IPlatform platform) {
+		this(platform, new Dictionary("root"));
 		IVocabulary hbVocab = ExtendHairballVocabulary.create();
 		rootDictionary.add(hbVocab);
+		setVocabularyLoader(null);
+	}
+	
+	/**
+	 * Create a Hairball instance which uses the given dictionary.
+	 * 
+	 * @param platform the platform to use
+	 * @param dictionary the dictionary to use
+	 */
+	private StandAloneHairball(IPlatform platform, Dictionary dictionary) {
+		this.platform = platform;
+		rootDictionary = dictionary;
 		interpreter = new Interpreter();
 		parser = new Parser();
 	}
 	
+	/**
+	 * Fork this Hairball instance. The fork starts out with everything which has been
+	 * defined here, for example by loading vocabularies, without copying or re-parsing
+	 * any of it. It has its own stacks and no input or output, so setIO must be called
+	 * before executing it. Definitions made in the fork are not seen by this instance.
+	 * 
+	 * @return the new instance
+	 */
+	public StandAloneHairball fork() {
+		StandAloneHairball forked = new StandAloneHairball(platform, rootDictionary.fork());
+		forked.setTokenCompiler(interpreter.getTokenCompiler());
+		SourceIncludes includes = interpreter.getExtension(SourceIncludes.class);
+		if(includes != null) forked.interpreter.setExtension(SourceIncludes.class, includes.fork());
+		PathConfinement confinement = interpreter.getExtension(PathConfinement.class);
+		if(confinement != null) forked.interpreter.setExtension(PathConfinement.class, confinement);
+		return forked;
+	}
+	
+	/**
+	 * Confine the files this instance, and forks made after this, include and open to a
+	 * directory. See PathConfinement.
+	 * 
+	 * @param root the directory
+	 */
+	public void confine(Path root) {
+		interpreter.setExtension(PathConfinement.class, new PathConfinement(root));
+	}
+	
+	/**
+	 * Get ready to be forked from several threads at once. After this, fork only
+	 * reads this instance, until something new is defined in it, so call it once
+	 * the instance has been set up and before any workers start forking it.
+	 */
+	public void share() {
+		rootDictionary.share();
+	}
+	
+	/**
+	 * Get the files this instance has included with /SOURCE" and /REQUIRE". Forks made
+	 * after this share its file cache.
+	 * 
+	 * @return the includes
+	 */
+	public SourceIncludes getIncludes() {
+		return SourceIncludes.of(interpreter);
+	}
+	
 	/**
 	 * Set the input and output of this Hairball instance.
 	 * 
@@ -186,7 +623,7 @@ public class StandAloneHairball {
 	 * @param output
 	 */
 	public void setIO(IWordStream wordStream,Output output) {
-		ParserContext pcontext = new ParserContext(wordStream,rootDictionary,interpreter,output,parser);
+		ParserContext pcontext = new ParserContext(wordStream,rootDictionary,interpreter,output,parser,platform);
 		interpreter.setParserContext(pcontext);
 		parser.setParserContext(pcontext);
 	}
@@ -198,11 +635,77 @@ public class StandAloneHairball {
 	 */
 	public void setInput(IWordStream wordStream) {
 		Output output = this.parser.getContext().getOutput();
-		ParserContext pcontext = new ParserContext(wordStream,rootDictionary,interpreter,output,parser);
+		ParserContext pcontext = new ParserContext(wordStream,rootDictionary,interpreter,output,parser,platform);
 		interpreter.setParserContext(pcontext);
 		parser.setParserContext(pcontext);
 	}
 	
+	/**
+	 * Set a token compiler for this instance, or null to only interpret.
+	 * 
+	 * @param tokenCompiler the compiler to use
+	 */
+	public void setTokenCompiler(ITokenCompiler tokenCompiler) {
+		interpreter.setTokenCompiler(tokenCompiler);
+	}
+	
+	/**
+	 * Limit the number of tokens this instance will execute before giving up with
+	 * a HairballException.
+	 * 
+	 * @param tokenLimit maximum number of tokens, or zero for no limit
+	 */
+	public void setTokenLimit(long tokenLimit) {
+		interpreter.setTokenLimit(tokenLimit);
+	}
+	
+	/**
+	 * Have this instance call the given handler after every sliceSize tokens.
+	 * 
+	 * @param sliceSize number of tokens in a slice
+	 * @param yieldHandler handler to call, or null to stop yielding
+	 */
+	public void setSlice(int sliceSize, IYieldHandler yieldHandler) {
+		interpreter.setSlice(sliceSize, yieldHandler);
+	}
+	
+	/**
+	 * Set a loader for vocabularies which are used before they have been defined. Built in
+	 * vocabularies such as PDF are always loaded by a BuiltinVocabularyLoader first.
+	 * 
+	 * @param vocabularyLoader the loader, or null
+	 */
+	public void setVocabularyLoader(IVocabularyLoader vocabularyLoader) {
+		rootDictionary.setVocabularyLoader(new BuiltinVocabularyLoader(vocabularyLoader));
+	}
+	
+	/**
+	 * Set a word profiler for this instance, or null to stop profiling.
+	 * 
+	 * @param profiler the profiler
+	 */
+	public void setProfiler(Profiler profiler) {
+		interpreter.setProfiler(profiler);
+	}
+	
+	/**
+	 * Get the word profiler, if there is one.
+	 * 
+	 * @return the profiler, or null
+	 */
+	public Profiler getProfiler() {
+		return interpreter.getProfiler();
+	}
+	
+	/**
+	 * Get the number of tokens this instance has executed.
+	 * 
+	 * @return tokens executed
+	 */
+	public long getTokensExecuted() {
+		return interpreter.getTokensExecuted();
+	}
+	
 	/**
 	 * Run the Hairball engine, processing the input until eof and generating
 	 * output, etc. This is the main entry point for actually running a Hairball
@@ -219,6 +722,54 @@ public class StandAloneHairball {
 		return pctx;
 	}
 
+	/**
+	 * Run the engine just as execute does, recording what the input does so that
+	 * it can be replayed.
+	 * 
+	 * @return the recording
+	 * @throws IOException
+	 * @throws HairballException
+	 */
+	public Recording record() throws IOException, HairballException {
+		parser.interpret();
+		Recording recording = parser.record();
+		parser.close();
+		return recording;
+	}
+	
+	/**
+	 * Replay a recording made by this instance, or by the one it was forked from,
+	 * sending the output to the given Output, which is closed afterwards.
+	 * 
+	 * @param recording the recording
+	 * @param output where the output goes
+	 * @param bindings values for the variables the recording uses, keyed by name
+	 * @return the context the recording was replayed in
+	 * @throws IOException
+	 * @throws HairballException
+	 */
+	public ParserContext replay(Recording recording, Output output, Map<String,Object> bindings) throws IOException, HairballException {
+		ParserContext pctx = parser.replay(recording, output, bindings);
+		pctx.close();
+		return pctx;
+	}
+
+	/**
+	 * Run the current input, but leave the output open so that more input can be
+	 * given with setInput and run afterwards. This is how a prelude which sets up
+	 * vocabularies is loaded.
+	 * 
+	 * @return the ParserContext
+	 * @throws IOException
+	 * @throws HairballException
+	 */
+	public ParserContext load() throws IOException, HairballException {
+		parser.interpret();
+		ParserContext pctx = parser.parse();
+		pctx.getWordStream().close();
+		return pctx;
+	}
+
 	/**
 	 * Get the whole parameter stack. This is mainly useful for testing.
 	 */
@@ -240,6 +791,15 @@ public class StandAloneHairball {
 		return interpreter.currentContext();
 	}
 
+	/**
+	 * Get the platform this instance runs on.
+	 * 
+	 * @return the platform
+	 */
+	public IPlatform getPlatform() {
+		return platform;
+	}
+
 	/**
 	 * Return the parser for this Hairball instance.
 	 * 
@@ -0,0 +1,177 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Replaces output files only when their content has changed, so that regenerating a
+ * site doesn't touch the pages which came out the same, and counts how many files were
+ * written and how many were left alone.
+ * 
+ * Output is written to a temporary file next to the target while its SHA-256 digest is
+ * computed. The digest of what is already there is kept in a hidden file beside it,
+ * .name.sha256, and if that is missing or older than the target the target is hashed
+ * instead. If the digests match the temporary file is deleted, otherwise it is moved
+ * over the target atomically.
+ * 
+ * @author tharter
+ *
+ */
+public class UnchangedWrites {
+	/**
+	 * The counts for the whole process, which outputs use unless they are given another.
+	 */
+	public static final UnchangedWrites PROCESS = new UnchangedWrites();
+	
+	private int written = 0;
+	private int unchanged = 0;
+	
+	/**
+	 * Make a digest of the kind used to compare content.
+	 * 
+	 * @return the digest
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is always available", e);
+		}
+	}
+	
+	/**
+	 * Make the temporary file to write a target's new content to.
+	 * 
+	 * @param target the target
+	 * @return the temporary file, in the same directory so it can be moved atomically
+	 * @throws IOException
+	 */
+	public static Path temporaryFor(Path target) throws IOException {
+		Path absolute = target.toAbsolutePath();
+		return Files.createTempFile(absolute.getParent(), "."+absolute.getFileName(), ".tmp");
+	}
+	
+	/**
+	 * Replace the target with the temporary file if the content differs.
+	 * 
+	 * @param temporary the new content
+	 * @param target the file to replace
+	 * @param digest the digest of the new content
+	 * @return true if the target was written
+	 * @throws IOException
+	 */
+	public boolean replace(Path temporary, Path target, byte[] digest) throws IOException {
+		String newDigest = toHex(digest);
+		Path sidecar = sidecarFor(target);
+		if(newDigest.equals(existingDigest(target, sidecar))) {
+			Files.delete(temporary);
+			count(false);
+			return false;
+		}
+		Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		Path sidecarTemporary = temporaryFor(sidecar);
+		Files.write(sidecarTemporary, newDigest.getBytes(StandardCharsets.US_ASCII));
+		Files.move(sidecarTemporary, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		count(true);
+		return true;
+	}
+	
+	private static Path sidecarFor(Path target) {
+		Path absolute = target.toAbsolutePath();
+		return absolute.resolveSibling("."+absolute.getFileName()+".sha256");
+	}
+	
+	/**
+	 * Get the digest of what is in the target now.
+	 * 
+	 * @return the digest, or null if there is no target
+	 */
+	private static String existingDigest(Path target, Path sidecar) throws IOException {
+		if(!Files.exists(target)) return null;
+		if(Files.exists(sidecar)
+				&& Files.getLastModifiedTime(sidecar).compareTo(Files.getLastModifiedTime(target)) >= 0)
+			return new String(Files.readAllBytes(sidecar), StandardCharsets.US_ASCII).trim();
+		return digestOf(target);
+	}
+	
+	/**
+	 * Get the digest of a file's content.
+	 * 
+	 * @param file the file
+	 * @return the digest, in hex
+	 * @throws IOException if the file can't be read
+	 */
+	static String digestOf(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		try(InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[BufferedOutput.DEFAULT_SIZE];
+			for(int n = in.read(buffer); n != -1; n = in.read(buffer))
+				digest.update(buffer, 0, n);
+		}
+		return toHex(digest.digest());
+	}
+	
+	static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for(byte b : bytes)
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return sb.toString();
+	}
+	
+	/**
+	 * Count a file which was written, or left alone.
+	 * 
+	 * @param changed true if it was written
+	 */
+	public synchronized void count(boolean changed) {
+		if(changed)
+			written++;
+		else
+			unchanged++;
+	}
+	
+	/**
+	 * Get the number of files written.
+	 * 
+	 * @return files written
+	 */
+	public synchronized int getWritten() {
+		return written;
+	}
+	
+	/**
+	 * Get the number of files which were left alone because they hadn't changed.
+	 * 
+	 * @return files unchanged
+	 */
+	public synchronized int getUnchanged() {
+		return unchanged;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return written+" written, "+unchanged+" unchanged";
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keep a build up to date as its files change. The documents are rendered once, and
+ * then the build waits for the documents, the files they include with /SOURCE" and
+ * /REQUIRE" and the preludes to change. The preludes are kept loaded in a prototype
+ * engine, as they are for ParallelBuild, so only the documents are rendered again.
+ * 
+ * What each document included the last time it was rendered is recorded, and when
+ * files change only the documents which read one of them are rendered again. If a
+ * prelude, or anything it included, changes then the prototype is loaded again and
+ * every document is rendered. Document names which are globs are expanded again after
+ * every change, so new documents are rendered and deleted ones are forgotten. How long
+ * each rebuild took, from the change being seen to the last output being written, is
+ * reported.
+ * 
+ * @author tharter
+ *
+ */
+public class WatchBuild implements Closeable {
+	/**
+	 * How long to wait for more changes before rebuilding, since editors often save
+	 * a file in more than one step.
+	 */
+	public static final long SETTLE_MILLIS = 50;
+	
+	private final String base;
+	private final List<String> names;
+	private final Set<Path> preludes = new HashSet<>();
+	private final Loader loader;
+	private final Renderer renderer;
+	private final WatchService watcher;
+	private final Set<Path> watched = new HashSet<>();
+	private final Map<String,Set<Path>> dependencies = new ConcurrentHashMap<>();
+	private final Set<Path> prototypeDependencies = new HashSet<>();
+	private StandAloneHairball prototype = null;
+	
+	/**
+	 * Loads the preludes into a new prototype engine.
+	 */
+	@FunctionalInterface
+	public static interface Loader {
+		public StandAloneHairball load() throws IOException, HairballException;
+	}
+	
+	/**
+	 * Renders some of the documents with forks of the prototype.
+	 */
+	@FunctionalInterface
+	public static interface Renderer {
+		public ParallelBuild.Report render(StandAloneHairball prototype, List<String> documents) throws IOException, HairballException;
+	}
+	
+	/**
+	 * Create a watched build.
+	 * 
+	 * @param base directory the documents and preludes are relative to
+	 * @param names document names and globs, see ParallelBuild.expand
+	 * @param preludes the prelude files the loader loads
+	 * @param loader loads the preludes into a prototype engine
+	 * @param renderer renders documents
+	 * @throws IOException if the file system can't be watched
+	 */
+	public WatchBuild(String base, List<String> names, List<String> preludes, Loader loader, Renderer renderer) throws IOException {
+		this.base = base;
+		this.names = new ArrayList<>(names);
+		for(String prelude : preludes) this.preludes.add(absolute(Paths.get(base).resolve(prelude)));
+		this.loader = loader;
+		this.renderer = renderer;
+		this.watcher = FileSystems.getDefault().newWatchService();
+	}
+	
+	/**
+	 * Render every document, then rebuild the ones affected by each change until this
+	 * is closed or the thread is interrupted. Each rebuild is reported to the given
+	 * stream, along with any documents which failed, which don't stop the watch.
+	 * 
+	 * @param out where rebuilds are reported
+	 * @throws IOException if the file system can't be watched
+	 * @throws HairballException if the preludes fail to load the first time
+	 */
+	public void run(PrintStream out) throws IOException, HairballException {
+		long start = System.nanoTime();
+		prototype = loader.load();
+		prototypeDependencies.addAll(absolute(prototype.getIncludes().getIncluded()));
+		List<String> documents = ParallelBuild.expand(base, names);
+		ParallelBuild.Report report = render(documents);
+		out.println(report);
+		out.println("Built "+documents.size()+" documents in "+(System.nanoTime() - start) / 1000000
+				+"ms, watching for changes");
+		try {
+			while(true) {
+				WatchKey key = watcher.take();
+				start = System.nanoTime();
+				Set<Path> changed = new TreeSet<>();
+				do {
+					collect(key, changed);
+				} while((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+				if(!changed.isEmpty()) rebuild(changed, start, out);
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed, the watch is over
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Rebuild whatever the changed files affect.
+	 */
+	private void rebuild(Set<Path> changed, long start, PrintStream out) throws IOException {
+		prototype.getIncludes().forget(changed);
+		List<String> documents = ParallelBuild.expand(base, names);
+		dependencies.keySet().retainAll(documents);
+		List<String> affected = new ArrayList<>();
+		try {
+			if(!Collections.disjoint(changed, preludes) || !Collections.disjoint(changed, prototypeDependencies)) {
+				StandAloneHairball reloaded = loader.load();
+				prototype = reloaded;
+				prototypeDependencies.clear();
+				prototypeDependencies.addAll(absolute(prototype.getIncludes().getIncluded()));
+				affected.addAll(documents);
+			} else {
+				for(String document : documents) {
+					Set<Path> read = dependencies.get(document);
+					if(read == null || !Collections.disjoint(changed, read)) affected.add(document);
+				}
+			}
+		} catch (HairballException e) {
+			out.println("Preludes failed to load, keeping the ones loaded before: "+e.getMessage());
+			return;
+		}
+		if(affected.isEmpty()) return;
+		ParallelBuild.Report report = render(affected);
+		for(String failure : report.getFailures()) out.println(failure);
+		report(out, affected.size(), start, describe(changed));
+	}
+	
+	/**
+	 * Render documents, recording what they read and watching it.
+	 */
+	private ParallelBuild.Report render(List<String> documents) throws IOException {
+		ParallelBuild.Report report;
+		try {
+			report = renderer.render(prototype, documents);
+		} catch (HairballException e) {
+			throw new IOException("Build failed", e);
+		}
+		for(String document : documents) {
+			Set<Path> read = new HashSet<>(absolute(report.getIncludes().getOrDefault(document, Collections.emptySet())));
+			read.add(absolute(Paths.get(base).resolve(document)));
+			dependencies.put(document, read);
+			for(Path path : read) watch(path.getParent());
+		}
+		for(Path path : preludes) watch(path.getParent());
+		for(Path path : prototypeDependencies) watch(path.getParent());
+		for(String name : names)
+			if(name.chars().anyMatch(c -> "*?[{".indexOf(c) != -1)) watchTree(Paths.get(base));
+		return report;
+	}
+	
+	private void report(PrintStream out, int rendered, long start, String cause) {
+		out.println("Rebuilt "+rendered+" of "+dependencies.size()+" documents in "
+				+(System.nanoTime() - start) / 1000000+"ms after "+cause);
+	}
+	
+	private static String describe(Set<Path> changed) {
+		Path first = changed.iterator().next();
+		return changed.size() == 1 ? "a change to "+first : changed.size()+" changes, "+first+" first";
+	}
+	
+	/**
+	 * Add the files named by the events on a key to the changed files, watching any new
+	 * directories, and put the key back so it keeps watching.
+	 */
+	private void collect(WatchKey key, Set<Path> changed) throws IOException {
+		Path directory = (Path) key.watchable();
+		for(WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				for(Set<Path> read : dependencies.values()) changed.addAll(read); // lost track, so rebuild everything
+				continue;
+			}
+			Path path = absolute(directory.resolve((Path) event.context()));
+			if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path) && watched.contains(directory))
+				watchTree(path);
+			changed.add(path);
+		}
+		if(!key.reset()) watched.remove(directory);
+	}
+	
+	/**
+	 * Watch a directory, unless it is already watched.
+	 */
+	private void watch(Path directory) throws IOException {
+		if(directory != null && Files.isDirectory(directory) && watched.add(directory))
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+	
+	/**
+	 * Watch a directory and every directory under it.
+	 */
+	private void watchTree(Path root) throws IOException {
+		try(Stream<Path> paths = Files.walk(absolute(root))) {
+			for(Path directory : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) watch(directory);
+		}
+	}
+	
+	private static Path absolute(Path path) {
+		return path.toAbsolutePath().normalize();
+	}
+	
+	private static List<Path> absolute(Set<String> paths) {
+		List<Path> absolute = new ArrayList<>(paths.size());
+		for(String path : paths) absolute.add(absolute(Paths.get(path)));
+		return absolute;
+	}
+	
+	/**
+	 * Get the files a document read the last time it was rendered, itself and everything
+	 * it included.
+	 * 
+	 * @param document the document name
+	 * @return absolute paths of the files, or null if the document hasn't been rendered
+	 */
+	public Set<Path> getDependencies(String document) {
+		Set<Path> read = dependencies.get(document);
+		return read == null ? null : Collections.unmodifiableSet(read);
+	}
+	
+	/**
+	 * Stop watching. A run in progress returns once it is done with any rebuild it
+	 * is in the middle of.
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+}
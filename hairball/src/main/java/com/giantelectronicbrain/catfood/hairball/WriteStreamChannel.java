@@ -0,0 +1,147 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * A channel which writes to a Vertx WriteStream, such as a bucket object or an HTTP
+ * response, waiting whenever its write queue is full. So a slow stream holds up whoever
+ * is writing, rather than having everything queue up in memory. Since it waits, it must
+ * not be used from an event loop thread.
+ * 
+ * It can also update a digest with everything written.
+ * 
+ * @author tharter
+ *
+ */
+public class WriteStreamChannel implements WritableByteChannel {
+	public static final long TIME_OUT = 30; // seconds to wait for the stream
+	
+	private final WriteStream<Buffer> stream;
+	private final String name;
+	private final MessageDigest digest;
+	private volatile Throwable failure = null;
+	private boolean open = true;
+	
+	/**
+	 * Create a channel.
+	 * 
+	 * @param stream the stream to write to
+	 * @param name name of the stream, for error messages
+	 * @param digest digest to update with what is written, or null
+	 */
+	public WriteStreamChannel(WriteStream<Buffer> stream, String name, MessageDigest digest) {
+		this.stream = stream;
+		this.name = name;
+		this.digest = digest;
+		stream.exceptionHandler(t -> failure = t);
+	}
+
+	/**
+	 * Get the digest of what has been written.
+	 * 
+	 * @return the digest, or null if there is none
+	 */
+	public MessageDigest getDigest() {
+		return digest;
+	}
+	
+	/**
+	 * Wait for a future the event loop will complete.
+	 * 
+	 * @param future the future
+	 * @param what what is being waited for, for error messages
+	 * @return the result
+	 * @throws IOException if it fails, times out or the wait is interrupted
+	 */
+	public static <T> T await(CompletableFuture<T> future, String what) throws IOException {
+		try {
+			return future.get(TIME_OUT, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to "+what, e.getCause());
+		} catch (TimeoutException e) {
+			throw new IOException("Timed out trying to "+what, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted trying to "+what, e);
+		}
+	}
+	
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		checkFailure();
+		awaitDrain();
+		byte[] bytes = new byte[src.remaining()];
+		src.get(bytes);
+		if(digest != null) digest.update(bytes);
+		stream.write(Buffer.buffer(bytes), result -> {
+			if(result.failed()) failure = result.cause();
+		});
+		return bytes.length;
+	}
+	
+	/**
+	 * Wait until the stream's write queue has room. The drain handler is set before
+	 * the queue is checked again, so a drain can't be missed.
+	 * 
+	 * @throws IOException
+	 */
+	private void awaitDrain() throws IOException {
+		while(stream.writeQueueFull()) {
+			CompletableFuture<Void> drained = new CompletableFuture<>();
+			stream.drainHandler(v -> drained.complete(null));
+			if(stream.writeQueueFull()) await(drained, "write "+name);
+			stream.drainHandler(null);
+			checkFailure();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(!open) return;
+		open = false;
+		CompletableFuture<Void> ended = new CompletableFuture<>();
+		stream.end(result -> {
+			if(result.succeeded())
+				ended.complete(null);
+			else
+				ended.completeExceptionally(result.cause());
+		});
+		await(ended, "close "+name);
+		checkFailure();
+	}
+	
+	private void checkFailure() throws IOException {
+		if(failure != null) throw new IOException("Failed to write "+name, failure);
+	}
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
 import com.giantelectronicbrain.catfood.hairball.Definition;
+import com.giantelectronicbrain.catfood.hairball.FrozenVocabulary;
 import com.giantelectronicbrain.catfood.hairball.HairballException;
 import com.giantelectronicbrain.catfood.hairball.IVocabulary;
 import com.giantelectronicbrain.catfood.hairball.InterpreterToken;
@@ -51,24 +52,27 @@ import com.helger.pdflayout4.spec.PreloadFont;
 public class PdfVocabulary {
 	
 	/**
-	 * Static factory to create the one and only needed instance of this class.
-	 * This is how PdfVocabulary should always be created, there is no need
-	 * for more than one.
+	 * Static factory to create a PDF vocabulary for an engine. The built in words
+	 * are frozen and shared by all engines, so this is cheap. Engines don't normally
+	 * call this themselves, BuiltinVocabularyLoader does the first time PDF is
+	 * asked for, which is also when the PDF libraries are first loaded.
 	 * 
 	 * @return
 	 */
 	public static IVocabulary create() {
-		IVocabulary hbVocab = new Vocabulary("PDF");
-		for(Definition def : defList) {
-			hbVocab.add(def);
-		}
-		return hbVocab;
+		return new Vocabulary(NAME,builtins);
 	}
 	
+	/**
+	 * The name the vocabulary is found by.
+	 */
+	public static final String NAME = "PDF";
+	
 	/**
 	 * The actual definitions which will be placed within the vocabulary.
 	 */
 	private static final List<Definition> defList = new ArrayList<>();
+	private static final FrozenVocabulary builtins;
 	static {
 		
 		Token font = new NativeToken("font",(interpreter) -> {
@@ -136,5 +140,7 @@ public class PdfVocabulary {
 			return true;
 		});
 		defList.add(new Definition(new Word("DOCUMENT/"),Compile.INSTANCE,closeDocument));
+		
+		builtins = new FrozenVocabulary(NAME,defList);
 	}
 }
@@ -0,0 +1,103 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Test streaming output into buckets.
+ * 
+ * @author tharter
+ *
+ */
+public class BucketOutputTest {
+	private Vertx vertx;
+	private Path bucket;
+	
+	@Before
+	public void setUp() throws IOException {
+		vertx = Vertx.vertx();
+		bucket = Files.createTempDirectory("bucketoutput");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(bucket.resolve("page.html"));
+		Files.deleteIfExists(bucket.resolve("opened.html"));
+		Files.deleteIfExists(bucket.resolve(".opened.html.sha256"));
+		Files.deleteIfExists(bucket.resolve(".page.html.sha256"));
+		Files.deleteIfExists(bucket.resolve("source.hairball"));
+		Files.deleteIfExists(bucket);
+		vertx.close();
+	}
+	
+	private String read(String name) throws IOException {
+		return new String(Files.readAllBytes(bucket.resolve(name)),StandardCharsets.UTF_8);
+	}
+	
+	@Test
+	public void testLargeOutputIsStreamed() throws IOException {
+		Files.write(bucket.resolve("page.html"), new byte[1000000]); // must be replaced, not overwritten
+		BucketOutput uut = new BucketOutput(vertx.fileSystem(), "page.html", bucket.toString());
+		StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 100000; i++) {
+			String text = "<li>"+i+"</li>";
+			expected.append(text);
+			uut.emit(text);
+		}
+		uut.close();
+		assertEquals(expected.toString(),read("page.html"));
+	}
+	
+	@Test
+	public void testOpenWord() throws IOException, HairballException {
+		Files.write(bucket.resolve("source.hairball"),
+				"before /@OUTPUT /\" opened.html \"/ /OPEN /OUTPUT inside /@OUTPUT /CLOSE /OUTPUT after"
+				.getBytes(StandardCharsets.UTF_8));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball uut = new StandAloneHairball(
+				new BucketWordStream(vertx.fileSystem(),"source.hairball",bucket.toString()), new StreamOutput(out));
+		uut.execute();
+		assertEquals("beforeafter",out.toString());
+		assertEquals("inside",read("opened.html"));
+	}
+	
+	@Test
+	public void testUnchangedObjectIsNotRewritten() throws IOException {
+		UnchangedWrites writes = new UnchangedWrites();
+		for(int i = 0; i < 2; i++) {
+			BucketOutput uut = new BucketOutput(vertx.fileSystem(), "page.html", bucket.toString(), writes);
+			uut.emit("<p>same</p>");
+			uut.close();
+		}
+		assertEquals("<p>same</p>",read("page.html"));
+		assertEquals(1, writes.getWritten());
+		assertEquals(1, writes.getUnchanged());
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Test loading vocabularies from a vocabulary path.
+ * 
+ * @author tharter
+ *
+ */
+public class BucketVocabularyLoaderTest {
+	private Vertx vertx;
+	private Path bucket;
+	
+	@Before
+	public void setUp() throws IOException {
+		vertx = Vertx.vertx();
+		bucket = Files.createTempDirectory("vocabpath");
+		Files.write(bucket.resolve("greet.hairball"),
+				"/NEWVOCABULARY /GREET /VOCABULARY /GREET /ACTIVE /VOCABULARY /GREET /CURRENT /: /HI hello :/"
+				.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(bucket.resolve("greet.hairball"));
+		Files.deleteIfExists(bucket.resolve("later.hairball"));
+		Files.deleteIfExists(bucket);
+		vertx.close();
+	}
+	
+	@Test
+	public void testVocabularyLoadedWhenFirstUsed() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball uut = WordUtilities.setUp("/HI /VOCABULARY /GREET /ACTIVE /HI", out);
+		uut.setVocabularyLoader(new BucketVocabularyLoader(vertx.fileSystem(), Arrays.asList(bucket.toString())));
+		ParserContext ctx = uut.execute();
+		assertEquals("/HIhello",out.toString());
+		
+		Dictionary dict = ctx.getDictionary();
+		assertNotNull(dict.findVocabulary("/GREET"));
+		assertEquals("HAIRBALL",dict.getCurrent().getName()); // loading doesn't change current
+		assertNull(dict.findVocabulary("/NOSUCH"));
+	}
+	
+	private StandAloneHairball engine(String input) {
+		StandAloneHairball engine = WordUtilities.setUp(input, new ByteArrayOutputStream());
+		engine.setVocabularyLoader(new BucketVocabularyLoader(vertx.fileSystem(), Arrays.asList(bucket.toString())));
+		return engine;
+	}
+	
+	@Test
+	public void testVocabularyAddedLaterIsFound() throws IOException, HairballException {
+		Dictionary dict = engine("").getParser().getContext().getDictionary();
+		assertNull(dict.findVocabulary("/LATER"));
+		Files.write(bucket.resolve("later.hairball"), "/NEWVOCABULARY /LATER".getBytes(StandardCharsets.UTF_8));
+		assertNotNull(dict.findVocabulary("/LATER"));
+	}
+	
+	@Test
+	public void testVocabularyIsParsedByTheEngine() throws IOException, HairballException {
+		StandAloneHairball missing = engine("/VOCABULARY /NOSUCH /DROP");
+		missing.execute();
+		StandAloneHairball loading = engine("/VOCABULARY /GREET /DROP");
+		loading.execute();
+		assertTrue(loading.getTokensExecuted() > missing.getTokensExecuted() + 5); // the vocabulary's tokens count
+		
+		StandAloneHairball limited = engine("/VOCABULARY /GREET /DROP");
+		limited.setTokenLimit(missing.getTokensExecuted() + 1);
+		try {
+			limited.execute();
+			fail("the token limit should cover loading the vocabulary");
+		} catch (HairballException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exceeded"));
+		}
+	}
+}
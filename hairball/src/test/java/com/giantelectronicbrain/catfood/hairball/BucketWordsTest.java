@@ -23,13 +23,13 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringBufferInputStream;
 import java.util.Stack;
 
-import org.junit.Ignore;
 import org.junit.Test;
 
 import io.vertx.core.Vertx;
@@ -53,12 +53,9 @@ public class BucketWordsTest {
 	}
 	
 	@Test
-	@Ignore
-	/* Currently this is not implemented because hairball_core doesn't have access to the required libraries.
-	 * TODO: fix this!
-	 */
 	public void testSource() throws IOException, HairballException {
-		StandAloneHairball uut  = setUp("/SOURCE\" src/test/resources/test_source.hairball \"/ ");
+		String source = new File("src/test/resources/test_source.hairball").getAbsolutePath();
+		StandAloneHairball uut  = setUp("/SOURCE\" "+source+" \"/ ");
 		ParserContext ctx = uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
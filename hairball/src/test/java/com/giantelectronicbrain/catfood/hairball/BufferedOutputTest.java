@@ -0,0 +1,85 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Test the buffered output.
+ * 
+ * @author tharter
+ *
+ */
+public class BufferedOutputTest {
+
+	@Test
+	public void testNothingIsWrittenUntilFlushed() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BufferedOutput uut = new BufferedOutput(out);
+		uut.emit("hello");
+		uut.space();
+		uut.emit("world");
+		assertEquals(0,out.size());
+		uut.flush();
+		assertEquals("hello world",out.toString("UTF-8"));
+	}
+	
+	@Test
+	public void testTextLargerThanBuffer() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BufferedOutput uut = new BufferedOutput(Channels.newChannel(out), 16, true);
+		StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 50; i++) {
+			String text = "caf\u00e9 \u20ac\ud83d\ude00 "+i;
+			expected.append(text);
+			uut.emit(text);
+		}
+		uut.close();
+		assertEquals(expected.toString(),new String(out.toByteArray(),StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testStreamIsInOrderWithText() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BufferedOutput uut = new BufferedOutput(out);
+		uut.emit("<");
+		uut.getOutputStream().write("bytes".getBytes(StandardCharsets.UTF_8));
+		uut.emit(">");
+		uut.close();
+		assertEquals("<bytes>",out.toString("UTF-8"));
+	}
+	
+	@Test
+	public void testFlushWord() throws IOException, HairballException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball uut = WordUtilities.setUp("before",out);
+		BufferedOutput output = new BufferedOutput(out);
+		uut.setIO(new StringWordStream("before /FLUSH after"), output);
+		uut.getParser().interpret();
+		uut.getParser().parse();
+		assertEquals("before",out.toString("UTF-8"));
+		output.close();
+		assertEquals("beforeafter",out.toString("UTF-8"));
+	}
+}
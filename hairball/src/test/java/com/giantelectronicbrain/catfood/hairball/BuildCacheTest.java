@@ -0,0 +1,125 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test restoring rendered documents from the build cache.
+ * 
+ * @author tharter
+ *
+ */
+public class BuildCacheTest {
+	private Path base;
+	private Path directory;
+	private Path out;
+	
+	@Before
+	public void setUp() throws IOException {
+		base = Files.createTempDirectory("buildcache");
+		directory = base.resolve("cache");
+		out = Files.createDirectories(base.resolve("out"));
+		write(base.resolve("doc.hairball"), "doc /SOURCE\" inc.hairball \"/");
+		write(base.resolve("inc.hairball"), "included");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		try(Stream<Path> files = Files.walk(base)) {
+			for(Object file : files.sorted(Comparator.reverseOrder()).toArray()) Files.delete((Path) file);
+		}
+	}
+	
+	@Test
+	public void testRestoredUntilAnIncludeChanges() throws IOException {
+		BuildCache uut = new BuildCache(directory, base);
+		String context = uut.context(Map.of("version", "1"), Collections.emptyList());
+		String key = uut.documentKey(context, "doc.hairball");
+		Path target = out.resolve("doc.html");
+		UnchangedWrites writes = new UnchangedWrites();
+		assertFalse(uut.restore(key, target, writes));
+		
+		write(target, "docincluded");
+		uut.store(key, Arrays.asList(base.resolve("inc.hairball").toString()), target);
+		Files.delete(target);
+		assertTrue(uut.restore(key, target, writes));
+		assertEquals("docincluded", read(target));
+		assertTrue(uut.restore(key, target, writes));
+		assertEquals(1, writes.getUnchanged());
+		
+		write(base.resolve("inc.hairball"), "changed");
+		assertFalse(uut.restore(key, target, writes));
+		assertEquals("2 hits, 2 misses, 50% hit rate", uut.toString());
+		assertEquals("manifest is kept relative to the base", "inc.hairball",
+				read(Files.list(directory.resolve("manifests")).findFirst().get()));
+	}
+	
+	@Test
+	public void testContextAndContentChangeTheKey() throws IOException {
+		BuildCache uut = new BuildCache(directory, base);
+		Path prelude = base.resolve("prelude.hairball");
+		write(prelude, "/: /GREET hello :/");
+		String context = uut.context(Map.of("version", "1"), Arrays.asList(prelude));
+		assertEquals(context, uut.context(Map.of("version", "1"), Arrays.asList(prelude)));
+		assertNotEquals(context, uut.context(Map.of("version", "2"), Arrays.asList(prelude)));
+		String key = uut.documentKey(context, "doc.hairball");
+		
+		write(prelude, "/: /GREET hi :/");
+		assertNotEquals(context, uut.context(Map.of("version", "1"), Arrays.asList(prelude)));
+		write(base.resolve("doc.hairball"), "changed");
+		assertNotEquals(key, uut.documentKey(context, "doc.hairball"));
+	}
+	
+	@Test
+	public void testSameOutputsShareAnObject() throws IOException {
+		BuildCache uut = new BuildCache(directory, base);
+		write(base.resolve("other.hairball"), "same");
+		String context = uut.context(Map.of(), Collections.emptyList());
+		Path target = out.resolve("page.html");
+		write(target, "same output");
+		uut.store(uut.documentKey(context, "doc.hairball"), Collections.emptyList(), target);
+		uut.store(uut.documentKey(context, "other.hairball"), Collections.emptyList(), target);
+		assertEquals(1, Files.list(directory.resolve("objects")).count());
+		assertEquals(2, Files.list(directory.resolve("entries")).count());
+	}
+	
+	private static void write(Path file, String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test loading the built in vocabularies when they are first used.
+ * 
+ * @author tharter
+ *
+ */
+public class BuiltinVocabularyLoaderTest {
+	
+	@Test
+	public void testPdfLoadedWhenFirstUsed() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball uut = WordUtilities.setUp("/VOCABULARY PDF /ACTIVE /\" done \"/ /.", out);
+		ParserContext ctx = uut.execute();
+		assertEquals("done",out.toString().trim());
+		
+		Dictionary dict = ctx.getDictionary();
+		assertNotNull(dict.findVocabulary("PDF"));
+		assertTrue(dict.getActiveVocabularies().contains("PDF"));
+		assertEquals("HAIRBALL",dict.getCurrent().getName()); // loading doesn't change current
+	}
+	
+	@Test
+	public void testOtherNamesPassedOn() throws HairballException {
+		List<String> asked = new ArrayList<>();
+		Dictionary dict = new Dictionary("test");
+		dict.add(HairballVocabulary.create());
+		dict.setVocabularyLoader(new BuiltinVocabularyLoader((name, dictionary) -> {
+			asked.add(name);
+			return false;
+		}));
+		assertNull(dict.findVocabulary("/NOSUCH"));
+		assertNotNull(dict.findVocabulary("PDF"));
+		assertEquals("[/NOSUCH]",asked.toString());
+	}
+	
+	@Test
+	public void testNoNextLoader() throws HairballException {
+		Dictionary dict = new Dictionary("test");
+		dict.setVocabularyLoader(new BuiltinVocabularyLoader(null));
+		assertNull(dict.findVocabulary("/NOSUCH"));
+		assertTrue(BuiltinVocabularyLoader.isBuiltin("PDF"));
+	}
+}
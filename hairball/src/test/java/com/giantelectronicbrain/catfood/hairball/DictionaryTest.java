@@ -21,6 +21,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -152,4 +155,162 @@ public class DictionaryTest {
 		assertNull(fromDict);		
 	}
 	
+	@Test
+	public void forkKeepsSearchOrderAndCurrent() throws HairballException {
+		Word myWord = new Word("mydef");
+		Definition myDef = new Definition(myWord,null,null);
+		uut.add(myDef);
+		Vocabulary anotherVoc = new Vocabulary("TEST2");
+		uut.add(anotherVoc);
+		Definition anotherDef = new Definition(myWord,null,null);
+		anotherVoc.add(anotherDef);
+		
+		Dictionary forked = uut.fork();
+		assertTrue(forked.lookUp(myWord) == anotherDef);
+		assertEquals("TEST",forked.getCurrent().getName());
+		assertEquals("TEST2",forked.findVocabulary("TEST2").getName());
+		assertTrue(forked.getCurrent() != testVocab);
+	}
+	
+	@Test
+	public void forkDefinitionsAreNotShared() {
+		Dictionary forked = uut.fork();
+		Word forkWord = new Word("forkdef");
+		forked.create(forkWord);
+		forked.define();
+		assertNotNull(forked.lookUp(forkWord));
+		assertNull(uut.lookUp(forkWord));
+		
+		Word parentWord = new Word("parentdef");
+		uut.create(parentWord);
+		uut.define();
+		assertNotNull(uut.lookUp(parentWord));
+		assertNull(forked.lookUp(parentWord));
+	}
+	
+	@Test
+	public void indexTracksShadowingAndRemoval() {
+		Word myWord = new Word("mydef");
+		Definition lowerDef = new Definition(myWord,null,null);
+		testVocab.add(lowerDef);
+		
+		Vocabulary upperVoc = new Vocabulary("UPPER");
+		Definition upperDef = new Definition(myWord,null,null);
+		upperVoc.add(upperDef);
+		uut.add(upperVoc);
+		assertTrue(uut.lookUp(myWord) == upperDef);
+		
+		Definition shadowedDef = new Definition(myWord,null,null);
+		testVocab.add(shadowedDef); // added underneath, still shadowed
+		assertTrue(uut.lookUp(myWord) == upperDef);
+		
+		Word newWord = new Word("newdef");
+		Definition newDef = new Definition(newWord,null,null);
+		upperVoc.add(newDef); // added directly to an active vocabulary
+		assertTrue(uut.lookUp(newWord) == newDef);
+		
+		uut.remove();
+		assertTrue(uut.lookUp(myWord) == shadowedDef);
+		assertNull(uut.lookUp(newWord));
+		
+		upperVoc.add(new Definition(new Word("late"),null,null)); // no longer active
+		assertNull(uut.lookUp(new Word("late")));
+	}
+	
+	@Test
+	public void otherVocabulariesAreSearchedInOrder() {
+		Word myWord = new Word("mydef");
+		Definition lowerDef = new Definition(myWord,null,null);
+		testVocab.add(lowerDef);
+		
+		Dictionary inner = new Dictionary("INNER");
+		Vocabulary innerVoc = new Vocabulary("INNERVOC");
+		Definition innerDef = new Definition(myWord,null,null);
+		innerVoc.add(innerDef);
+		inner.add(innerVoc);
+		uut.add(inner);
+		assertTrue(uut.lookUp(myWord) == innerDef);
+		
+		uut.remove(inner);
+		assertTrue(uut.lookUp(myWord) == lowerDef);
+	}
+	
+	@Test
+	public void frozenBaseOfOldestVocabularyIsFound() {
+		Word builtinWord = new Word("/BUILTIN");
+		Definition builtin = new Definition(builtinWord,null,null);
+		FrozenVocabulary frozen = new FrozenVocabulary("BASE",Arrays.asList(builtin));
+		Dictionary dict = new Dictionary("FROZEN");
+		dict.add(new Vocabulary("BASE",frozen));
+		assertTrue(dict.lookUp(builtinWord) == builtin);
+		
+		Vocabulary upper = new Vocabulary("UPPER");
+		dict.add(upper);
+		Definition shadow = new Definition(builtinWord,null,null);
+		upper.add(shadow);
+		assertTrue(dict.lookUp(builtinWord) == shadow);
+		dict.remove();
+		assertTrue(dict.lookUp(builtinWord) == builtin);
+		
+		Dictionary forked = dict.fork();
+		assertTrue(forked.lookUp(builtinWord) == builtin);
+	}
+	
+	@Test
+	public void forwardReferencesResolveInAnyOrder() {
+		uut.create(new Word("test"));
+		Token aToken = new NativeToken("aToken",(interp) -> {return true; });
+		uut.addToken(aToken);
+		int first = uut.reserve();
+		int second = uut.reserve();
+		uut.addToken(aToken);
+		assertEquals(1,first);
+		assertEquals(2,second);
+		assertEquals(4,uut.here());
+		assertEquals(2,uut.getPendingReferences());
+		
+		Token secondTarget = new LiteralToken("second",3);
+		uut.resolve(secondTarget,second);
+		try {
+			uut.resolve(secondTarget,second);
+			fail("resolved the same reference twice");
+		} catch(IllegalArgumentException e) {
+			// happy path
+		}
+		Token firstTarget = new LiteralToken("first",4);
+		uut.resolve(firstTarget,first);
+		assertEquals(0,uut.getPendingReferences());
+		
+		InterpreterToken rt = (InterpreterToken) uut.define().getRunTime();
+		assertEquals(4,rt.size());
+		assertTrue(rt.getTokens().get(1) == firstTarget);
+		assertTrue(rt.getTokens().get(2) == secondTarget);
+	}
+	
+	@Test
+	public void rollBackRestoresMarkedState() throws HairballException {
+		Word myWord = new Word("mydef");
+		Definition oldDef = new Definition(myWord,null,null);
+		uut.add(oldDef);
+		Dictionary.Mark mark = uut.mark();
+		
+		Definition newDef = new Definition(myWord,null,null);
+		uut.add(newDef);
+		IVocabulary later = uut.createVocabulary("LATER");
+		uut.add(later);
+		uut.makeCurrent(later);
+		assertTrue(uut.lookUp(myWord) == newDef);
+		
+		uut.rollBack(mark);
+		assertTrue(uut.lookUp(myWord) == oldDef);
+		assertNull(uut.findVocabulary("LATER"));
+		assertTrue(uut.getCurrent() == testVocab);
+		
+		Word afterWord = new Word("after");
+		uut.add(new Definition(afterWord,null,null));
+		assertNotNull(uut.lookUp(afterWord));
+		uut.rollBack(mark);
+		assertNull(uut.lookUp(afterWord));
+	}
+	
 }
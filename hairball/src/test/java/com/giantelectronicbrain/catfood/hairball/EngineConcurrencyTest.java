@@ -0,0 +1,156 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stress test running many engines at once in one JVM. Every engine has to produce
+ * exactly the output one engine produces when it runs alone.
+ * 
+ * @author tharter
+ *
+ */
+public class EngineConcurrencyTest {
+	private static final int ENGINES = 400;
+	private static final int THREADS = 16;
+	private static final String PRELUDE = "/: /EM <em> :/ /: /END-EM </em> :/ /: /TWICE /DUP /. /. :/";
+	private static final String DOCUMENT = "/EM hello /END-EM /\" quoted text \"/ /. #2 /TWICE world"
+			+ " /: /THRICE /DUP /DUP /. /. /. :/ #3 /THRICE /NEWLINE done";
+	/**
+	 * Variables set up the way html.hairball does it.
+	 */
+	private static final String STATEFUL_PRELUDE = "/VARIABLE /CURRENTID #0 /CURRENTID /V!"
+			+ " /: /ID /SPACE /CURRENTID /V@ /1+ /CURRENTID /V! id=\" /CURRENTID /V@ /. \" :/"
+			+ " /\" 'day' \"/ /MAKEFORMATTER /'DATEFORMAT /V!";
+	private static final String STATEFUL_DOCUMENT = "<p /ID > /.NOW /ID /ID"
+			+ " /\" 'fork' \"/ /MAKEFORMATTER /'DATEFORMAT /V! /.NOW /ID";
+
+	private ExecutorService executor;
+	
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	private static String render(StandAloneHairball engine) throws IOException, HairballException {
+		return render(engine, PRELUDE+" "+DOCUMENT);
+	}
+	
+	private static String render(StandAloneHairball engine, String source) throws IOException, HairballException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		engine.setIO(new StringWordStream(source), new StreamOutput(out));
+		engine.execute();
+		return out.toString();
+	}
+	
+	private void assertAllIdentical(Callable<String> job) throws Exception {
+		assertAllIdentical(job.call(), job);
+	}
+	
+	private void assertAllIdentical(String expected, Callable<String> job) throws Exception {
+		List<Future<String>> results = new ArrayList<>();
+		for(int i = 0; i < ENGINES; i++)
+			results.add(executor.submit(job));
+		for(Future<String> result : results)
+			assertEquals(expected, result.get());
+	}
+	
+	@Test
+	public void testNewEngines() throws Exception {
+		assertAllIdentical(() -> render(new StandAloneHairball(new StandAloneHairball.ServerPlatform())));
+	}
+	
+	@Test
+	public void testForkedEngines() throws Exception {
+		StandAloneHairball prototype = new StandAloneHairball();
+		prototype.share();
+		assertAllIdentical(() -> render(prototype.fork()));
+	}
+	
+	@Test
+	public void testCompiledForks() throws Exception {
+		StandAloneHairball prototype = new StandAloneHairball();
+		prototype.setTokenCompiler(new MethodHandleCompiler());
+		prototype.share();
+		assertAllIdentical(() -> render(prototype.fork()));
+	}
+	
+	@Test
+	public void testEnginesWithTheirOwnCompilers() throws Exception {
+		assertAllIdentical(() -> {
+			StandAloneHairball engine = new StandAloneHairball();
+			engine.setTokenCompiler(new MethodHandleCompiler());
+			return render(engine);
+		});
+	}
+	
+	@Test
+	public void testForksKeepTheirOwnVariables() throws Exception {
+		String expected = render(new StandAloneHairball(), STATEFUL_PRELUDE+" "+STATEFUL_DOCUMENT);
+		assertTrue(expected, expected.contains("id=\"4\"") && !expected.contains("id=\"5\""));
+		StandAloneHairball prototype = new StandAloneHairball();
+		render(prototype, STATEFUL_PRELUDE);
+		prototype.share();
+		assertAllIdentical(expected, () -> render(prototype.fork(), STATEFUL_DOCUMENT));
+		assertEquals(expected, render(prototype.fork(), STATEFUL_DOCUMENT));
+	}
+	
+	@Test
+	public void testCompiledForksKeepTheirOwnVariables() throws Exception {
+		String expected = render(new StandAloneHairball(), STATEFUL_PRELUDE+" "+STATEFUL_DOCUMENT);
+		StandAloneHairball prototype = new StandAloneHairball();
+		prototype.setTokenCompiler(MethodHandleCompiler.INSTANCE);
+		render(prototype, STATEFUL_PRELUDE);
+		prototype.share();
+		assertAllIdentical(expected, () -> render(prototype.fork(), STATEFUL_DOCUMENT));
+	}
+	
+	@Test
+	public void testDateFormatBelongsToOneEngine() throws Exception {
+		StringBuilder stores = new StringBuilder();
+		for(int i = 0; i < 100; i++) stores.append("/\" 'STORED' \"/ /MAKEFORMATTER /'DATEFORMAT /V! /.NOW ");
+		Future<String> writer = executor.submit(() -> render(new StandAloneHairball(), stores.toString()));
+		List<Future<String>> readers = new ArrayList<>();
+		for(int i = 0; i < ENGINES; i++)
+			readers.add(executor.submit(() -> render(new StandAloneHairball(), "/.NOW /.NOW /.NOW")));
+		assertTrue(writer.get().startsWith("STORED"));
+		for(Future<String> reader : readers)
+			assertFalse(reader.get().contains("STORED"));
+		assertFalse(render(new StandAloneHairball(), "/.NOW").contains("STORED"));
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Test output filter chains.
+ * 
+ * @author tharter
+ *
+ */
+public class FilteredOutputTest {
+	
+	private static String gunzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+			byte[] buffer = new byte[4096];
+			for(int n = in.read(buffer); n != -1; n = in.read(buffer))
+				out.write(buffer, 0, n);
+		}
+		return new String(out.toByteArray(),StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testMinify() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FilteredOutput uut = new FilteredOutput(new StreamOutput(out), "minify");
+		uut.emit("<p>  some\n\n  text  </p>\n<pre>  keep\n  this </pre>  <PRE> and  </PRE> done ");
+		uut.close();
+		assertEquals("<p> some\ntext </p>\n<pre>  keep\n  this </pre> <PRE> and  </PRE> done ",out.toString("UTF-8"));
+	}
+	
+	@Test
+	public void testGzipLargeOutput() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FilteredOutput uut = new FilteredOutput(new StreamOutput(out), "minify, gzip");
+		StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 20000; i++) {
+			uut.emit("<li>  "+i+"</li>");
+			expected.append("<li> "+i+"</li>");
+		}
+		uut.close();
+		assertTrue(out.size() < expected.length() / 2);
+		assertEquals(expected.toString(),gunzip(out.toByteArray()));
+	}
+	
+	@Test
+	public void testDigest() throws IOException, NoSuchAlgorithmException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		FilteredOutput uut = new FilteredOutput(new StreamOutput(out), "digest:MD5");
+		uut.emit("hello world");
+		uut.close();
+		StringBuilder expected = new StringBuilder();
+		for(byte b : MessageDigest.getInstance("MD5").digest("hello world".getBytes(StandardCharsets.UTF_8)))
+			expected.append(String.format("%02x", b));
+		assertEquals(expected.toString(),uut.getDigest());
+		assertEquals("hello world",out.toString("UTF-8"));
+	}
+	
+	@Test
+	public void testFilterWord() throws IOException, HairballException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball uut = WordUtilities.setUp("/FILTER\" gzip \"/ compressed /@OUTPUT",out);
+		uut.execute();
+		FilteredOutput output = (FilteredOutput) uut.getParamStack().pop();
+		assertEquals(null,output.getDigest());
+		assertEquals("compressed",gunzip(out.toByteArray()));
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Test output to files.
+ * 
+ * @author tharter
+ *
+ */
+public class FsOutputTest {
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()),StandardCharsets.UTF_8);
+	}
+	
+	@Test
+	public void testLargeOutput() throws IOException {
+		File file = File.createTempFile("fsoutput", ".html");
+		file.deleteOnExit();
+		FsOutput uut = new FsOutput(file.getPath());
+		StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 100000; i++) {
+			String text = "<p>"+i+"</p>";
+			expected.append(text).append(' ');
+			uut.emit(text);
+			uut.space();
+		}
+		uut.close();
+		assertEquals(expected.toString(),read(file));
+	}
+	
+	@Test
+	public void testFlushAndStream() throws IOException {
+		File file = File.createTempFile("fsoutput", ".bin");
+		file.deleteOnExit();
+		FsOutput uut = new FsOutput(file.getPath());
+		uut.emit("text ");
+		uut.getOutputStream().write(new byte[] {'b','y','t','e','s'});
+		uut.flush();
+		assertEquals("text bytes",read(file));
+		uut.emit(" more");
+		uut.close();
+		assertEquals("text bytes more",read(file));
+	}
+	
+	private static void write(Path file, String text, UnchangedWrites writes) throws IOException {
+		FsOutput uut = new FsOutput(file.toString(), writes);
+		uut.emit(text);
+		uut.close();
+	}
+	
+	@Test
+	public void testUnchangedContentIsNotRewritten() throws IOException {
+		Path dir = Files.createTempDirectory("fsoutput");
+		Path file = dir.resolve("page.html");
+		UnchangedWrites writes = new UnchangedWrites();
+		write(file, "<p>first</p>", writes);
+		FileTime old = FileTime.fromMillis(1000000000000L);
+		Files.setLastModifiedTime(file, old);
+		write(file, "<p>first</p>", writes);
+		assertEquals(old, Files.getLastModifiedTime(file));
+		assertEquals("1 written, 1 unchanged", writes.toString());
+		write(file, "<p>second</p>", writes);
+		assertEquals("<p>second</p>", read(file.toFile()));
+		assertEquals("2 written, 1 unchanged", writes.toString());
+		try(Stream<Path> files = Files.list(dir)) {
+			assertEquals(2, files.count()); // the page and its digest, no temporary files
+		}
+		Files.delete(dir.resolve(".page.html.sha256"));
+		write(file, "<p>second</p>", writes); // no digest, so the page itself is hashed
+		assertEquals("2 written, 2 unchanged", writes.toString());
+		assertFalse(Files.exists(dir.resolve(".page.html.sha256")));
+		Files.delete(file);
+		Files.delete(dir);
+	}
+	
+	@Test
+	public void testAbortLeavesTheFileAsItWas() throws IOException {
+		Path dir = Files.createTempDirectory("fsoutput");
+		Path file = dir.resolve("page.html");
+		UnchangedWrites writes = new UnchangedWrites();
+		write(file, "<p>good</p>", writes);
+		FsOutput uut = new FsOutput(file.toString(), writes);
+		uut.emit("<p>half");
+		uut.flush();
+		uut.abort();
+		assertEquals("<p>good</p>", read(file.toFile()));
+		assertEquals("1 written, 0 unchanged", writes.toString());
+		try(Stream<Path> files = Files.list(dir)) {
+			assertEquals(2, files.count()); // the page and its digest, the temporary file is gone
+		}
+		Files.delete(dir.resolve(".page.html.sha256"));
+		Files.delete(file);
+		Files.delete(dir);
+	}
+}
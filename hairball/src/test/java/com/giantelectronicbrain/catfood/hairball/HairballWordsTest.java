@@ -30,34 +30,53 @@ import java.io.StringBufferInputStream;
 import java.time.format.DateTimeFormatter;
 import java.util.Stack;
 
-import org.junit.Ignore;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 /**
- * Tests of the words in the Hairball core vocabulary.
+ * Tests of the words in the Hairball core vocabulary. Every test is run with the words
+ * interpreted and again with them compiled.
  * 
  * @author tharter
  *
  */
 @SuppressWarnings("deprecation")
+@RunWith(Parameterized.class)
 public class HairballWordsTest {
+	private final ITokenCompiler compiler;
+	
+	@Parameters(name = "{0}")
+	public static Object[][] compilers() {
+		return new Object[][] { { "interpreted", null }, { "compiled", MethodHandleCompiler.INSTANCE } };
+	}
+	
+	public HairballWordsTest(String name, ITokenCompiler compiler) {
+		this.compiler = compiler;
+	}
 
 	@Test
 	public void testNewline() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NEWLINE",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NEWLINE",out,compiler);
 		uut.execute();
 		String output = out.toString();
 		assertEquals("\n",output);
 	}
 	
 	@Test
-	@Ignore
-	/* Not sure what the problem is here, yet. Something in refactoring broke /VERSION */
 	public void testVersion() throws IOException, HairballException {
-		StandAloneHairball.VERSION = "foo"; // just for testing purposes
-		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/VERSION",out);
+		StandAloneHairball.ServerPlatform platform = new StandAloneHairball.ServerPlatform() {
+			@Override
+			public String getVersion() {
+				return "foo";
+			}
+		};
+		OutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball uut = new StandAloneHairball(platform);
+		uut.setTokenCompiler(compiler);
+		uut.setIO(new StringWordStream("/VERSION"), new StreamOutput(out));
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(1,pStack.size());
@@ -70,7 +89,7 @@ public class HairballWordsTest {
 	@Test
 	public void testNewVocabulary() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NEWVOCABULARY MYVOCAB",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NEWVOCABULARY MYVOCAB",out,compiler);
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
@@ -84,7 +103,7 @@ public class HairballWordsTest {
 	@Test
 	public void testVocabulary() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NEWVOCABULARY MYVOCAB /VOCABULARY MYVOCAB",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NEWVOCABULARY MYVOCAB /VOCABULARY MYVOCAB",out,compiler);
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(1,pStack.size());
@@ -97,7 +116,7 @@ public class HairballWordsTest {
 	@Test
 	public void testMakeVocabularyActive() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NEWVOCABULARY MYVOCAB /VOCABULARY MYVOCAB /ACTIVE",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NEWVOCABULARY MYVOCAB /VOCABULARY MYVOCAB /ACTIVE",out,compiler);
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
@@ -116,7 +135,7 @@ public class HairballWordsTest {
 		StandAloneHairball uut = WordUtilities.setUp("/NEWVOCABULARY MYVOCAB "
 				+ "/VOCABULARY MYVOCAB /ACTIVE "
 				+ "/VOCABULARY MYVOCAB /CURRENT "
-				+ "/: FOOBAR stuff :/ FOOBAR",out);
+				+ "/: FOOBAR stuff :/ FOOBAR",out,compiler);
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
@@ -135,7 +154,7 @@ public class HairballWordsTest {
 	@Test
 	public void testConstantWithString() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/CONSTANT MYCONST stuff MYCONST",out);
+		StandAloneHairball uut = WordUtilities.setUp("/CONSTANT MYCONST stuff MYCONST",out,compiler);
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(1,pStack.size());
@@ -148,7 +167,7 @@ public class HairballWordsTest {
 	@Test
 	public void testConstantWithFloat() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/CONSTANT MYCONST 111.0 MYCONST",out);
+		StandAloneHairball uut = WordUtilities.setUp("/CONSTANT MYCONST 111.0 MYCONST",out,compiler);
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(1,pStack.size());
@@ -161,7 +180,7 @@ public class HairballWordsTest {
 	@Test
 	public void testConstantWithInteger() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/CONSTANT MYCONST 111 MYCONST",out);
+		StandAloneHairball uut = WordUtilities.setUp("/CONSTANT MYCONST 111 MYCONST",out,compiler);
 		uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(1,pStack.size());
@@ -174,7 +193,7 @@ public class HairballWordsTest {
 	@Test
 	public void testToken() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/TOKEN FOOBAR /.",out);
+		StandAloneHairball uut = WordUtilities.setUp("/TOKEN FOOBAR /.",out,compiler);
 		uut.execute();
 		String output = out.toString();
 		assertEquals("FOOBAR",output);		
@@ -183,7 +202,7 @@ public class HairballWordsTest {
 	@Test
 	public void testNoop() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("//",out);
+		StandAloneHairball uut = WordUtilities.setUp("//",out,compiler);
 		ParserContext ctx = uut.execute();
 		Stack<?> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
@@ -199,7 +218,7 @@ public class HairballWordsTest {
 	@Test
 	public void testQuoteSlashInterpreted() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/\" this is some text \"/ /.",out);
+		StandAloneHairball uut = WordUtilities.setUp("/\" this is some text \"/ /.",out,compiler);
 		uut.execute();
 		
 		assertEquals("this is some text",out.toString());
@@ -209,7 +228,7 @@ public class HairballWordsTest {
 	public void testSlashTick() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
 		StandAloneHairball uut = WordUtilities.setUp("/: FOO hello world :/ /VARIABLE VECTOR /' FOO VECTOR /V! VECTOR /V@ /EXECUTE"
-				,out);
+				,out,compiler);
 		uut.execute();
 		
 		assertEquals("hello world",out.toString());
@@ -218,7 +237,7 @@ public class HairballWordsTest {
 	@Test
 	public void testQuoteSlashCompiled() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/: QW /\" /. :/ QW this is some text \"/",out);
+		StandAloneHairball uut = WordUtilities.setUp("/: QW /\" /. :/ QW this is some text \"/",out,compiler);
 		uut.execute();
 		
 		assertEquals("this is some text",out.toString());
@@ -228,7 +247,7 @@ public class HairballWordsTest {
 	@Test
 	public void testDotNow() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/.NOW",out);
+		StandAloneHairball uut = WordUtilities.setUp("/.NOW",out,compiler);
 		ParserContext ctx = uut.execute();
 		
 //		assertEquals("2021-07-25T14:14:54.309-07:00[America/Los_Angeles]",out.toString());
@@ -239,7 +258,7 @@ public class HairballWordsTest {
 	@Test
 	public void testDup() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /DUP",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /DUP",out,compiler);
 		ParserContext ctx = uut.execute();
 		assertEquals(2,uut.getParamStack().size());
 		assertEquals(1,uut.getParamStack().pop());
@@ -249,7 +268,7 @@ public class HairballWordsTest {
 	@Test
 	public void testSwap() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /NUM 2 /SWAP",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /NUM 2 /SWAP",out,compiler);
 		ParserContext ctx = uut.execute();
 		assertEquals(2,uut.getParamStack().size());
 		assertEquals(1,uut.getParamStack().pop());
@@ -259,7 +278,7 @@ public class HairballWordsTest {
 	@Test
 	public void testRot() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /NUM 2 /NUM 3 /ROT",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /NUM 2 /NUM 3 /ROT",out,compiler);
 		ParserContext ctx = uut.execute();
 		assertEquals(3,uut.getParamStack().size());
 		
@@ -271,7 +290,7 @@ public class HairballWordsTest {
 	@Test
 	public void testNum() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NUM 1",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NUM 1",out,compiler);
 		ParserContext ctx = uut.execute();
 		assertEquals(1,uut.getParamStack().size());
 		assertEquals(1,uut.getParamStack().pop());
@@ -280,7 +299,7 @@ public class HairballWordsTest {
 	@Test
 	public void testPick() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /NUM 2 /NUM 3 /NUM 3 /PICK",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /NUM 2 /NUM 3 /NUM 3 /PICK",out,compiler);
 		ParserContext ctx = uut.execute();
 		assertEquals(3,uut.getParamStack().size());
 		
@@ -292,7 +311,7 @@ public class HairballWordsTest {
 	@Test
 	public void testDrop() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /DROP",out);
+		StandAloneHairball uut = WordUtilities.setUp("/NUM 1 /DROP",out,compiler);
 		ParserContext ctx = uut.execute();
 		assertEquals(0,uut.getParamStack().size());
 	}
@@ -300,7 +319,7 @@ public class HairballWordsTest {
 	@Test
 	public void testDefineVariable()  throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR",out);
+		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR",out,compiler);
 		ParserContext ctx = uut.execute();
 
 		assertEquals("",out.toString());
@@ -316,7 +335,7 @@ public class HairballWordsTest {
 	@Test
 	public void testVariableCompileTime() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR /\" a literal string \"/ /: MYTEST MYVAR /V! :/ MYTEST MYVAR /V@ /.",out);
+		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR /\" a literal string \"/ /: MYTEST MYVAR /V! :/ MYTEST MYVAR /V@ /.",out,compiler);
 		ParserContext ctx = uut.execute();
 		Stack<Object> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
@@ -326,7 +345,7 @@ public class HairballWordsTest {
 	@Test
 	public void testVariableFetch() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR /\" a literal string \"/ MYVAR /V! MYVAR /V@ /.",out);
+		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR /\" a literal string \"/ MYVAR /V! MYVAR /V@ /.",out,compiler);
 		ParserContext ctx = uut.execute();
 		Stack<Object> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
@@ -337,7 +356,7 @@ public class HairballWordsTest {
 	@Test
 	public void testStoreVariable()  throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR /\" a literal string \"/ MYVAR /V!",out);
+		StandAloneHairball uut = WordUtilities.setUp("/VARIABLE MYVAR /\" a literal string \"/ MYVAR /V!",out,compiler);
 		ParserContext ctx = uut.execute();
 		Stack<Object> pStack = uut.getParamStack();
 		assertEquals(0,pStack.size());
@@ -356,7 +375,7 @@ public class HairballWordsTest {
 	@Test
 	public void testHereStore() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/HERE!",out);
+		StandAloneHairball uut = WordUtilities.setUp("/HERE!",out,compiler);
 
 		Stack<Object> pStack = uut.getParamStack();
 		LiteralToken literalToken = new LiteralToken("literal","this is a literal");
@@ -386,7 +405,7 @@ public class HairballWordsTest {
 	@Test
 	public void testStore() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/HERE! /!",out);
+		StandAloneHairball uut = WordUtilities.setUp("/HERE! /!",out,compiler);
 
 		Stack<Object> pStack = uut.getParamStack();
 		LiteralToken l2 = new LiteralToken("another","another literal");
@@ -419,7 +438,7 @@ public class HairballWordsTest {
 	@Test
 	public void testExecute() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/EXECUTE",out);
+		StandAloneHairball uut = WordUtilities.setUp("/EXECUTE",out,compiler);
 
 		Token token = new LiteralToken("42",42);
 		Stack<Object> pStack = uut.getParamStack();
@@ -434,7 +453,7 @@ public class HairballWordsTest {
 	@Test
 	public void testDot() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/.",out);
+		StandAloneHairball uut = WordUtilities.setUp("/.",out,compiler);
 		Stack<Object> pStack = uut.getParamStack();
 		String literal = "this is a literal";
 		pStack.push(literal);
@@ -451,7 +470,7 @@ public class HairballWordsTest {
 	@Test
 	public void testW() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/W stuff",out);
+		StandAloneHairball uut = WordUtilities.setUp("/W stuff",out,compiler);
 		
 		Stack<Object> pStack = uut.getParamStack();
 		ParserContext ctx = uut.execute();
@@ -467,7 +486,7 @@ public class HairballWordsTest {
 	@Test
 	public void testSpace() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/SPACE",out);
+		StandAloneHairball uut = WordUtilities.setUp("/SPACE",out,compiler);
 
 		Stack<Object> pStack = uut.getParamStack();
 		ParserContext ctx = uut.execute();
@@ -482,7 +501,7 @@ public class HairballWordsTest {
 	@Test
 	public void testCompileSpace()  throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/: /EM /SPACE <em> :/ /: EM/ </em> :/ TEST /EM TEST EM/ TEST",out);
+		StandAloneHairball uut = WordUtilities.setUp("/: /EM /SPACE <em> :/ /: EM/ </em> :/ TEST /EM TEST EM/ TEST",out,compiler);
 
 		Stack<Object> pStack = uut.getParamStack();
 		ParserContext ctx = uut.execute();
@@ -497,7 +516,7 @@ public class HairballWordsTest {
 	@Test
 	public void testDotQuote() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/.\" some fun stuff \"/",out);
+		StandAloneHairball uut = WordUtilities.setUp("/.\" some fun stuff \"/",out,compiler);
 
 		Stack<Object> pStack = uut.getParamStack();
 		ParserContext ctx = uut.execute();
@@ -512,7 +531,7 @@ public class HairballWordsTest {
 	@Test
 	public void testColon() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/: TEST some fun stuff :/\n",out);
+		StandAloneHairball uut = WordUtilities.setUp("/: TEST some fun stuff :/\n",out,compiler);
 		
 		Stack<Object> pStack = uut.getParamStack();
 		ParserContext ctx = uut.execute();
@@ -539,7 +558,7 @@ public class HairballWordsTest {
 //				+ " /: /EXAMPLE <code> /GETMATCHING EXAMPLE/ /. </code> :/";
 //				+ " /EXAMPLE fee fie foo fum EXAMPLE/";
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp(hb,out);
+		StandAloneHairball uut = WordUtilities.setUp(hb,out,compiler);
 		Dictionary d = uut.getParser().getContext().getDictionary();
 		
 		uut.execute();
@@ -568,7 +587,7 @@ public class HairballWordsTest {
 	@Test
 	public void testAbort() {
 		OutputStream out = new ByteArrayOutputStream();
-		StandAloneHairball uut = WordUtilities.setUp("/\" some words \"/ /ABORT",out);
+		StandAloneHairball uut = WordUtilities.setUp("/\" some words \"/ /ABORT",out,compiler);
 		try {
 			uut.execute();
 			fail("must throw error");
@@ -585,7 +604,7 @@ public class HairballWordsTest {
 	public void doesHairballWork() throws IOException, HairballException {
 		OutputStream out = new ByteArrayOutputStream();
 		StandAloneHairball uut = WordUtilities.setUp("/: /EM <em> :/\n"
-				+ "/: EM/ </em> :/",out);
+				+ "/: EM/ </em> :/",out,compiler);
 		Stack<Object> pStack = uut.getParamStack();
 		ParserContext ctx = uut.execute();
 		assertEquals(0,pStack.size());
@@ -614,11 +633,50 @@ public class HairballWordsTest {
 								"/DOCUMENT this is a test \"/\n" +
 								"/BODY\n" +
 								"Some fooby wooby\n" +
-								"DOCUMENT/\n",out);
+								"DOCUMENT/\n",out,compiler);
 		
 		ParserContext ctx = uut.execute();
 		String output = out.toString();
 		assertEquals("<HTML><HEAD><TITLE>this is a test</TITLE></HEAD><BODY>Some fooby wooby</BODY></HTML>",output);		
 	}
 
+	@Test
+	public void testCompiledMatchesInterpreted() throws IOException, HairballException {
+		String hb = "/: /EM <em> :/ /: EM/ </em> :/\n"
+				+ "/: /EMPH /EM /. EM/ :/\n"
+				+ "/: /MAYBE /IF yes /THEN /IF /[\" one \"]/ /EMPH /THEN :/\n"
+				+ "/TRUE /TRUE /MAYBE /FALSE /TRUE /MAYBE /TRUE /FALSE /MAYBE\n"
+				+ "/\" two \"/ /EMPH";
+		OutputStream interpreted = new ByteArrayOutputStream();
+		StandAloneHairball uut = WordUtilities.setUp(hb,interpreted);
+		uut.execute();
+		
+		OutputStream compiled = new ByteArrayOutputStream();
+		uut = WordUtilities.setUp(hb,compiled);
+		uut.setTokenCompiler(new MethodHandleCompiler());
+		uut.execute();
+		assertEquals(0,uut.getParamStack().size());
+		assertEquals(0,uut.getReturnStack().size());
+		
+		assertEquals("yes<em>one</em>yes<em>one</em><em>two</em>",interpreted.toString());
+		assertEquals(interpreted.toString(),compiled.toString());
+	}
+	
+	@Test
+	public void testForkSeesParentDefinitions() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball parent = WordUtilities.setUp("/: /EM <em> :/ /: EM/ </em> :/",out,compiler);
+		parent.execute();
+		
+		OutputStream forkOut = new ByteArrayOutputStream();
+		StandAloneHairball forked = parent.fork();
+		forked.setIO(new BufferedWordStream(new StringBufferInputStream("/: /B <b> :/ /EM one EM/ /B")), new StreamOutput(forkOut));
+		forked.execute();
+		assertEquals("<em>one</em><b>",forkOut.toString());
+		
+		Dictionary parentDict = parent.getParser().getContext().getDictionary();
+		assertNotNull(parentDict.lookUp(new Word("/EM")));
+		assertNull(parentDict.lookUp(new Word("/B")));
+	}
+	
 }
@@ -0,0 +1,74 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+/**
+ * Test the cooperative scheduler.
+ * 
+ * @author tharter
+ *
+ */
+public class InterpreterSchedulerTest {
+
+	/**
+	 * Give a Hairball a word, /SPIN, which loops forever.
+	 * 
+	 * @param hairball
+	 */
+	private void addSpin(StandAloneHairball hairball) {
+		InterpreterToken spin = new InterpreterToken("/SPIN");
+		spin.add(new NativeToken("noop",(interp) -> { return true; }));
+		spin.add(new NativeToken("again",(interp) -> { interp.setIp(0); return true; }));
+		hairball.getParser().getContext().getDictionary().add(new Definition(new Word("/SPIN"),null,spin));
+	}
+	
+	@Test
+	public void testRunawayIsStoppedAndOthersFinish() throws IOException, HairballException, InterruptedException {
+		InterpreterScheduler uut = new InterpreterScheduler(1, 100, 100000);
+		
+		OutputStream spinOut = new ByteArrayOutputStream();
+		StandAloneHairball spinner = WordUtilities.setUp("before /SPIN after",spinOut);
+		addSpin(spinner);
+		InterpreterScheduler.Job spinJob = uut.submit(spinner);
+		
+		OutputStream out = new ByteArrayOutputStream();
+		InterpreterScheduler.Job job = uut.submit(WordUtilities.setUp("/: /EM <em> :/ /EM hello",out));
+		job.get();
+		assertEquals("<em>hello",out.toString());
+		assertTrue(job.getTokensExecuted() > 0);
+		
+		try {
+			spinJob.get();
+			fail("runaway job was not stopped");
+		} catch(HairballException e) {
+			assertTrue(spinJob.getTokensExecuted() > 100000);
+			assertTrue(spinJob.getSlices() > 1);
+			assertTrue(spinJob.getNanosConsumed() > 0);
+		}
+		uut.shutdown();
+	}
+}
@@ -17,6 +17,7 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
@@ -25,14 +26,29 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 
 /**
- * Test the hairball inner interpreter.
+ * Test the hairball inner interpreter. Every test is run with the interpreter
+ * interpreting tokens and again with it compiling them.
  * 
  * @author tharter
  *
  */
+@RunWith(Parameterized.class)
 public class InterpreterTest {
+	private final ITokenCompiler compiler;
+	
+	@Parameters(name = "{0}")
+	public static Object[][] compilers() {
+		return new Object[][] { { "interpreted", null }, { "compiled", MethodHandleCompiler.INSTANCE } };
+	}
+	
+	public InterpreterTest(String name, ITokenCompiler compiler) {
+		this.compiler = compiler;
+	}
 
 	private int lastExecuted = -1;
 //	private Token rtsToken = new NativeToken("rfc",(interp) -> { interp.returnFromContext(); return true; });
@@ -47,6 +63,7 @@ public class InterpreterTest {
 	public void setUp() {
 		lastExecuted = -1;
 		this.uut = new Interpreter();
+		uut.setTokenCompiler(compiler);
 		
 		instructions.clear();
 		instructions.add(firstToken);
@@ -177,4 +194,64 @@ public class InterpreterTest {
 	}
 	
 	
+	@Test
+	public void testCompiledTokenRunsBody() throws HairballException {
+		InterpreterToken inner = new InterpreterToken("inner");
+		inner.add(new LiteralToken("lit",42));
+		inner.add(secondToken);
+		InterpreterToken outer = new InterpreterToken("outer");
+		outer.add(firstToken);
+		outer.add(inner);
+		uut.setTokenCompiler(new MethodHandleCompiler());
+		
+		Token compiled = outer.getCompiled(uut.getTokenCompiler());
+		assertTrue(compiled instanceof MethodHandleCompiler.CompiledToken);
+		assertTrue(uut.execute(outer));
+		assertEquals(2,lastExecuted);
+		assertEquals(1,uut.depth());
+		assertEquals(42,uut.pop());
+		assertEquals(0,uut.rDepth());
+	}
+	
+	@Test
+	public void testCompiledTokenStopsOnFalse() throws HairballException {
+		Token stop = new NativeToken("stop",(interp) -> { return false; });
+		Token token = InterpreterToken.makeToken("stopper", firstToken, stop, thirdToken);
+		uut.setTokenCompiler(new MethodHandleCompiler());
+		
+		assertTrue(uut.execute(token));
+		assertEquals(1,lastExecuted);
+		assertEquals(0,uut.rDepth());
+	}
+	
+	@Test
+	public void testCompiledTokenFollowsBranches() throws HairballException {
+		Token skip = new NativeToken("skip",(interp) -> { interp.setIp(3); return true; });
+		Token token = InterpreterToken.makeToken("brancher", skip, firstToken, secondToken, thirdToken);
+		uut.setTokenCompiler(new MethodHandleCompiler());
+		
+		assertTrue(uut.execute(token));
+		assertEquals(3,lastExecuted);
+		assertEquals(0,uut.rDepth());
+	}
+	
+	@Test
+	public void testRecursiveTokenCompiles() throws HairballException {
+		Token countDown = new NativeToken("countDown",(interp) -> {
+			int count = (Integer) interp.pop();
+			if(count == 0) return false;
+			interp.push(count - 1);
+			return true;
+		});
+		InterpreterToken token = new InterpreterToken("recurse");
+		token.add(countDown);
+		token.add(token);
+		uut.setTokenCompiler(new MethodHandleCompiler());
+		
+		uut.push(10);
+		assertTrue(uut.execute(token));
+		assertEquals(0,uut.depth());
+		assertEquals(0,uut.rDepth());
+	}
+	
 }
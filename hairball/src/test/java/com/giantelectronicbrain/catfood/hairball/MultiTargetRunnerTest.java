@@ -0,0 +1,73 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Test rendering one input to several targets.
+ * 
+ * @author tharter
+ *
+ */
+public class MultiTargetRunnerTest {
+	private static final String HTML = "/: /EM <em> :/ /: /END-EM </em> :/";
+	private static final String MARKDOWN = "/: /EM * :/ /: /END-EM * :/";
+	private static final String DOCUMENT = "/EM hello /END-EM /\" quoted text \"/ /. /: /TWICE /DUP /. /. :/ #2 /TWICE world";
+	
+	private StandAloneHairball engine(String prelude, ByteArrayOutputStream out) throws IOException, HairballException {
+		StandAloneHairball engine = new StandAloneHairball(new StringWordStream(prelude), new StreamOutput(out));
+		engine.load();
+		return engine;
+	}
+	
+	private String renderAlone(String prelude) throws IOException, HairballException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StandAloneHairball engine = engine(prelude, out);
+		engine.setInput(new StringWordStream(DOCUMENT));
+		engine.execute();
+		return out.toString();
+	}
+	
+	private void testTargets(boolean threaded) throws IOException, HairballException {
+		ByteArrayOutputStream html = new ByteArrayOutputStream();
+		ByteArrayOutputStream markdown = new ByteArrayOutputStream();
+		MultiTargetRunner uut = new MultiTargetRunner(new StringWordStream(DOCUMENT));
+		uut.add("html", engine(HTML, html));
+		uut.add("md", engine(MARKDOWN, markdown));
+		uut.run(threaded);
+		assertEquals(renderAlone(HTML),html.toString());
+		assertEquals(renderAlone(MARKDOWN),markdown.toString());
+		assertNotEquals(html.toString(),markdown.toString());
+	}
+	
+	@Test
+	public void testSequentialTargets() throws IOException, HairballException {
+		testTargets(false);
+	}
+	
+	@Test
+	public void testThreadedTargets() throws IOException, HairballException {
+		testTargets(true);
+	}
+}
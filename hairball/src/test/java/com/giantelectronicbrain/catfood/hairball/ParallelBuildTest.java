@@ -0,0 +1,108 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Test rendering documents on a pool of workers.
+ * 
+ * @author tharter
+ *
+ */
+public class ParallelBuildTest {
+
+	@Test
+	public void testDocumentsShareThePrelude() throws IOException, HairballException {
+		StandAloneHairball prototype = new StandAloneHairball();
+		prototype.setIO(new StringWordStream("/: /GREET hello :/"), new StreamOutput(new ByteArrayOutputStream()));
+		prototype.load();
+		ParallelBuild uut = new ParallelBuild(prototype, 3, engine -> engine.setTokenLimit(1000));
+		List<ByteArrayOutputStream> outputs = new ArrayList<>();
+		for(int i = 0; i < 20; i++) {
+			String input = i % 7 == 3 ? "/GREET /\" unterminated" : "/GREET page"+i;
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			outputs.add(out);
+			uut.add("doc"+i, () -> new StringWordStream(input), () -> new StreamOutput(out));
+		}
+		ParallelBuild.Report report = uut.run();
+		assertEquals("hellopage0", outputs.get(0).toString());
+		assertEquals("hellopage19", outputs.get(19).toString());
+		List<String> failures = report.getFailures();
+		assertEquals(3, failures.size());
+		assertTrue(failures.get(0), failures.get(0).startsWith("doc3: "));
+		assertTrue(failures.get(1), failures.get(1).startsWith("doc10: "));
+		assertTrue(failures.get(2), failures.get(2).startsWith("doc17: "));
+		assertTrue(report.toString(), report.toString().contains("20 documents in"));
+		try {
+			report.check();
+			fail("the failures should be thrown");
+		} catch (HairballException e) {
+			assertTrue(e.getMessage().startsWith("3 documents failed"));
+		}
+	}
+	
+	@Test
+	public void testFailedDocumentKeepsItsLastOutput() throws IOException, HairballException {
+		Path dir = Files.createTempDirectory("parallelbuild");
+		Path page = dir.resolve("page.html");
+		UnchangedWrites writes = new UnchangedWrites();
+		Files.write(page, "good".getBytes(StandardCharsets.UTF_8));
+		StandAloneHairball prototype = new StandAloneHairball();
+		ParallelBuild uut = new ParallelBuild(prototype, 1, null);
+		uut.add("page", () -> new StringWordStream("half /\" unterminated"), () -> new FsOutput(page.toString(), writes));
+		assertEquals(1, uut.run().getFailures().size());
+		assertEquals("good", new String(Files.readAllBytes(page), StandardCharsets.UTF_8));
+		try(Stream<Path> files = Files.list(dir)) {
+			assertEquals(1, files.count()); // no temporary file left behind
+		}
+		Files.delete(page);
+		Files.delete(dir);
+	}
+	
+	@Test
+	public void testExpandAndOutputName() throws IOException {
+		Path base = Files.createTempDirectory("parallelbuild");
+		Files.createDirectories(base.resolve("sub"));
+		Files.write(base.resolve("b.hairball"), new byte[0]);
+		Files.write(base.resolve("a.hairball"), new byte[0]);
+		Files.write(base.resolve("sub/c.hairball"), new byte[0]);
+		Files.write(base.resolve("notes.txt"), new byte[0]);
+		assertEquals(Arrays.asList("first.hairball", "a.hairball", "b.hairball"),
+				ParallelBuild.expand(base.toString(), Arrays.asList("first.hairball", "*.hairball")));
+		assertEquals(Arrays.asList("sub/c.hairball"),
+				ParallelBuild.expand(base.toString(), Arrays.asList("sub/*.hairball")));
+		assertEquals("sub/c.html", ParallelBuild.outputName("sub/c.hairball", "html"));
+		assertEquals("v1.2/readme.md", ParallelBuild.outputName("v1.2/readme", "md"));
+		for(String name : new String[] { "sub/c.hairball", "sub", "a.hairball", "b.hairball", "notes.txt", "" })
+			Files.delete(base.resolve(name));
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Test the render daemon through its client.
+ * 
+ * @author tharter
+ *
+ */
+public class RenderDaemonTest {
+	private Vertx vertx;
+	private Path dir;
+	private RenderDaemon daemon;
+	private Thread thread;
+	
+	@Before
+	public void setUp() throws IOException {
+		vertx = Vertx.vertx();
+		dir = Files.createTempDirectory("renderdaemon");
+		Files.write(dir.resolve("prelude.hairball"), "/: /GREET hello :/".getBytes(StandardCharsets.UTF_8));
+		Files.write(dir.resolve("page.hairball"), "/GREET world".getBytes(StandardCharsets.UTF_8));
+		daemon = new RenderDaemon(0, dir, vertx, 2, 0, engine -> engine.setTokenLimit(1000));
+		thread = new Thread(() -> {
+			try {
+				daemon.run();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		thread.start();
+	}
+	
+	@After
+	public void tearDown() throws IOException, InterruptedException {
+		daemon.stop();
+		thread.join();
+		try(Stream<Path> files = Files.list(dir)) {
+			files.forEach(p -> p.toFile().delete());
+		}
+		Files.delete(dir);
+		vertx.close();
+	}
+	
+	private String send(int expectedStatus, String... request) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		List<String> lines = Arrays.asList(request);
+		int status = RenderDaemon.send(daemon.getPort(), lines, out, new PrintStream(err));
+		assertEquals(err.toString(), expectedStatus, status);
+		return status == 0 ? out.toString() : err.toString();
+	}
+	
+	@Test
+	public void testRenderWithWarmEngine() throws IOException {
+		for(int i = 0; i < 3; i++)
+			assertEquals("helloworld", send(0, RenderDaemon.RENDER, "base="+dir, "prelude=prelude.hairball", "input=page.hairball"));
+		String status = send(0, RenderDaemon.STATUS);
+		assertTrue(status, status.contains("jobs 3, failed 0"));
+		assertTrue(status, status.contains("warm engines 1"));
+		assertTrue(status, status.contains("3 renders"));
+	}
+	
+	@Test
+	public void testRenderToFile() throws IOException {
+		String reply = send(0, RenderDaemon.RENDER, "base="+dir, "prelude=prelude.hairball", "input=page.hairball", "output=page.html");
+		assertTrue(reply, reply.startsWith("Rendered page.html"));
+		assertEquals("helloworld", new String(Files.readAllBytes(dir.resolve("page.html")), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testErrors() throws IOException {
+		String reply = send(1, RenderDaemon.RENDER, "base="+dir, "input=missing.hairball");
+		assertTrue(reply, reply.contains("missing.hairball"));
+		reply = send(1, "EXPLODE");
+		assertTrue(reply, reply.contains("Unknown command"));
+		assertTrue(send(0, RenderDaemon.STATUS).contains("failed 1"));
+	}
+	
+	@Test
+	public void testJobsAreConfinedToTheRoot() throws IOException {
+		String reply = send(1, RenderDaemon.RENDER, "base="+dir.getParent(), "input="+dir.resolve("page.hairball"));
+		assertTrue(reply, reply.contains("is outside of"));
+		reply = send(1, RenderDaemon.RENDER, "base="+dir, "input=page.hairball", "output=../escaped.html");
+		assertTrue(reply, reply.contains("is outside of"));
+		assertFalse(Files.exists(dir.resolveSibling("escaped.html")));
+		reply = send(1, RenderDaemon.RENDER, "base="+dir, "prelude=/etc/hostname", "input=page.hairball");
+		assertTrue(reply, reply.contains("is outside of"));
+	}
+	
+	@Test
+	public void testFailedJobLeavesOutputAsItWas() throws IOException {
+		Files.write(dir.resolve("page.html"), "good".getBytes(StandardCharsets.UTF_8));
+		Files.write(dir.resolve("bad.hairball"), "half /\" unterminated".getBytes(StandardCharsets.UTF_8));
+		send(1, RenderDaemon.RENDER, "base="+dir, "input=bad.hairball", "output=page.html");
+		assertEquals("good", new String(Files.readAllBytes(dir.resolve("page.html")), StandardCharsets.UTF_8));
+		try(Stream<Path> files = Files.list(dir)) {
+			assertEquals(4, files.count()); // the two inputs, the prelude and the page, no temporary file
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Test the render verticle with a loopback HTTP client.
+ * 
+ * @author tharter
+ *
+ */
+public class RenderVerticleTest {
+	private Vertx vertx;
+	private Path dir;
+	private RenderVerticle verticle;
+	private HttpClient client;
+	
+	@Before
+	public void setUp() throws Exception {
+		vertx = Vertx.vertx();
+		dir = Files.createTempDirectory("renderverticle");
+		Files.write(dir.resolve("prelude.hairball"), "/: /GREET hello :/".getBytes(StandardCharsets.UTF_8));
+		Files.write(dir.resolve("page.hairball"), "/GREET page".getBytes(StandardCharsets.UTF_8));
+		verticle = new RenderVerticle();
+		JsonObject config = new JsonObject().put("port", 0).put("base", dir.toString())
+				.put("prelude", new JsonArray().add("prelude.hairball")).put("maxConcurrent", 1);
+		get(vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config)));
+		client = vertx.createHttpClient();
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		get(vertx.close());
+		try(Stream<Path> files = Files.list(dir)) {
+			files.forEach(p -> p.toFile().delete());
+		}
+		Files.delete(dir);
+	}
+	
+	private static <T> T get(Future<T> future) throws InterruptedException, ExecutionException, TimeoutException {
+		return future.toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+	}
+	
+	private HttpClientRequest request(HttpMethod method, String uri) throws Exception {
+		return get(client.request(method, verticle.getPort(), "localhost", uri));
+	}
+	
+	/**
+	 * Read a response's body as soon as the response arrives, since the body is gone
+	 * if it has been received before anyone asks for it.
+	 */
+	private static Future<Reply> reply(Future<HttpClientResponse> response) {
+		return response.compose(r -> r.body().map(body -> new Reply(r, body)));
+	}
+	
+	private Reply send(HttpMethod method, String uri, String body) throws Exception {
+		HttpClientRequest request = request(method, uri);
+		return get(reply(body == null ? request.send() : request.send(body)));
+	}
+	
+	private static class Reply {
+		final int status;
+		final String transferEncoding;
+		final String body;
+		
+		Reply(HttpClientResponse response, Buffer body) {
+			this.status = response.statusCode();
+			this.transferEncoding = response.getHeader("Transfer-Encoding");
+			this.body = body.toString(StandardCharsets.UTF_8);
+		}
+	}
+	
+	@Test
+	public void testPostSource() throws Exception {
+		Reply reply = send(HttpMethod.POST, "/render", "/GREET world");
+		assertEquals(200, reply.status);
+		assertEquals("chunked", reply.transferEncoding);
+		assertEquals("helloworld", reply.body);
+	}
+	
+	@Test
+	public void testGetPath() throws Exception {
+		assertEquals("hellopage", send(HttpMethod.GET, "/render?path=page.hairball", null).body);
+		assertEquals(404, send(HttpMethod.GET, "/render?path=missing.hairball", null).status);
+		assertEquals(400, send(HttpMethod.GET, "/render?path=../outside.hairball", null).status);
+	}
+	
+	@Test
+	public void testLargeOutputStreams() throws Exception {
+		StringBuilder source = new StringBuilder();
+		for(int i = 0; i < 20000; i++) source.append("item").append(i).append(' ');
+		String rendered = send(HttpMethod.POST, "/render", source.toString()).body;
+		assertTrue(rendered.startsWith("item0 item1"));
+		assertTrue(rendered.endsWith("item19999"));
+	}
+	
+	@Test
+	public void testConcurrencyLimitAndMetrics() throws Exception {
+		HttpClientRequest first = request(HttpMethod.POST, "/render");
+		first.setChunked(true);
+		Future<Reply> firstReply = reply(first.response());
+		get(first.write("/GREET "));
+		while(verticle.getMetrics().getActive() == 0) Thread.sleep(10); // first is rendering, waiting for more input
+		assertEquals(503, send(HttpMethod.POST, "/render", "/GREET again").status);
+		get(first.end(Buffer.buffer("slowly")));
+		assertEquals("helloslowly", get(firstReply).body);
+		String metrics = send(HttpMethod.GET, "/metrics", null).body;
+		assertTrue(metrics, metrics.startsWith("requests 1, active 0, completed 1, failed 0, rejected 1"));
+	}
+	
+	@Test
+	public void testFailureBeforeOutputIsAnError() throws Exception {
+		Reply reply = send(HttpMethod.POST, "/render", "/\" never closed");
+		assertEquals(500, reply.status);
+		assertTrue(reply.body, reply.body.contains("failed to find matching"));
+		assertEquals(1, verticle.getMetrics().getFailed());
+	}
+	
+	@Test
+	public void testRequestsAreConfinedToBase() throws Exception {
+		assertEquals("hellopage", send(HttpMethod.POST, "/render", "/SOURCE\" "+dir.resolve("page.hairball")+" \"/").body);
+		Path outside = Files.createTempFile("outside", ".hairball");
+		try {
+			Reply reply = send(HttpMethod.POST, "/render", "/SOURCE\" "+outside+" \"/");
+			assertEquals(500, reply.status);
+			assertTrue(reply.body, reply.body.contains("is outside of"));
+		} finally {
+			Files.delete(outside);
+		}
+		Reply reply = send(HttpMethod.POST, "/render", "/\" escaped.txt \"/ /OPEN");
+		assertEquals(500, reply.status);
+		assertTrue(reply.body, reply.body.contains("is outside of"));
+		assertFalse(Files.exists(Paths.get("escaped.txt")));
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test /SOURCE" and /REQUIRE".
+ * 
+ * @author tharter
+ *
+ */
+public class SourceIncludesTest {
+	private Path dir;
+	
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("sourceincludes");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		try(Stream<Path> files = Files.walk(dir)) {
+			files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+	
+	private Path write(String name, String text) throws IOException {
+		Path file = dir.resolve(name);
+		Files.createDirectories(file.getParent());
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+	
+	private String run(StandAloneHairball hairball, String input) throws IOException, HairballException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		hairball.setIO(new StringWordStream(input), new StreamOutput(out));
+		hairball.execute();
+		return out.toString();
+	}
+	
+	@Test
+	public void testRequireIncludesOnce() throws IOException, HairballException {
+		Path vocabulary = write("vocabulary.hairball", "loaded /: /HI hi :/");
+		StandAloneHairball uut = new StandAloneHairball();
+		String output = run(uut, "/REQUIRE\" "+vocabulary+" \"/ /REQUIRE\" "+vocabulary+" \"/ /HI");
+		assertEquals("loadedhi", output); // the included text is flushed on its own
+		assertEquals("loaded", run(uut, "/SOURCE\" "+vocabulary+" \"/"));
+		assertEquals("", run(uut.fork(), "/REQUIRE\" "+vocabulary+" \"/"));
+	}
+	
+	@Test
+	public void testNestedIncludesAreRelative() throws IOException, HairballException {
+		Path top = write("top.hairball", "/SOURCE\" sub/middle.hairball \"/");
+		write("sub/middle.hairball", "/SOURCE\" bottom.hairball \"/");
+		write("sub/bottom.hairball", "deep");
+		assertEquals("deep", run(new StandAloneHairball(), "/SOURCE\" "+top+" \"/"));
+	}
+	
+	@Test
+	public void testChangedFileIsReadAgain() throws IOException, HairballException {
+		Path file = write("changing.hairball", "before");
+		StandAloneHairball uut = new StandAloneHairball();
+		assertEquals("before", run(uut, "/SOURCE\" "+file+" \"/"));
+		write("changing.hairball", "after it changed");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+		assertEquals("after it changed", run(uut, "/SOURCE\" "+file+" \"/"));
+	}
+	
+	@Test
+	public void testErrorsGiveIncludeDepth() throws IOException {
+		Path top = write("top.hairball", "/SOURCE\" bad.hairball \"/");
+		write("bad.hairball", "/SOURCE\" missing.hairball \"/");
+		try {
+			run(new StandAloneHairball(), "/SOURCE\" "+top+" \"/");
+			fail("include of a missing file should fail");
+		} catch (HairballException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("missing.hairball"));
+			assertTrue(e.getMessage(), e.getMessage().contains("bad.hairball included at depth 2"));
+			assertTrue(e.getMessage(), e.getMessage().contains("top.hairball included at depth 1"));
+		}
+	}
+	
+	@Test
+	public void testIncludesRunOnTheIncludingEngine() throws IOException, HairballException {
+		Path file = write("count.hairball", "/: /BUMP /1+ /1+ :/ #40 /BUMP");
+		StandAloneHairball uut = new StandAloneHairball();
+		assertEquals("42", run(uut, "/SOURCE\" "+file+" \"/ /."));
+		assertTrue(uut.getTokensExecuted() > 3);
+		
+		StandAloneHairball limited = new StandAloneHairball();
+		limited.setTokenLimit(3);
+		try {
+			run(limited, "/SOURCE\" "+file+" \"/");
+			fail("the token limit should cover included words");
+		} catch (HairballException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Token limit of 3 exceeded"));
+		}
+	}
+}
@@ -18,6 +18,9 @@ package com.giantelectronicbrain.catfood.hairball;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 /**
@@ -52,4 +55,52 @@ public class VocabularyTest {
 		actual = uut.lookUp(myWord);
 		assertNull(actual);
 	}
+
+	@Test
+	public void forkSharesButDoesNotLeak() {
+		Word myWord = new Word("mydef");
+		Definition myDef = new Definition(myWord,null,null);
+		uut.add(myDef);
+		Vocabulary forked = uut.fork();
+		assertEquals("TEST",forked.getName());
+		assertEquals(myDef,forked.lookUp(myWord));
+		
+		Word forkWord = new Word("forkdef");
+		forked.add(new Definition(forkWord,null,null));
+		assertNotNull(forked.lookUp(forkWord));
+		assertNull(uut.lookUp(forkWord));
+		
+		Word parentWord = new Word("parentdef");
+		uut.add(new Definition(parentWord,null,null));
+		assertNotNull(uut.lookUp(parentWord));
+		assertNull(forked.lookUp(parentWord));
+	}
+	
+	@Test
+	public void frozenBaseIsSharedNotChanged() {
+		List<Definition> builtins = new ArrayList<>();
+		for(int i = 0; i < 200; i++)
+			builtins.add(new Definition(new Word("/W"+i),null,null));
+		FrozenVocabulary frozen = new FrozenVocabulary("BASE",builtins);
+		for(int i = 0; i < 200; i++)
+			assertEquals(builtins.get(i),frozen.lookUp(new Word("/W"+i)));
+		assertNull(frozen.lookUp(new Word("/W200")));
+		
+		Vocabulary one = new Vocabulary("ONE",frozen);
+		Vocabulary two = new Vocabulary("TWO",frozen);
+		Definition redefined = new Definition(new Word("/W7"),null,null);
+		one.add(redefined);
+		assertTrue(one.lookUp(new Word("/W7")) == redefined);
+		assertTrue(two.lookUp(new Word("/W7")) == builtins.get(7));
+		assertTrue(frozen.lookUp(new Word("/W7")) == builtins.get(7));
+		assertEquals(200,one.getDefinitions().size());
+		assertEquals(1,one.getOwnDefinitions().size());
+		
+		try {
+			frozen.add(redefined);
+			fail("frozen vocabulary was changed");
+		} catch(UnsupportedOperationException e) {
+			// happy path
+		}
+	}
 }
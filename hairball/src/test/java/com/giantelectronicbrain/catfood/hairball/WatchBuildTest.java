@@ -0,0 +1,145 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Test keeping a build up to date as its files change.
+ * 
+ * @author tharter
+ *
+ */
+public class WatchBuildTest {
+	private Vertx vertx;
+	private Path base;
+	private final List<List<String>> builds = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String,String> outputs = new ConcurrentHashMap<>();
+	
+	@Before
+	public void setUp() throws IOException {
+		vertx = Vertx.vertx();
+		base = Files.createTempDirectory("watchbuild");
+		write("prelude.hairball", "/: /GREET hello :/");
+		write("a.hairball", "/GREET a /SOURCE\" inc.hairball \"/");
+		write("b.hairball", "/GREET b");
+		write("inc.hairball", "included");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		try(Stream<Path> files = Files.list(base)) {
+			for(Object file : files.toArray()) Files.delete((Path) file);
+		}
+		Files.delete(base);
+		vertx.close();
+	}
+	
+	@Test
+	public void testOnlyAffectedDocumentsRebuilt() throws Exception {
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		WatchBuild uut = new WatchBuild(base.toString(), Arrays.asList("a.hairball", "b.hairball"),
+				Arrays.asList("prelude.hairball"), this::load, this::render);
+		Thread watching = new Thread(() -> {
+			try {
+				uut.run(new PrintStream(log, true));
+			} catch (IOException | HairballException e) {
+				e.printStackTrace();
+			}
+		});
+		watching.start();
+		try {
+			awaitBuilds(1);
+			assertEquals("helloaincluded", outputs.get("a.hairball"));
+			assertEquals("hellob", outputs.get("b.hairball"));
+			assertTrue(uut.getDependencies("a.hairball").contains(base.resolve("inc.hairball").toAbsolutePath()));
+			
+			write("inc.hairball", "changed");
+			awaitBuilds(2);
+			assertEquals(Arrays.asList("a.hairball"), builds.get(1));
+			assertEquals("helloachanged", outputs.get("a.hairball"));
+			
+			write("b.hairball", "/GREET bee");
+			awaitBuilds(3);
+			assertEquals(Arrays.asList("b.hairball"), builds.get(2));
+			assertEquals("hellobee", outputs.get("b.hairball"));
+			
+			write("prelude.hairball", "/: /GREET hi :/");
+			awaitBuilds(4);
+			assertEquals(Arrays.asList("a.hairball", "b.hairball"), builds.get(3));
+			assertEquals("hiachanged", outputs.get("a.hairball"));
+			assertTrue(log.toString(), log.toString().contains("Rebuilt 1 of 2 documents in "));
+		} finally {
+			uut.close();
+			watching.join(10000);
+		}
+		assertTrue(!watching.isAlive());
+	}
+	
+	private StandAloneHairball load() throws IOException, HairballException {
+		StandAloneHairball prototype = new StandAloneHairball();
+		prototype.setIO(new BucketWordStream(vertx.fileSystem(), "prelude.hairball", base.toString()),
+				new StreamOutput(OutputStream.nullOutputStream()));
+		prototype.load();
+		return prototype;
+	}
+	
+	private ParallelBuild.Report render(StandAloneHairball prototype, List<String> documents) throws HairballException {
+		ParallelBuild build = new ParallelBuild(prototype, 2, null);
+		Map<String,ByteArrayOutputStream> rendered = new ConcurrentHashMap<>();
+		for(String document : documents) {
+			rendered.put(document, new ByteArrayOutputStream());
+			build.add(document, () -> new BucketWordStream(vertx.fileSystem(), document, base.toString()),
+					() -> new StreamOutput(rendered.get(document)));
+		}
+		ParallelBuild.Report report = build.run();
+		for(String document : documents) outputs.put(document, rendered.get(document).toString().trim());
+		builds.add(documents);
+		return report;
+	}
+	
+	private void write(String name, String text) throws IOException {
+		Files.write(base.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private void awaitBuilds(int count) throws InterruptedException {
+		for(int i = 0; i < 200 && builds.size() < count; i++) Thread.sleep(50);
+		assertEquals(count, builds.size());
+	}
+}
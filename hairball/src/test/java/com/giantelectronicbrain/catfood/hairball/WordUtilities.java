@@ -45,11 +45,27 @@ public class WordUtilities {
 	 * @return
 	 */
 	public static StandAloneHairball setUp(String inputData, OutputStream out) {
+		return setUp(inputData, out, null);
+	}
+	
+	/**
+	 * Create a hairball with its input coming from the given string, which compiles
+	 * the words it runs with the given compiler, so that a test can be run both
+	 * interpreted and compiled.
+	 * 
+	 * @param inputData
+	 * @param out
+	 * @param compiler the compiler, or null to interpret
+	 * @return
+	 */
+	public static StandAloneHairball setUp(String inputData, OutputStream out, ITokenCompiler compiler) {
 		InputStream in = new StringBufferInputStream(inputData);
 //		OutputStream out = new ByteArrayOutputStream();
 		Output output = new StreamOutput(out);
 		IWordStream input = new BufferedWordStream(in);
-		return new StandAloneHairball(input, output);
+		StandAloneHairball hairball = new StandAloneHairball(input, output);
+		hairball.setTokenCompiler(compiler);
+		return hairball;
 	}
 
 	public static BucketWordStream bucketSetUp(Vertx vertx, String input) {
@@ -95,6 +95,17 @@ public class Context {
 		return oldIp;
 	}
 	
+	/**
+	 * Move the instruction pointer without any bounds checking. This exists for
+	 * compiled tokens, which step through the instructions themselves and need to
+	 * leave the ip just where getNextToken would, including one past the end.
+	 * 
+	 * @param newIpValue the new ip value
+	 */
+	void advanceTo(int newIpValue) {
+		instructionPointer = newIpValue;
+	}
+	
 	public Token getNextToken() {
 		return instructionPointer >= instructions.size() ? null : instructions.get(instructionPointer++);
 	}
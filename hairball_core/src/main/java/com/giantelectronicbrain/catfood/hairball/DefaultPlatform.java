@@ -0,0 +1,49 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.util.logging.Logger;
+
+import com.giantelectronicbrain.catfood.IPlatform;
+
+/**
+ * The platform an engine uses when it hasn't been given one. It keeps no state, so
+ * any number of engines can share it, and it is what the classes which have no
+ * engine to ask, such as outputs and word streams, get their loggers from.
+ * 
+ * @author tharter
+ *
+ */
+public class DefaultPlatform implements IPlatform {
+	public static final DefaultPlatform INSTANCE = new DefaultPlatform();
+
+	@Override
+	public boolean isClient() {
+		return false;
+	}
+
+	@Override
+	public Logger getLogger(String name) {
+		return Logger.getLogger(name);
+	}
+
+	@Override
+	public String getVersion() {
+		return null;
+	}
+
+}
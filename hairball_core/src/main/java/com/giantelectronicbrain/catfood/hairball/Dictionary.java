@@ -17,11 +17,15 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
@@ -41,17 +45,139 @@ import java.util.function.Consumer;
  * Removed vocabularies are still available to be re-added later. The vocabulary management words will
  * perform this task.
  * 
+ * A dictionary can be forked, which produces a new dictionary with the same vocabularies, search order
+ * and current vocabulary. Vocabularies share their definitions with the ones they were forked from until
+ * one side changes, so forking is cheap and new definitions in the fork are never seen by the original.
+ * The definitions themselves are shared, but a fork keeps its own values for variables. It starts out with
+ * the values the original had when it was forked, and whatever it stores is seen by it alone, see store.
+ * 
+ * Lookups don't search each vocabulary in turn. The dictionary keeps a merged index of all the active
+ * vocabularies, where each word maps to the definition which would be found first, so a lookup is a single
+ * probe. The index is kept up to date as vocabularies are added and removed and as definitions are added
+ * to active vocabularies. Only Vocabulary instances can be indexed, if anything else is active then lookups
+ * fall back to searching the vocabularies in order.
+ * 
+ * The state of a dictionary can be marked, and later rolled back to the mark. This forgets every definition
+ * and vocabulary made since, so long running sessions can give the memory back.
+ * 
+ * A dictionary can have an IVocabularyLoader, which is asked to load any vocabulary the dictionary is
+ * asked for by name but doesn't know yet. Once loaded a vocabulary is known like any other.
+ * 
+ * The frozen base of the oldest vocabulary, normally the shared built in words, is left out of the index
+ * and consulted when the index misses, so setting up a dictionary doesn't cost anything per built in word.
+ * 
+ * Every change which could alter what a word looks up to gives the dictionary a new version, which no
+ * other dictionary has had. A fork starts out at the version of its original. Changes made directly to
+ * active vocabularies which aren't Vocabulary instances can't be seen, so they don't change the version.
+ * 
  * @author tharter
  *
  */
-public class Dictionary implements IVocabulary {
+public class Dictionary implements IVocabulary, IVocabularyListener {
 	private final String name;
-	private final Stack<IVocabulary> vocabularies = new Stack<>();
+	private final Object lineage; // the same for a dictionary and all of its forks, see Mark
+	private final List<IVocabulary> vocabularies = new ArrayList<>(); // search order, newest last
+	private Map<Word,Definition> index = new HashMap<>();
+	private volatile boolean indexShared = false; // true if the index may be seen by a fork
+	private int unindexed = 0; // number of active vocabularies which aren't in the index
+	private FrozenVocabulary fallback = null; // base of the oldest vocabulary, searched when the index misses
+	private Map<VariableToken,Object> variables = null; // values stored by this fork, null if it isn't one
 	private EmptyDefinition currentDefinition = new EmptyDefinition();
 	private Consumer<Token> doerDoes = this::addToRuntime;
 	private boolean doer = false;
 	private IVocabulary currentVocabulary;
 	private Map<String,IVocabulary> vocabularyList = new HashMap<>();
+	private IVocabularyLoader vocabularyLoader = null;
+	private final Set<String> loading = new HashSet<>(); // vocabularies being loaded right now
+	private static final Token UNRESOLVED = new LiteralToken("unresolved",0); // placeholder for forward references
+	private static long lastVersion = 0;
+	private long version = nextVersion();
+
+	/**
+	 * A saved state of a dictionary, see mark and rollBack. Marks are cheap, the
+	 * definitions in each vocabulary are only copied when the vocabulary changes.
+	 * 
+	 * A mark doesn't hold on to the vocabularies of the dictionary which made it, it
+	 * keeps forks of them which nothing else can change. That way a mark made in a
+	 * prototype, for example by a /MARKER in a prelude, can be rolled back to in any
+	 * fork of the prototype, and only the fork's own vocabularies are changed.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	public static final class Mark {
+		private final Object lineage;
+		private final List<IVocabulary> searchOrder = new ArrayList<>();
+		private final IVocabulary current;
+		private final Map<String,IVocabulary> known = new HashMap<>();
+		private final Map<IVocabulary,IVocabulary> saved = new IdentityHashMap<>();
+		
+		private Mark(Dictionary dictionary) {
+			lineage = dictionary.lineage;
+			dictionary.vocabularyList.forEach((vocabName,vocabulary) -> known.put(vocabName, save(vocabulary)));
+			for(IVocabulary vocabulary : dictionary.vocabularies) searchOrder.add(save(vocabulary));
+			current = save(dictionary.currentVocabulary);
+			saved.clear(); // only needed while marking
+		}
+		
+		private IVocabulary save(IVocabulary vocabulary) {
+			if(!(vocabulary instanceof Vocabulary)) return vocabulary;
+			IVocabulary copy = saved.get(vocabulary);
+			if(copy == null) {
+				copy = ((Vocabulary) vocabulary).fork();
+				saved.put(vocabulary, copy);
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * A growable array of tokens, which is what a definition is compiled into. Tokens
+	 * can be read and replaced by offset in constant time, which is what branch
+	 * patching needs.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	private static class TokenBuffer {
+		private Token[] tokens = new Token[16];
+		private int size = 0;
+		
+		void add(Token token) {
+			if(size == tokens.length) tokens = Arrays.copyOf(tokens, size * 2);
+			tokens[size++] = token;
+		}
+		
+		Token get(int offset) {
+			checkOffset(offset);
+			return tokens[offset];
+		}
+		
+		void set(int offset, Token token) {
+			checkOffset(offset);
+			tokens[offset] = token;
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		/**
+		 * Copy the tokens into a list which is exactly big enough.
+		 * 
+		 * @return the tokens
+		 */
+		List<Token> toList() {
+			List<Token> list = new ArrayList<>(size);
+			for(int i = 0; i < size; i++) list.add(tokens[i]);
+			return list;
+		}
+		
+		private void checkOffset(int offset) {
+			if(offset < 0 || offset >= size)
+				throw new IndexOutOfBoundsException("offset "+offset+" is not in the definition");
+		}
+	}
 
 	/**
 	 * This is a structure for holding the contents of the current definition
@@ -62,8 +188,9 @@ public class Dictionary implements IVocabulary {
 	 */
 	private class EmptyDefinition {
 		Word name;
-		List<Token> compileTime = new LinkedList<>();
-		List<Token> runTime = new LinkedList<>();
+		TokenBuffer compileTime = new TokenBuffer();
+		TokenBuffer runTime = new TokenBuffer();
+		int pending = 0; // forward references reserved but not yet resolved
 		
 		/**
 		 * Add a token to the compiletime behavior of the Definition.
@@ -91,18 +218,96 @@ public class Dictionary implements IVocabulary {
 	 * @param name
 	 */
 	public Dictionary(String name) {
+		this(name,new Object());
+	}
+
+	/**
+	 * Create a dictionary with the given lineage. Used by fork.
+	 * 
+	 * @param name name of the dictionary
+	 * @param lineage the same for a dictionary and all of its forks
+	 */
+	private Dictionary(String name, Object lineage) {
 		this.name = name;
+		this.lineage = lineage;
 		does();
 	}
 
 	/**
-	 * Get a vocabulary from the list of known vocabularies given its name.
+	 * Get a vocabulary from the list of known vocabularies given its name. If it
+	 * isn't known and there is a vocabulary loader, the loader is asked for it.
 	 * 
 	 * @param name vocabulary name
 	 * @return vocabulary, or null if it doesn't exist
+	 * @throws HairballException if the vocabulary was found but failed to load
+	 */
+	public IVocabulary findVocabulary(String name) throws HairballException {
+		return findVocabulary(name, null);
+	}
+	
+	/**
+	 * Get a vocabulary just as findVocabulary does, for an engine. If the vocabulary has to
+	 * be loaded, the loader is given the engine's interpreter to load it with.
+	 * 
+	 * @param name vocabulary name
+	 * @param interpreter interpreter of the engine asking for it, or null
+	 * @return vocabulary, or null if it doesn't exist
+	 * @throws HairballException if the vocabulary was found but failed to load
+	 */
+	public IVocabulary findVocabulary(String name, Interpreter interpreter) throws HairballException {
+		IVocabulary vocabulary = vocabularyList.get(name);
+		if(vocabulary == null && vocabularyLoader != null && loading.add(name)) {
+			try {
+				load(name, interpreter);
+			} finally {
+				loading.remove(name);
+			}
+			vocabulary = vocabularyList.get(name);
+		}
+		return vocabulary;
+	}
+	
+	/**
+	 * Have the vocabulary loader load a vocabulary. Whatever the source does to the
+	 * search order, the current vocabulary or a definition in progress is undone
+	 * afterwards, only the vocabularies it creates are kept.
+	 * 
+	 * @param name vocabulary name
+	 * @param interpreter interpreter of the engine asking for it, or null
+	 * @throws HairballException if loading fails
+	 */
+	private void load(String name, Interpreter interpreter) throws HairballException {
+		List<IVocabulary> searchOrder = new ArrayList<>(vocabularies);
+		IVocabulary current = currentVocabulary;
+		EmptyDefinition inProgress = currentDefinition;
+		boolean wasDoer = doer;
+		currentDefinition = new EmptyDefinition();
+		try {
+			vocabularyLoader.load(name, this, interpreter);
+		} finally {
+			resetSearchOrder(searchOrder);
+			currentVocabulary = current;
+			currentDefinition = inProgress;
+			if(wasDoer) doer(); else does();
+		}
+	}
+	
+	/**
+	 * Set a loader for vocabularies which aren't known yet.
+	 * 
+	 * @param vocabularyLoader the loader, or null
+	 */
+	public void setVocabularyLoader(IVocabularyLoader vocabularyLoader) {
+		this.vocabularyLoader = vocabularyLoader;
+	}
+	
+	/**
+	 * Get the vocabulary loader.
+	 * 
+	 * @return the loader, or null if there isn't one
 	 */
-	public IVocabulary findVocabulary(String name) {
-		return vocabularyList.get(name);
+	public IVocabularyLoader getVocabularyLoader() {
+		return vocabularyLoader;
 	}
 	
 	/**
@@ -137,18 +342,14 @@ public class Dictionary implements IVocabulary {
 	public Definition getCurrentDefinition() {
 		Token rtToken = null;
 		if(currentDefinition.runTime.size() > 1) {
-			List<Token> rtList = new ArrayList<>();
-			rtList.addAll(currentDefinition.runTime);
-			rtToken = new InterpreterToken(currentDefinition.name.getValue(),rtList);
+			rtToken = new InterpreterToken(currentDefinition.name.getValue(),currentDefinition.runTime.toList());
 		} else if(currentDefinition.runTime.size() == 1) {
 			rtToken = currentDefinition.runTime.get(0);
 		}
 		
 		Token ctToken = null;
 		if(currentDefinition.compileTime.size() > 1) {
-			List<Token> ctList = new ArrayList<>();
-			ctList.addAll(currentDefinition.compileTime);
-			ctToken = new InterpreterToken(currentDefinition.name.getValue()+"_CT",ctList);
+			ctToken = new InterpreterToken(currentDefinition.name.getValue()+"_CT",currentDefinition.compileTime.toList());
 		} else if(currentDefinition.compileTime.size() == 1) {
 			ctToken = currentDefinition.compileTime.get(0);
 		}
@@ -259,7 +460,8 @@ public class Dictionary implements IVocabulary {
 	 */
 	public void add(IVocabulary vocabulary) {
 		addToVocabularyList(vocabulary); // make sure it is known to us
-		vocabularies.add(0,vocabulary); // .push(vocabulary);
+		vocabularies.add(vocabulary);
+		activated(vocabulary);
 		if(currentVocabulary == null) makeCurrent(vocabulary);
 	}
 	
@@ -281,6 +483,7 @@ public class Dictionary implements IVocabulary {
 	/**
 	 * Get the offset where the next token will be added to the current definition.
 	 * This will always return the value for the runtime behavior of the definition.
+	 * This and putToken take constant time, however long the definition is.
 	 * 
 	 * @return current offset.
 	 */
@@ -303,7 +506,9 @@ public class Dictionary implements IVocabulary {
 	 * 
 	 */
 	public IVocabulary remove() {
-		return vocabularies.remove(0); // .pop();
+		IVocabulary removed = vocabularies.remove(vocabularies.size() - 1);
+		deactivated(removed);
+		return removed;
 	}
 
 	/**
@@ -316,15 +521,380 @@ public class Dictionary implements IVocabulary {
 	public void remove(IVocabulary vocabulary) {
 		if(vocabularies.contains(vocabulary))
 			while(vocabularies.size() != 0) {
-				IVocabulary popped = vocabularies.remove(0); //  .pop();
+				IVocabulary popped = remove();
 				if(popped.equals(vocabulary)) return;
 			}
 	}
 	
+	/**
+	 * Mark the current state of the dictionary, IE its search order, current vocabulary,
+	 * known vocabularies and the definitions in all of them. Any definition which is
+	 * in progress is not part of the mark.
+	 * 
+	 * @return the mark, to be given to rollBack
+	 */
+	public Mark mark() {
+		return new Mark(this);
+	}
+	
+	/**
+	 * Roll the dictionary back to a mark. Definitions and vocabularies made since the
+	 * mark are forgotten, and once nothing else refers to them they can be garbage
+	 * collected. A mark can be rolled back to any number of times. Vocabularies which
+	 * are not Vocabulary instances have no definitions saved, so they aren't rolled back.
+	 * 
+	 * The mark can also have been made by the dictionary this one was forked from, or
+	 * any other fork of it. The vocabularies of this dictionary are rolled back, never
+	 * the ones of the dictionary which made the mark.
+	 * 
+	 * @param mark a mark made by this dictionary or one related to it by forking
+	 * @throws HairballException if the mark came from an unrelated dictionary
+	 */
+	public void rollBack(Mark mark) throws HairballException {
+		if(mark.lineage != lineage)
+			throw new HairballException("Can't roll "+name+" back to a mark made by another dictionary");
+		Map<Object,Vocabulary> own = new HashMap<>();
+		for(IVocabulary vocabulary : vocabularyList.values()) owned(vocabulary, own);
+		for(IVocabulary vocabulary : vocabularies) owned(vocabulary, own);
+		owned(currentVocabulary, own);
+		Map<Object,Vocabulary> restored = new HashMap<>();
+		Map<String,IVocabulary> known = new HashMap<>();
+		mark.known.forEach((vocabName,vocabulary) -> known.put(vocabName, restore(vocabulary, own, restored)));
+		List<IVocabulary> searchOrder = new ArrayList<>(mark.searchOrder.size());
+		for(IVocabulary vocabulary : mark.searchOrder) searchOrder.add(restore(vocabulary, own, restored));
+		vocabularyList = known;
+		currentVocabulary = restore(mark.current, own, restored);
+		resetSearchOrder(searchOrder);
+	}
+	
+	/**
+	 * Note a vocabulary of this dictionary under its lineage, so that a mark can find it.
+	 */
+	private static void owned(IVocabulary vocabulary, Map<Object,Vocabulary> own) {
+		if(vocabulary instanceof Vocabulary)
+			own.put(((Vocabulary) vocabulary).getLineage(), (Vocabulary) vocabulary);
+	}
+	
+	/**
+	 * Find this dictionary's own copy of a vocabulary saved in a mark and put its
+	 * definitions back the way the mark has them. If the dictionary has no copy any
+	 * more, a fork of the saved one takes its place.
+	 * 
+	 * @param saved the vocabulary as the mark has it
+	 * @param own this dictionary's vocabularies by lineage
+	 * @param restored vocabularies already restored, by lineage
+	 * @return the vocabulary to use
+	 */
+	private static IVocabulary restore(IVocabulary saved, Map<Object,Vocabulary> own, Map<Object,Vocabulary> restored) {
+		if(!(saved instanceof Vocabulary)) return saved;
+		Vocabulary savedVocabulary = (Vocabulary) saved;
+		Object vocabularyLineage = savedVocabulary.getLineage();
+		Vocabulary vocabulary = restored.get(vocabularyLineage);
+		if(vocabulary != null) return vocabulary;
+		vocabulary = own.get(vocabularyLineage);
+		if(vocabulary == null)
+			vocabulary = savedVocabulary.fork();
+		else
+			vocabulary.restore(savedVocabulary);
+		restored.put(vocabularyLineage, vocabulary);
+		return vocabulary;
+	}
+	
+	/**
+	 * Replace the search order, rebuilding the index from scratch.
+	 * 
+	 * @param searchOrder the new search order, oldest first
+	 */
+	private void resetSearchOrder(List<IVocabulary> searchOrder) {
+		changed();
+		for(IVocabulary vocabulary : vocabularies)
+			if(vocabulary instanceof Vocabulary) ((Vocabulary) vocabulary).removeListener(this);
+		vocabularies.clear();
+		index = new HashMap<>();
+		indexShared = false;
+		unindexed = 0;
+		fallback = null;
+		for(IVocabulary vocabulary : searchOrder) {
+			vocabularies.add(vocabulary);
+			activated(vocabulary);
+		}
+	}
+	
+	/**
+	 * Forget a word defined in the current vocabulary. If the definition was hiding
+	 * another one, that one can be found again.
+	 * 
+	 * @param word the word to forget
+	 * @return the definition forgotten, or null if the current vocabulary has no
+	 * definition of its own for the word
+	 */
+	public Definition forget(Word word) {
+		if(!(currentVocabulary instanceof Vocabulary)) return null;
+		changed();
+		return ((Vocabulary) currentVocabulary).remove(word);
+	}
+	
+	/**
+	 * Get all of the vocabularies known to this dictionary, whether they are active or not.
+	 * 
+	 * @return the vocabularies, which can't be modified
+	 */
+	public Collection<IVocabulary> getKnownVocabularies() {
+		return Collections.unmodifiableCollection(vocabularyList.values());
+	}
+	
+	/**
+	 * Bring the index up to date after a vocabulary has been pushed onto the
+	 * search order. Everything it defines now shadows what was there before.
+	 * 
+	 * @param vocabulary the new vocabulary
+	 */
+	private void activated(IVocabulary vocabulary) {
+		if(vocabulary instanceof Vocabulary) {
+			Vocabulary indexable = (Vocabulary) vocabulary;
+			indexable.addListener(this);
+			Collection<Definition> definitions = indexable.getDefinitions();
+			if(vocabularies.size() == 1 && indexable.getBase() != null) {
+				fallback = indexable.getBase();
+				definitions = indexable.getOwnDefinitions();
+			}
+			Map<Word,Definition> writable = writableIndex();
+			for(Definition def : definitions)
+				writable.put(def.getName(), def);
+		} else {
+			unindexed++;
+			changed();
+		}
+	}
+	
+	/**
+	 * Bring the index up to date after a vocabulary has been popped from the
+	 * search order. Each word it defines is looked up again in what remains.
+	 * 
+	 * @param vocabulary the vocabulary which was removed
+	 */
+	private void deactivated(IVocabulary vocabulary) {
+		if(vocabulary instanceof Vocabulary) {
+			Vocabulary indexable = (Vocabulary) vocabulary;
+			if(!isActive(indexable)) indexable.removeListener(this);
+			Map<Word,Definition> writable = writableIndex();
+			for(Definition def : indexable.getDefinitions()) {
+				Definition found = searchIndexable(def.getName());
+				if(found == null)
+					writable.remove(def.getName());
+				else
+					writable.put(def.getName(), found);
+			}
+		} else {
+			unindexed--;
+			changed();
+		}
+		if(vocabularies.isEmpty()) fallback = null;
+	}
+	
+	/**
+	 * Keep the index up to date when a definition is added to an active vocabulary.
+	 * The definition is only indexed if no newer vocabulary shadows it.
+	 */
 	@Override
-	public Definition lookUp(Word word) {
+	public void definitionAdded(IVocabulary vocabulary, Definition definition) {
+		Word word = definition.getName();
+		for(int i = vocabularies.size() - 1; i >= 0; i--) {
+			IVocabulary active = vocabularies.get(i);
+			if(active == vocabulary) {
+				writableIndex().put(word, definition);
+				return;
+			}
+			if(active instanceof Vocabulary && active.lookUp(word) != null) return; // shadowed
+		}
+	}
+	
+	/**
+	 * Keep the index up to date when a definition is removed from an active vocabulary.
+	 * If the index held that definition, the word is looked up again.
+	 */
+	@Override
+	public void definitionRemoved(IVocabulary vocabulary, Definition definition) {
+		Word word = definition.getName();
+		if(index.get(word) != definition) return;
+		Definition found = searchIndexable(word);
+		if(found == null)
+			writableIndex().remove(word);
+		else
+			writableIndex().put(word, found);
+	}
+	
+	/**
+	 * Test if a vocabulary is in the search order. This checks identity, unlike
+	 * contains.
+	 * 
+	 * @param vocabulary vocabulary to check for
+	 * @return true if it is active
+	 */
+	private boolean isActive(IVocabulary vocabulary) {
+		for(IVocabulary active : vocabularies)
+			if(active == vocabulary) return true;
+		return false;
+	}
+	
+	/**
+	 * Search the indexable vocabularies in order, the slow way.
+	 * 
+	 * @param word word to look up
+	 * @return the definition, or null
+	 */
+	private Definition searchIndexable(Word word) {
+		for(int i = vocabularies.size() - 1; i >= 0; i--) {
+			IVocabulary vocabulary = vocabularies.get(i);
+			if(vocabulary instanceof Vocabulary) {
+				Definition def = vocabulary.lookUp(word);
+				if(def != null) return def;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Get the index for changing, first taking a private copy of it if it is
+	 * shared with a fork.
+	 * 
+	 * @return the index
+	 */
+	private Map<Word,Definition> writableIndex() {
+		changed();
+		if(indexShared) {
+			index = new HashMap<>(index);
+			indexShared = false;
+		}
+		return index;
+	}
+	
+	/**
+	 * Fork this dictionary. The new dictionary knows the same vocabularies, in the
+	 * same search order, and has the same current vocabulary, but each of them is
+	 * a fork of the original so that new definitions added to one dictionary are not
+	 * seen by the other. Any definition which is in progress is not carried over.
+	 * 
+	 * @return the new dictionary
+	 */
+	@Override
+	public Dictionary fork() {
+		share();
+		Dictionary forked = new Dictionary(name,lineage);
+		Map<IVocabulary,IVocabulary> forks = new IdentityHashMap<>();
+		vocabularyList.forEach((vocabName,vocabulary) -> forked.vocabularyList.put(vocabName, forkOf(vocabulary,forks)));
 		for(IVocabulary vocabulary : vocabularies) {
-			Definition def = vocabulary.lookUp(word);
+			IVocabulary forkedVocabulary = forkOf(vocabulary,forks);
+			forked.vocabularies.add(forkedVocabulary);
+			if(forkedVocabulary instanceof Vocabulary)
+				((Vocabulary) forkedVocabulary).addListener(forked);
+			else
+				forked.unindexed++;
+		}
+		forked.index = index; // the forks hold the same definitions, so the index still holds
+		forked.indexShared = true;
+		forked.fallback = fallback;
+		forked.vocabularyLoader = vocabularyLoader;
+		forked.version = version;
+		forked.variables = variables == null ? new IdentityHashMap<>() : new IdentityHashMap<>(variables);
+		if(currentVocabulary != null) forked.currentVocabulary = forkOf(currentVocabulary,forks);
+		return forked;
+	}
+	
+	/**
+	 * Get the value of a variable as this dictionary sees it. A fork sees the value it
+	 * stored itself, if it has, and otherwise the one the variable holds.
+	 * 
+	 * @param variable the variable
+	 * @return its value
+	 */
+	public Object fetch(VariableToken variable) {
+		if(variables != null) {
+			Object data = variables.get(variable);
+			if(data != null || variables.containsKey(variable)) return data;
+		}
+		return variable.getData();
+	}
+	
+	/**
+	 * Store a value in a variable. A dictionary which isn't a fork stores it in the
+	 * variable itself. A fork shares its definitions, and so its variables, with the
+	 * dictionary it was forked from and with every other fork of it, so it keeps the
+	 * value to itself instead. Nothing a fork stores is seen by any other dictionary,
+	 * apart from forks made of it afterwards.
+	 * 
+	 * @param variable the variable
+	 * @param data the new value
+	 */
+	public void store(VariableToken variable, Object data) {
+		if(variables == null)
+			variable.setData(data);
+		else
+			variables.put(variable, data);
+	}
+	
+	/**
+	 * Get ready to be forked. Forking has to note that the index and definitions are
+	 * shared, so that whichever side changes first takes a copy. This does that up
+	 * front, after which forking only reads this dictionary, so any number of threads
+	 * can fork it at once as long as nothing changes it in the meantime. Call it once
+	 * a prototype has been set up and before handing it to worker threads.
+	 */
+	public void share() {
+		if(!indexShared) indexShared = true;
+		for(IVocabulary vocabulary : vocabularyList.values())
+			if(vocabulary instanceof Vocabulary) ((Vocabulary) vocabulary).share();
+		for(IVocabulary vocabulary : vocabularies)
+			if(vocabulary instanceof Vocabulary) ((Vocabulary) vocabulary).share();
+		if(currentVocabulary instanceof Vocabulary) ((Vocabulary) currentVocabulary).share();
+	}
+	
+	/**
+	 * Fork a vocabulary, or return the fork already made of it, so that a vocabulary
+	 * which appears in several places is only forked once.
+	 * 
+	 * @param vocabulary the vocabulary to fork
+	 * @param forks forks already made
+	 * @return the fork
+	 */
+	private static IVocabulary forkOf(IVocabulary vocabulary, Map<IVocabulary,IVocabulary> forks) {
+		IVocabulary forked = forks.get(vocabulary);
+		if(forked == null) {
+			forked = vocabulary.fork();
+			forks.put(vocabulary, forked);
+		}
+		return forked;
+	}
+	
+	/**
+	 * Get the version of this dictionary. Two dictionaries with the same version
+	 * look up every word to the same definition.
+	 * 
+	 * @return the version
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Give this dictionary a new version, after something changed which could alter lookups.
+	 */
+	private void changed() {
+		version = nextVersion();
+	}
+	
+	private static synchronized long nextVersion() {
+		return ++lastVersion;
+	}
+	
+	@Override
+	public Definition lookUp(Word word) {
+		if(unindexed == 0) {
+			Definition def = index.get(word);
+			return def == null && fallback != null ? fallback.lookUp(word) : def;
+		}
+		for(int i = vocabularies.size() - 1; i >= 0; i--) {
+			Definition def = vocabularies.get(i).lookUp(word);
 			if(def != null) return def;
 		}
 		return null;
@@ -332,6 +902,7 @@ public class Dictionary implements IVocabulary {
 
 	@Override
 	public void add(Definition def) {
+		changed();
 		currentVocabulary.add(def);
 	}
 
@@ -346,6 +917,45 @@ public class Dictionary implements IVocabulary {
 		currentDefinition.runTime.set(pc, token);
 	}
 
+	/**
+	 * Reserve a slot at the end of the runtime of the current definition for a
+	 * forward reference, IE a branch target which isn't known yet. Any number
+	 * of references can be pending at once. Until it is resolved the slot holds
+	 * a literal zero.
+	 * 
+	 * @return the offset of the reserved slot, to be given to resolve
+	 */
+	public int reserve() {
+		int reference = here();
+		currentDefinition.runTime.add(UNRESOLVED);
+		currentDefinition.pending++;
+		return reference;
+	}
+
+	/**
+	 * Fill in a slot which was reserved for a forward reference.
+	 * 
+	 * @param token the token to put in the slot
+	 * @param reference the offset returned by reserve
+	 * @throws IllegalArgumentException if the slot isn't a pending reference
+	 */
+	public void resolve(Token token, int reference) {
+		if(currentDefinition.runTime.get(reference) != UNRESOLVED)
+			throw new IllegalArgumentException("offset "+reference+" is not an unresolved reference");
+		currentDefinition.runTime.set(reference, token);
+		currentDefinition.pending--;
+	}
+
+	/**
+	 * Get the number of forward references in the current definition which have
+	 * been reserved but not resolved.
+	 * 
+	 * @return number of pending references
+	 */
+	public int getPendingReferences() {
+		return currentDefinition.pending;
+	}
+
 	@Override
 	public String toString() {
 		return "Dictionary [name=" + name + "]";
@@ -386,12 +996,49 @@ public class Dictionary implements IVocabulary {
 	 */
 	public String getActiveVocabularies() {
 		StringBuffer sb = new StringBuffer("Vocabulary Stack:\n");
-		this.vocabularies.forEach(vocabulary -> sb.append(vocabulary.toString()+"\n"));
+		for(int i = vocabularies.size() - 1; i >= 0; i--)
+			sb.append(vocabularies.get(i).toString()+"\n");
 		sb.append("Current Vocabulary:\n");
 		sb.append(this.currentVocabulary.toString());
 		sb.append("\n");
 		return sb.toString();
 	}
+
+	/**
+	 * Report on every vocabulary known to the dictionary, giving the number of
+	 * definitions it holds and roughly how many bytes they retain. Frozen built
+	 * in words are shared with other engines, so they are reported separately.
+	 * 
+	 * @return the report
+	 */
+	public String getStatistics() {
+		StringBuffer sb = new StringBuffer("Dictionary Statistics:\n");
+		Footprint footprint = new Footprint();
+		Map<FrozenVocabulary,Boolean> bases = new IdentityHashMap<>();
+		long totalDefinitions = 0;
+		long totalBytes = 0;
+		for(IVocabulary vocabulary : vocabularyList.values()) {
+			if(!(vocabulary instanceof Vocabulary)) {
+				sb.append(vocabulary.getName()+": not measured\n");
+				continue;
+			}
+			Vocabulary measured = (Vocabulary) vocabulary;
+			long bytes = 0;
+			for(Definition def : measured.getOwnDefinitions()) bytes += footprint.of(def);
+			int count = measured.getOwnDefinitions().size();
+			totalDefinitions += count;
+			totalBytes += bytes;
+			sb.append(measured.getName()+": "+count+" definitions, about "+bytes+" bytes\n");
+			if(measured.getBase() != null) bases.put(measured.getBase(), Boolean.TRUE);
+		}
+		sb.append("Total: "+totalDefinitions+" definitions, about "+totalBytes+" bytes\n");
+		for(FrozenVocabulary base : bases.keySet()) {
+			long bytes = 0;
+			for(Definition def : base.getDefinitions()) bytes += footprint.of(def);
+			sb.append(base.getName()+" (shared built in words): "+base.getDefinitions().size()+" definitions, about "+bytes+" bytes\n");
+		}
+		return sb.toString();
+	}
 	
 	
 }
@@ -0,0 +1,80 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Rough estimates of how much memory definitions hold on to. The sizes assume a
+ * 64 bit JVM with compressed pointers, and are only meant to show which vocabularies
+ * are big, not to be exact. Anything already counted by this instance is not counted
+ * again, so tokens shared between definitions are only charged once.
+ * 
+ * @author tharter
+ *
+ */
+class Footprint {
+	private static final int HEADER = 16;
+	private static final int REF = 4;
+	
+	private final Map<Object,Boolean> seen = new IdentityHashMap<>();
+
+	/**
+	 * Estimate the bytes held by a definition and everything it refers to.
+	 * 
+	 * @param definition the definition
+	 * @return approximate size in bytes
+	 */
+	long of(Definition definition) {
+		if(!firstTime(definition)) return 0;
+		return HEADER + 3 * REF + of(definition.getName()) + of(definition.getCompileTime()) + of(definition.getRunTime());
+	}
+	
+	private long of(Word word) {
+		if(!firstTime(word)) return 0;
+		return HEADER + REF + of(word.getValue());
+	}
+	
+	private long of(Token token) {
+		if(!firstTime(token)) return 0;
+		if(token instanceof InterpreterToken) {
+			InterpreterToken itoken = (InterpreterToken) token;
+			long size = HEADER + 4 * REF + of(itoken.getName()) + HEADER + 2 * REF + HEADER + REF * itoken.size();
+			for(Token child : itoken.getTokens()) size += of(child);
+			return size;
+		}
+		if(token instanceof LiteralToken) {
+			Object data = ((LiteralToken) token).getData();
+			return HEADER + 2 * REF + of(token.getName()) + (data instanceof String ? of((String) data) : data == null || !firstTime(data) ? 0 : HEADER);
+		}
+		if(token instanceof NativeToken)
+			return HEADER + 2 * REF + of(token.getName()) + HEADER; // the lambda
+		return HEADER;
+	}
+	
+	private long of(String value) {
+		if(value == null || !firstTime(value)) return 0;
+		return HEADER + 2 * REF + HEADER + value.length();
+	}
+	
+	private boolean firstTime(Object object) {
+		if(object == null || seen.containsKey(object)) return false;
+		seen.put(object, Boolean.TRUE);
+		return true;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A vocabulary which can never change. It is meant for the built in words, which
+ * are the same for every engine, so one instance can be shared by all of them as the
+ * base of each engine's own Vocabulary.
+ * 
+ * The definitions are kept in a perfect hash table, that is a table where no two
+ * words land in the same slot, so a lookup is one hash, one array access and one
+ * comparison. The table is found when the vocabulary is created by trying seeds for
+ * the hash until one works, growing the table if need be.
+ * 
+ * @author tharter
+ *
+ */
+public class FrozenVocabulary implements IVocabulary {
+	private static final int SEEDS_PER_SIZE = 64;
+
+	private final String name;
+	private final List<Definition> definitions;
+	private final Definition[] table;
+	private final int mask;
+	private final int seed;
+
+	/**
+	 * Create a frozen vocabulary holding the given definitions. If a word is defined
+	 * more than once, the last definition wins, as it would in a Vocabulary.
+	 * 
+	 * @param name vocabulary name
+	 * @param definitions the definitions
+	 */
+	public FrozenVocabulary(String name, Collection<Definition> definitions) {
+		this.name = name;
+		Map<Word,Definition> unique = new LinkedHashMap<>();
+		for(Definition def : definitions) unique.put(def.getName(), def);
+		this.definitions = Collections.unmodifiableList(new ArrayList<>(unique.values()));
+		
+		int size = 2;
+		while(size < this.definitions.size() * 2) size <<= 1;
+		Definition[] candidate = null;
+		int candidateSeed = 0;
+		while(candidate == null) {
+			for(int trySeed = 0; trySeed < SEEDS_PER_SIZE && candidate == null; trySeed++) {
+				candidate = fill(this.definitions, size, trySeed);
+				candidateSeed = trySeed;
+			}
+			if(candidate == null) size <<= 1;
+		}
+		this.table = candidate;
+		this.mask = size - 1;
+		this.seed = candidateSeed;
+	}
+	
+	/**
+	 * Try to build a table of the given size using the given seed.
+	 * 
+	 * @return the table, or null if two words collide
+	 */
+	private static Definition[] fill(List<Definition> definitions, int size, int seed) {
+		Definition[] table = new Definition[size];
+		for(Definition def : definitions) {
+			int slot = slot(def.getName().hashCode(), seed, size - 1);
+			if(table[slot] != null) return null;
+			table[slot] = def;
+		}
+		return table;
+	}
+	
+	/**
+	 * Hash a word's hash code into a slot. This sticks to shifts and exclusive ors,
+	 * which behave the same when transpiled to Javascript.
+	 */
+	private static int slot(int hash, int seed, int mask) {
+		int h = hash ^ seed;
+		h ^= (h >>> 15) ^ (h << 7);
+		h ^= h >>> 11;
+		return h & mask;
+	}
+
+	@Override
+	public Definition lookUp(Word word) {
+		Definition def = table[slot(word.hashCode(), seed, mask)];
+		return def != null && def.getName().equals(word) ? def : null;
+	}
+
+	/**
+	 * A frozen vocabulary can't be changed, add to a Vocabulary built on top of it instead.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void add(Definition newDefinition) {
+		throw new UnsupportedOperationException("Vocabulary "+name+" is frozen");
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Since it can't change, a frozen vocabulary is its own fork.
+	 */
+	@Override
+	public FrozenVocabulary fork() {
+		return this;
+	}
+	
+	/**
+	 * Get all of the definitions in the vocabulary.
+	 * 
+	 * @return the definitions, which can't be modified
+	 */
+	public List<Definition> getDefinitions() {
+		return definitions;
+	}
+
+	@Override
+	public String toString() {
+		return "FrozenVocabulary [name=" + name + "]";
+	}
+}
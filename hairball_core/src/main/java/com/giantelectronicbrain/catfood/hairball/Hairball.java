@@ -17,6 +17,7 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.Stack;
 
 import com.giantelectronicbrain.catfood.IPlatform;
@@ -31,9 +32,8 @@ import com.giantelectronicbrain.catfood.IPlatform;
  *
  */
 public class Hairball {
-	public static IPlatform PLATFORM;
-	public static String VERSION;
-	private final Dictionary rootDictionary = new Dictionary("root");
+	private final IPlatform platform;
+	private final Dictionary rootDictionary;
 	private final Parser parser;
 	private final Interpreter interpreter;
 
@@ -42,24 +42,61 @@ public class Hairball {
 		setIO(input, output);
 	}
 
+	/**
+	 * Create a Hairball on the given platform. Nothing here is shared with other
+	 * instances, so any number of them can run at once on different threads.
+	 * 
+	 * @param platform the platform this instance logs to and gets its version from
+	 */
 	public Hairball(IPlatform platform) {
-		this.PLATFORM = platform;
-		this.VERSION = platform.getVersion();
+		this(platform, new Dictionary("root"));
 		IVocabulary hbVocab = HairballVocabulary.create();
 		rootDictionary.add(hbVocab);
+	}
+	
+	/**
+	 * Create a Hairball which uses the given dictionary. Used by fork.
+	 * 
+	 * @param platform the platform to use
+	 * @param dictionary the dictionary to use
+	 */
+	private Hairball(IPlatform platform, Dictionary dictionary) {
+		this.platform = platform;
+		rootDictionary = dictionary;
 		interpreter = new Interpreter();
 		parser = new Parser();
 	}
 	
+	/**
+	 * Fork this Hairball. The new instance starts with a copy of everything defined
+	 * in this one, but has its own stacks and no input or output, so setIO must be
+	 * called before it is executed. Definitions made in the fork are not seen here.
+	 * 
+	 * @return the new Hairball
+	 */
+	public Hairball fork() {
+		Hairball forked = new Hairball(platform, rootDictionary.fork());
+		forked.interpreter.setTokenCompiler(interpreter.getTokenCompiler());
+		return forked;
+	}
+	
+	/**
+	 * Get ready to be forked from several threads at once. After this, fork only
+	 * reads this instance, until something new is defined in it.
+	 */
+	public void share() {
+		rootDictionary.share();
+	}
+	
 	public void setIO(IWordStream wordStream,Output output) {
-		ParserContext pcontext = new ParserContext(wordStream,rootDictionary,interpreter,output,parser);
+		ParserContext pcontext = new ParserContext(wordStream,rootDictionary,interpreter,output,parser,platform);
 		interpreter.setParserContext(pcontext);
 		parser.setParserContext(pcontext);
 	}
 	
 	public void setInput(IWordStream moreWordStream) {
 		Output output = this.parser.getContext().getOutput();
-		ParserContext pcontext = new ParserContext(moreWordStream,rootDictionary,interpreter,output,parser);
+		ParserContext pcontext = new ParserContext(moreWordStream,rootDictionary,interpreter,output,parser,platform);
 		interpreter.setParserContext(pcontext);
 		parser.setParserContext(pcontext);
 	}
@@ -78,6 +115,34 @@ public class Hairball {
 		return parser.parse();
 	}
 
+	/**
+	 * Run the engine just as execute does, recording what the input does so that
+	 * it can be replayed.
+	 * 
+	 * @return the recording
+	 * @throws IOException
+	 * @throws HairballException
+	 */
+	public Recording record() throws IOException, HairballException {
+		parser.interpret();
+		return parser.record();
+	}
+	
+	/**
+	 * Replay a recording made by this engine, or by the one it was forked from,
+	 * sending the output to the given Output.
+	 * 
+	 * @param recording the recording
+	 * @param output where the output goes
+	 * @param bindings values for the variables the recording uses, keyed by name
+	 * @return the context the recording was replayed in
+	 * @throws IOException
+	 * @throws HairballException
+	 */
+	public ParserContext replay(Recording recording, Output output, Map<String,Object> bindings) throws IOException, HairballException {
+		return parser.replay(recording, output, bindings);
+	}
+
 	/**
 	 * Get the whole parameter stack. This is mainly useful for testing.
 	 */
@@ -99,6 +164,15 @@ public class Hairball {
 		return interpreter.currentContext();
 	}
 
+	/**
+	 * Get the platform this instance runs on.
+	 * 
+	 * @return the platform
+	 */
+	public IPlatform getPlatform() {
+		return platform;
+	}
+
 	/**
 	 * Return the parser for this Hairball instance.
 	 * 
@@ -30,6 +30,7 @@ import java.util.UUID;
 
 import com.giantelectronicbrain.catfood.hairball.tokens.Compile;
 import com.giantelectronicbrain.catfood.hairball.tokens.Drop;
+import com.giantelectronicbrain.catfood.hairball.tokens.Marker;
 import com.giantelectronicbrain.catfood.hairball.tokens.Quote;
 
 /**
@@ -43,24 +44,62 @@ import com.giantelectronicbrain.catfood.hairball.tokens.Quote;
 public class HairballVocabulary {
 	
 	/**
-	 * Static factory to create the one and only needed instance of this class.
-	 * This is how HairballVocabulary should always be created, there is no need
-	 * for more than one.
+	 * Static factory to create a HAIRBALL vocabulary for an engine. The built in
+	 * words are shared by every engine, so this is cheap, and anything defined in
+	 * the vocabulary later belongs to that engine alone, as do the words made by
+	 * addEngineWords.
 	 * 
 	 * @return
 	 */
 	public static IVocabulary create() {
-		IVocabulary hbVocab = new Vocabulary("HAIRBALL");
-		for(Definition def : defList) {
-			hbVocab.add(def);
-		}
-		return hbVocab;
+		Vocabulary vocabulary = new Vocabulary("HAIRBALL",builtins);
+		addEngineWords(vocabulary);
+		return vocabulary;
+	}
+	
+	/**
+	 * Add the built in words which hold state, such as the /'DATEFORMAT variable, to
+	 * a vocabulary made for one engine. They can't be frozen with the rest, since the
+	 * frozen words are shared by every engine in the process. Forks of the engine
+	 * start out with the engine's date format, and like any other variable, a format
+	 * a fork stores is seen by that fork alone.
+	 * 
+	 * @param vocabulary the engine's HAIRBALL vocabulary
+	 */
+	public static void addEngineWords(Vocabulary vocabulary) {
+		Token tickDateFormat = new VariableToken("tickDateFormat",DateTimeFormatter.ISO_DATE_TIME);
+		Token makeNow = InterpreterToken.makeToken("makeNow",nowToken,tickDateFormat,fetchToken,formatTimeToken);
+		Token dotNow = InterpreterToken.makeToken("dotNow", makeNow,emitToken);
+		/**
+		 * Output a date time representing now. This will be formatted according to the
+		 * DateTimeFormatter stored in the variable 'DateFormat
+		 */
+		vocabulary.add(new Definition(new Word("/.NOW"),Compile.INSTANCE,dotNow));
+		vocabulary.add(new Definition(new Word("/'DATEFORMAT"),Compile.INSTANCE,tickDateFormat));
+	}
+	
+	/**
+	 * Get the built in words, frozen so they can be shared. Vocabularies which
+	 * extend HAIRBALL can build their own frozen vocabularies from these.
+	 * 
+	 * @return the frozen built in words
+	 */
+	public static FrozenVocabulary getBuiltins() {
+		return builtins;
 	}
 	
 	/**
 	 * The actual definitions which will be placed within the vocabulary.
 	 */
 	private static final List<Definition> defList = new ArrayList<>();
+	private static final FrozenVocabulary builtins;
+	/**
+	 * Built in tokens which addEngineWords builds on.
+	 */
+	private static final Token nowToken;
+	private static final Token fetchToken;
+	private static final Token formatTimeToken;
+	private static final Token emitToken;
 	static {
 		Token compile = Compile.INSTANCE;
 
@@ -376,14 +415,14 @@ public class HairballVocabulary {
 		defList.add(new Definition(new Word("/VARIABLE"),compile,variableRT));
 		Token lfetchRT = new NativeToken("lfetchRT",(interpreter) -> {
 			LiteralToken vt = (LiteralToken) interpreter.pop();
-			interpreter.push(vt.getData());
+			interpreter.push(vt instanceof VariableToken ? ((VariableToken) vt).getData(interpreter) : vt.getData());
 			return true;
 		});
 		defList.add(new Definition(new Word("/V@"),compile,lfetchRT));
 		Token vstoreRT = new NativeToken("vstoreRT", (interpreter) -> {
 			VariableToken vt = (VariableToken) interpreter.pop();
 			Object data = interpreter.pop();
-			vt.setData(data);
+			vt.setData(interpreter, data);
 			return true;
 		});
 		defList.add(new Definition(new Word("/V!"),compile,vstoreRT));
@@ -531,6 +570,19 @@ public class HairballVocabulary {
 			});
 		defList.add(new Definition(new Word("/SPACE"),compile,spaceToken));
 		
+		/**
+		 * Flush the output, so that everything emitted so far is written out.
+		 */
+		Token flushToken = new NativeToken("flush",(interpreter) -> {
+				try {
+					interpreter.getParserContext().getOutput().flush();
+				} catch (IOException e) {
+					throw new HairballException("Failed to flush output",e);
+				}
+				return true;
+			});
+		defList.add(new Definition(new Word("/FLUSH"),compile,flushToken));
+		
 		/*
 		 * Source input from another file. This will construct a new parser 
 		 * context and a new parser, and then
@@ -580,18 +632,6 @@ public class HairballVocabulary {
 			return true;
 		});
 		defList.add(new Definition(new Word("/OUTPUT"),compile,setOutput));
-		/**
-		 * Create an output to a file. The file name is on the stack.
-		 */
-/*		Token createOutput = new NativeToken("createOutput",(interpreter) -> {
-			String currentBucket = interpreter.getParserContext().getWordStream().getCurrentLocation();
-			String fileName = (String) interpreter.pop();
-			String outFile = currentBucket + "/" + fileName;
-			FsOutput output = new FsOutput(fileName);
-			interpreter.push(output);
-			return true;
-		});
-		defList.add(new Definition(new Word("/OPEN"),compile,createOutput)); */
 		/**
 		 * Close an Output which is on the stack.
 		 */
@@ -620,12 +660,51 @@ public class HairballVocabulary {
 		});
 		defList.add(new Definition(new Word("/WRITE"),compile,writeOutput));
 		
+		/**
+		 * Reserve a named region at the current point of the output, which can be filled
+		 * in later with /TO-REGION". The first region word puts a RegionOutput in front of
+		 * the current output, and everything is written out when the output is closed.
+		 */
+		Token region = new NativeToken("region", (interpreter) -> {
+			String name = ((String) interpreter.pop()).trim();
+			try {
+				RegionOutput.of(interpreter.getParserContext()).reserve(name);
+			} catch (IOException e) {
+				throw new HairballException("Cannot reserve region "+name,e);
+			}
+			return true;
+		});
+		Token regionQuote = InterpreterToken.makeToken("regionQuote", quoteRT, region);
+		defList.add(new Definition(new Word("/REGION\""),compile,regionQuote));
+		/**
+		 * Send output into a named region until /END-REGION.
+		 */
+		Token toRegion = new NativeToken("toRegion", (interpreter) -> {
+			String name = ((String) interpreter.pop()).trim();
+			RegionOutput.of(interpreter.getParserContext()).enter(name);
+			return true;
+		});
+		Token toRegionQuote = InterpreterToken.makeToken("toRegionQuote", quoteRT, toRegion);
+		defList.add(new Definition(new Word("/TO-REGION\""),compile,toRegionQuote));
+		/**
+		 * Go back to sending output where it went before the last /TO-REGION".
+		 */
+		Token endRegion = new NativeToken("endRegion", (interpreter) -> {
+			try {
+				RegionOutput.of(interpreter.getParserContext()).leave();
+			} catch (IOException e) {
+				throw new HairballException("/END-REGION without /TO-REGION\"",e);
+			}
+			return true;
+		});
+		defList.add(new Definition(new Word("/END-REGION"),compile,endRegion));
+		
 		/**
 		 * Get a named vocabulary and put it on the top of the stack
 		 */
 		Token pushVocab = new NativeToken("pushVocab", (interpreter) -> {
 			Word vocabName = (Word) interpreter.pop();
-			IVocabulary vocabulary = interpreter.getParserContext().getDictionary().findVocabulary(vocabName.getValue());
+			IVocabulary vocabulary = interpreter.getParserContext().getDictionary().findVocabulary(vocabName.getValue(), interpreter);
 			interpreter.push(vocabulary);
 			return true;
 		});
@@ -684,6 +763,44 @@ public class HairballVocabulary {
 			return true;
 		});
 		defList.add(new Definition(new Word("/VOCABULARIES"),compile,fetchVocabs));
+		
+		/**
+		 * Given a word on TOS, define it as a marker. Executing the marker rolls the dictionary
+		 * back to the way it was before the marker was defined.
+		 */
+		Token makeMarker = new NativeToken("makeMarker", (interpreter) -> {
+			Word name = (Word) interpreter.pop();
+			Dictionary dictionary = interpreter.getParserContext().getDictionary();
+			Dictionary.Mark mark = dictionary.mark();
+			dictionary.add(new Definition(name,compile,new Marker(name.getValue(),mark)));
+			return true;
+		});
+		Token markerRT = InterpreterToken.makeToken("markerRT", word, makeMarker);
+		defList.add(new Definition(new Word("/MARKER"),compile,markerRT));
+		
+		/**
+		 * Given a word on TOS, forget it. If it is a marker, roll back to it, otherwise remove
+		 * it from the current vocabulary.
+		 */
+		Token forgetWord = new NativeToken("forgetWord", (interpreter) -> {
+			Word name = (Word) interpreter.pop();
+			Dictionary dictionary = interpreter.getParserContext().getDictionary();
+			Definition def = dictionary.lookUp(name);
+			if(def != null && def.getRunTime() instanceof Marker)
+				return def.getRunTime().execute(interpreter);
+			if(dictionary.forget(name) == null)
+				throw new HairballException("Cannot forget "+name.getValue()+", it is not defined in the current vocabulary");
+			return true;
+		});
+		Token forgetRT = InterpreterToken.makeToken("forgetRT", word, forgetWord);
+		defList.add(new Definition(new Word("/FORGET"),compile,forgetRT));
+		
+		Token dictStats = new NativeToken("dictStats", (interpreter) -> {
+			String value = interpreter.getParserContext().getDictionary().getStatistics();
+			interpreter.push(value);
+			return true;
+		});
+		defList.add(new Definition(new Word("/DICTSTATS"),compile,dictStats));
 
 		// Given a word on TOS, look it up in the Dictionary and put the definition on TOS
 		Token lookup = new NativeToken("lookup", (interpreter) -> {
@@ -721,14 +838,6 @@ public class HairballVocabulary {
 			interpreter.push(dtf);
 			return true;
 		});
-		Token tickDateFormat = new VariableToken("tickDateFormat",DateTimeFormatter.ISO_DATE_TIME);
-		Token makeNow = InterpreterToken.makeToken("makeNow",now,tickDateFormat,lfetchRT,formatTimeFromFormatter);
-		Token dotNow = InterpreterToken.makeToken("dotNow", makeNow,emit);
-		/**
-		 * Output a date time representing now. This will be formatted according to the
-		 * DateTimeFormatter stored in the variable 'DateFormat
-		 */
-		defList.add(new Definition(new Word("/.NOW"),compile,dotNow));
 		/**
 		 * Put the current date/time on the stack as a millisecond epoch time
 		 */
@@ -741,7 +850,6 @@ public class HairballVocabulary {
 		 * Make a DateTimeFormatter from a string.
 		 */
 		defList.add(new Definition(new Word("/MAKEFORMATTER"),compile,makeFormatter));
-		defList.add(new Definition(new Word("/'DATEFORMAT"),compile,tickDateFormat));
 		/**
 		 * Default handling of a single newline, don't emit anything
 		 */
@@ -750,7 +858,7 @@ public class HairballVocabulary {
 		defList.add(new Definition(new Word("/NEWLINE"),compile,newLine_RT));
 		
 		Token version = new NativeToken("version", (interpreter) -> {
-			interpreter.push(Hairball.VERSION);
+			interpreter.push(interpreter.getParserContext().getPlatform().getVersion());
 			return true;
 		});
 		defList.add(new Definition(new Word("/VERSION"),compile,version));
@@ -811,13 +919,12 @@ public class HairballVocabulary {
 			if(!flag) interpreter.setIp(branchTarget);
 			return true;
 		});
-		/* drops a dummy literal into the current definition, which will be replaced later
-		 * by the branch point when we execute THEN. Leave its offset on the stack.
+		/* reserves a forward reference in the current definition, which will be resolved
+		 * to the branch point when we execute THEN. Leave its offset on the stack.
 		 */
 		Token if_compileTime = new NativeToken("if_ct", (interpreter) ->{
 			Dictionary dictionary = interpreter.getParserContext().getDictionary();
-			int thenTarget = dictionary.here();
-			dictionary.addToken(new LiteralToken("dummy",0));
+			int thenTarget = dictionary.reserve();
 			interpreter.push(thenTarget);
 			swap.execute(interpreter);
 			compile.execute(interpreter);
@@ -830,7 +937,7 @@ public class HairballVocabulary {
 			var foo = interpreter.pop();
 			int thenTarget = (Integer) interpreter.pop();
 			int thenOffset = dictionary.here();
-			dictionary.putToken(new LiteralToken("thenOffset",thenOffset),thenTarget);
+			dictionary.resolve(new LiteralToken("thenOffset",thenOffset),thenTarget);
 			dictionary.addToken(noop);
 //			interpreter.push(foo);
 			return true;
@@ -856,6 +963,36 @@ public class HairballVocabulary {
 			return true;
 		});
 		defList.add(new Definition(new Word("/TRIM"),compile,trim));
+		
+		/*
+		 * Turn the word profiler on, creating one if the interpreter doesn't have it yet.
+		 */
+		Token profileOn = new NativeToken("profileOn", (interpreter) -> {
+			Profiler profiler = interpreter.getProfiler();
+			if(profiler == null) {
+				profiler = new Profiler();
+				interpreter.setProfiler(profiler);
+			}
+			profiler.setEnabled(true);
+			return true;
+		});
+		defList.add(new Definition(new Word("/PROFILE-ON"),compile,profileOn));
+		
+		/*
+		 * Stop recording in the word profiler. What has been gathered so far is kept.
+		 */
+		Token profileOff = new NativeToken("profileOff", (interpreter) -> {
+			Profiler profiler = interpreter.getProfiler();
+			if(profiler != null) profiler.setEnabled(false);
+			return true;
+		});
+		defList.add(new Definition(new Word("/PROFILE-OFF"),compile,profileOff));
+		
+		builtins = new FrozenVocabulary("HAIRBALL",defList);
+		nowToken = now;
+		fetchToken = lfetchRT;
+		formatTimeToken = formatTimeFromFormatter;
+		emitToken = emit;
 	}
 	
 	
@@ -0,0 +1,44 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+/**
+ * A token compiler turns the body of an InterpreterToken into some more efficient
+ * executable form. Compilers are optional, the inner interpreter will simply run
+ * the token list of an InterpreterToken if no compiler is set, and the core never
+ * supplies one, since the interesting techniques don't transpile.
+ * 
+ * A compiled token must behave exactly like the InterpreterToken it was made from,
+ * including its handling of the instruction pointer and the continue flag of its
+ * context.
+ * 
+ * Engines hand their compiler on to their forks, which run on other threads, so
+ * a compiler has to be safe to use from many threads at once.
+ * 
+ * @author tharter
+ *
+ */
+public interface ITokenCompiler {
+	/**
+	 * Compile an interpreter token. If the token can't be compiled then return null
+	 * and it will be interpreted as usual.
+	 * 
+	 * @param token the token to compile
+	 * @return an equivalent token, or null
+	 */
+	public abstract Token compile(InterpreterToken token);
+}
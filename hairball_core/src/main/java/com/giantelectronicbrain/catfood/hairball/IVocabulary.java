@@ -46,4 +46,12 @@ public interface IVocabulary {
 	 * @return vocabulary name
 	 */
 	public abstract String getName();
+
+	/**
+	 * Create a copy of this vocabulary which can be changed independently
+	 * of the original.
+	 * 
+	 * @return the copy
+	 */
+	public abstract IVocabulary fork();
 }
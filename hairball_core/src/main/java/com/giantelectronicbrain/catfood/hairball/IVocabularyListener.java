@@ -0,0 +1,42 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+/**
+ * Something which wants to know when definitions are added to or removed from a Vocabulary. The
+ * Dictionary uses this to keep its search index up to date.
+ * 
+ * @author tharter
+ *
+ */
+public interface IVocabularyListener {
+	/**
+	 * Called after a definition has been added to a vocabulary.
+	 * 
+	 * @param vocabulary the vocabulary which changed
+	 * @param definition the definition which was added
+	 */
+	public abstract void definitionAdded(IVocabulary vocabulary, Definition definition);
+
+	/**
+	 * Called after a definition has been removed from a vocabulary.
+	 * 
+	 * @param vocabulary the vocabulary which changed
+	 * @param definition the definition which was removed
+	 */
+	public abstract void definitionRemoved(IVocabulary vocabulary, Definition definition);
+}
@@ -0,0 +1,54 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+/**
+ * Loads vocabularies on demand. When a Dictionary is asked for a vocabulary it
+ * doesn't know, it gives its loader a chance to find the vocabulary's source
+ * and parse it, so vocabularies only cost something when they are used.
+ * 
+ * @author tharter
+ *
+ */
+public interface IVocabularyLoader {
+	/**
+	 * Load the named vocabulary into the given dictionary, normally by parsing a
+	 * file which defines it. The dictionary takes care of undoing any changes the
+	 * source makes to the search order or the current vocabulary. 
+	 * 
+	 * @param name name of the vocabulary
+	 * @param dictionary dictionary to load it into
+	 * @return true if a source for the vocabulary was found and loaded
+	 * @throws HairballException if the source was found but couldn't be loaded
+	 */
+	public abstract boolean load(String name, Dictionary dictionary) throws HairballException;
+	
+	/**
+	 * Load the named vocabulary into the given dictionary for an engine, so that a loader
+	 * which parses the source can do it with the engine's own interpreter, and so with its
+	 * compiler, token limit and platform. By default the engine is ignored.
+	 * 
+	 * @param name name of the vocabulary
+	 * @param dictionary dictionary to load it into
+	 * @param interpreter interpreter of the engine which asked for it, or null
+	 * @return true if a source for the vocabulary was found and loaded
+	 * @throws HairballException if the source was found but couldn't be loaded
+	 */
+	public default boolean load(String name, Dictionary dictionary, Interpreter interpreter) throws HairballException {
+		return load(name, dictionary);
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+/**
+ * Something which wants control back from an Interpreter every so often. Once a
+ * handler is set on an interpreter along with a slice size, the interpreter will
+ * call yieldSlice each time it has executed that many more tokens. This is a yield
+ * point, a scheduler can use it to let other interpreters run for a while, and
+ * a handler can abort the run entirely by throwing an exception.
+ * 
+ * @author tharter
+ *
+ */
+public interface IYieldHandler {
+	/**
+	 * Called by the interpreter at the end of every slice of tokens. The interpreter
+	 * carries on where it left off when this returns.
+	 * 
+	 * @param interpreter the interpreter which is yielding
+	 * @throws HairballException to stop the interpreter
+	 */
+	public abstract void yieldSlice(Interpreter interpreter) throws HairballException;
+}
@@ -16,6 +16,8 @@
 */
 package com.giantelectronicbrain.catfood.hairball;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Stack;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,16 +48,31 @@ import java.util.logging.Logger;
  * calls to lower level tokens, which eventually execute java lambdas to do actual
  * work. 
  * 
+ * Every token executed is counted. An interpreter can be given a hard limit on the
+ * number of tokens it will execute, after which it throws a HairballException, which
+ * is how runaway words get stopped. It can also be given a slice size and an IYieldHandler,
+ * which is called after each slice so that a scheduler can share threads fairly between
+ * many interpreters.
+ * 
  * @author tharter
  *
  */
 public class Interpreter {
-	private static Logger log;
+	private Logger log = DefaultPlatform.INSTANCE.getLogger(Interpreter.class.getName());
 
 	private final Stack<Object> parameterStack;
 	private final Stack<Object> returnStack;
 	private Context currentContext;
 	private ParserContext parserContext;
+	private ITokenCompiler tokenCompiler = null;
+	private long tokensExecuted = 0;
+	private long tokenLimit = 0;
+	private int sliceSize = 0;
+	private long nextSlice = Long.MAX_VALUE;
+	private long nextCheck = Long.MAX_VALUE;
+	private IYieldHandler yieldHandler = null;
+	private Profiler profiler = null;
+	private final Map<Class<?>,Object> extensions = new HashMap<>();
 
 	/**
 	 * Create a new hairball interpreter. Initially there will be
@@ -63,19 +80,156 @@ public class Interpreter {
 	 * hairball program.
 	 */
 	public Interpreter() {
-		log = Hairball.PLATFORM.getLogger(Interpreter.class.getName());
 		this.parameterStack = new Stack<>();
 		this.returnStack = new Stack<>();
 	}
 	
 	/**
 	 * Set a parser context. Strictly speaking you can run code without this, but
-	 * a lot of words will want it!
+	 * a lot of words will want it! Logging goes to the context's platform from
+	 * here on.
 	 * 
 	 * @param parserContext
 	 */
 	public void setParserContext(ParserContext parserContext) {
 		this.parserContext = parserContext;
+		if(parserContext != null) log = parserContext.getPlatform().getLogger(Interpreter.class.getName());
+	}
+	
+	/**
+	 * Set a token compiler. InterpreterTokens run by this interpreter will execute
+	 * their compiled form when the compiler can produce one. Set it to null to
+	 * go back to plain interpretation.
+	 * 
+	 * @param tokenCompiler the compiler, or null
+	 */
+	public void setTokenCompiler(ITokenCompiler tokenCompiler) {
+		this.tokenCompiler = tokenCompiler;
+	}
+	
+	/**
+	 * Get the token compiler, if any.
+	 * 
+	 * @return the token compiler, or null if tokens are only interpreted
+	 */
+	public ITokenCompiler getTokenCompiler() {
+		return this.tokenCompiler;
+	}
+	
+	/**
+	 * Set a profiler, which will time the tokens this interpreter executes. Token
+	 * compilers are ignored while there is a profiler.
+	 * 
+	 * @param profiler the profiler, or null to stop profiling
+	 */
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	/**
+	 * Get the profiler, if any.
+	 * 
+	 * @return the profiler, or null
+	 */
+	public Profiler getProfiler() {
+		return this.profiler;
+	}
+	
+	/**
+	 * Attach an object which words outside of the core keep for each engine, such as
+	 * the files an engine has included. There is one of each type.
+	 * 
+	 * @param type the type it is attached as
+	 * @param extension the object, or null to remove it
+	 */
+	public <T> void setExtension(Class<T> type, T extension) {
+		if(extension == null)
+			extensions.remove(type);
+		else
+			extensions.put(type, extension);
+	}
+	
+	/**
+	 * Get an object attached with setExtension.
+	 * 
+	 * @param type the type it was attached as
+	 * @return the object, or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getExtension(Class<T> type) {
+		return (T) extensions.get(type);
+	}
+	
+	/**
+	 * Set a hard limit on the number of tokens this interpreter will execute. Once
+	 * it is passed every further token throws a HairballException. The count is
+	 * cumulative, see getTokensExecuted.
+	 * 
+	 * @param tokenLimit maximum number of tokens, or zero for no limit
+	 */
+	public void setTokenLimit(long tokenLimit) {
+		this.tokenLimit = tokenLimit;
+		scheduleCheck();
+	}
+	
+	/**
+	 * Set a handler which will be called after every sliceSize tokens have been
+	 * executed. Set the handler to null to stop yielding.
+	 * 
+	 * @param sliceSize number of tokens in a slice
+	 * @param yieldHandler handler to call at the end of each slice, or null
+	 */
+	public void setSlice(int sliceSize, IYieldHandler yieldHandler) {
+		if(yieldHandler != null && sliceSize <= 0)
+			throw new IllegalArgumentException("illegal slice size "+sliceSize);
+		this.sliceSize = sliceSize;
+		this.yieldHandler = yieldHandler;
+		this.nextSlice = yieldHandler == null ? Long.MAX_VALUE : tokensExecuted + sliceSize;
+		scheduleCheck();
+	}
+	
+	/**
+	 * Get the number of tokens executed by this interpreter since it was created.
+	 * 
+	 * @return tokens executed
+	 */
+	public long getTokensExecuted() {
+		return tokensExecuted;
+	}
+	
+	/**
+	 * Count one token as executed, enforcing the token limit and yielding at the
+	 * end of a slice. Anything which executes tokens without going through
+	 * executeContext, like a compiled token, must call this for each one.
+	 * 
+	 * @throws HairballException if the token limit is exceeded
+	 */
+	void tick() throws HairballException {
+		if(++tokensExecuted >= nextCheck) checkBudget();
+	}
+	
+	/**
+	 * Called when the token count reaches the next point of interest.
+	 * 
+	 * @throws HairballException if the token limit is exceeded
+	 */
+	private void checkBudget() throws HairballException {
+		if(tokenLimit > 0 && tokensExecuted > tokenLimit)
+			throw new HairballException("Token limit of "+tokenLimit+" exceeded");
+		if(tokensExecuted >= nextSlice) {
+			nextSlice = tokensExecuted + sliceSize;
+			scheduleCheck();
+			yieldHandler.yieldSlice(this);
+		}
+		scheduleCheck();
+	}
+	
+	/**
+	 * Work out at what token count tick has to do something besides counting.
+	 */
+	private void scheduleCheck() {
+		long limitCheck = tokenLimit > 0 ? tokenLimit + 1 : Long.MAX_VALUE;
+		nextCheck = Math.min(limitCheck, nextSlice);
 	}
 	
 	/**
@@ -240,8 +394,10 @@ public class Interpreter {
 		if(currentContext == null) return null; // detect end of program
 		Token nextToken = currentContext.getNextToken();
 		boolean tokenReturnValue = false;
-		if(nextToken != null)
-			tokenReturnValue = nextToken.execute(this);
+		if(nextToken != null) {
+			tick();
+			tokenReturnValue = profiler == null ? nextToken.execute(this) : profile(nextToken);
+		}
 		return tokenReturnValue ? nextToken : null;
 	}
 
@@ -288,7 +444,25 @@ public class Interpreter {
 	 * @throws HairballException 
 	 */
 	public boolean execute(Token token) throws HairballException {
-		return token.execute(this);
+		tick();
+		return profiler == null ? token.execute(this) : profile(token);
+	}
+	
+	/**
+	 * Execute a token, timing it with the profiler.
+	 * 
+	 * @param token the token to execute
+	 * @return the token's return value
+	 * @throws HairballException
+	 */
+	private boolean profile(Token token) throws HairballException {
+		Profiler tokenProfiler = profiler; // the token might change it
+		Profiler.Frame frame = tokenProfiler.enter(token);
+		try {
+			return token.execute(this);
+		} finally {
+			if(frame != null) tokenProfiler.exit(frame);
+		}
 	}
 
 	/**
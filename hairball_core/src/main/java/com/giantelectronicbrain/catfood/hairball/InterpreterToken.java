@@ -17,6 +17,7 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,6 +32,7 @@ import java.util.List;
 public class InterpreterToken implements Token {
 	private final String name;
 	private final List<Token> tokens;
+	private volatile Compiled compiled = null;
 	
 	/**
 	 * Convenience function for building interpreter tokens. This makes it easier to 
@@ -74,6 +76,7 @@ public class InterpreterToken implements Token {
 	 */
 	public void add(Token newToken) {
 		this.tokens.add(newToken);
+		this.compiled = null; // any compiled form is now stale
 	}
 
 	/**
@@ -83,15 +86,67 @@ public class InterpreterToken implements Token {
 	 */
 	public int size() { return tokens.size(); }
 	
+	/**
+	 * Get the tokens which make up the behavior of this token. This is mostly of
+	 * interest to token compilers. The list can't be modified, use add for that.
+	 * 
+	 * @return list of tokens
+	 */
+	public List<Token> getTokens() {
+		return Collections.unmodifiableList(tokens);
+	}
+	
+	/**
+	 * Get the compiled form of this token for the given compiler, compiling it
+	 * the first time it is asked for. The result is remembered, so a token is
+	 * only compiled once for as long as the same compiler is in use.
+	 * 
+	 * @param compiler the compiler to use
+	 * @return the compiled token, or null if the compiler can't handle this one
+	 */
+	public Token getCompiled(ITokenCompiler compiler) {
+		return getCompiled(compiler, compiler);
+	}
+	
+	/**
+	 * Get the compiled form of this token for the given compiler, just as
+	 * getCompiled(compiler) does, but have the other one do the compiling if it
+	 * isn't already known. This lets a compiler carry state from the compile of
+	 * one token into the compiles of the tokens it uses, while the results are
+	 * still remembered as its own.
+	 * 
+	 * Built in tokens are shared by every engine in the process, so this may be
+	 * called from many threads at once. The compiled form is published whole, and
+	 * if two threads compile the same token at once one of them just wins.
+	 * 
+	 * @param owner the compiler the compiled form is remembered for
+	 * @param compiler what compiles the token if it hasn't been compiled yet
+	 * @return the compiled token, or null if the compiler can't handle this one
+	 */
+	public Token getCompiled(ITokenCompiler owner, ITokenCompiler compiler) {
+		Compiled current = compiled;
+		if(current != null && current.owner == owner) return current.token;
+		Token token = compiler.compile(this);
+		compiled = new Compiled(owner, token);
+		return token;
+	}
+	
 	/**
 	 * Execute the behavior of this token using the given interpreter. A new
 	 * InterpreterContext will be generated, the token executed on it, and the
-	 * previous context restored.
+	 * previous context restored. If the interpreter has a token compiler, then
+	 * the compiled form of this token is run instead, if there is one, unless the
+	 * interpreter is profiling.
 	 * 
 	 * @param interpreter the interpreter which is running our code
 	 * @throws HairballException 
 	 */
 	public boolean execute(Interpreter interpreter) throws HairballException {
+		ITokenCompiler compiler = interpreter.getTokenCompiler();
+		if(compiler != null && interpreter.getProfiler() == null) {
+			Token ctoken = getCompiled(compiler);
+			if(ctoken != null) return ctoken.execute(interpreter);
+		}
 		Context newContext = new Context(tokens,0);
 		interpreter.jumpToContext(newContext);
 		Context ctx = interpreter.executeContext();
@@ -114,4 +169,18 @@ public class InterpreterToken implements Token {
 		return "InterpreterToken [name=" + name + "]";
 	}
 
+	/**
+	 * A compiled form together with the compiler it belongs to. It never changes, so
+	 * it can be handed from thread to thread through a volatile field.
+	 */
+	private static final class Compiled {
+		private final ITokenCompiler owner;
+		private final Token token;
+		
+		private Compiled(ITokenCompiler owner, Token token) {
+			this.owner = owner;
+			this.token = token;
+		}
+	}
+
 }
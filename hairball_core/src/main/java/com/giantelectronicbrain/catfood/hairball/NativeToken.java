@@ -43,6 +43,15 @@ public class NativeToken implements Token {
 		return name;
 	}
 
+	/**
+	 * Get the lambda which implements this token.
+	 * 
+	 * @return the behavior
+	 */
+	public HairballBehavior getBehavior() {
+		return behavior;
+	}
+
 	@Override
 	public String toString() {
 		return "NativeToken [name=" + name + "]";
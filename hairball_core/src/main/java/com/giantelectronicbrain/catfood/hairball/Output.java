@@ -51,10 +51,30 @@ public interface Output {
 	 */
 	public abstract void emit(String output) throws IOException;
 	
+	/**
+	 * Push anything this output is holding on to out to where it is going. Outputs
+	 * which don't buffer needn't do anything.
+	 * 
+	 * @throws IOException if the write fails
+	 */
+	public default void flush() throws IOException {
+	}
+	
 	/**
 	 * Close the output. Once closed an output is no longer usable.
 	 * 
 	 * @throws IOException if the close operation fails.
 	 */
 	public abstract void close() throws IOException;
+	
+	/**
+	 * Give up on the output after something has gone wrong. Outputs which replace a file
+	 * only when they are closed leave the file as it was, others are just closed. Once
+	 * aborted an output is no longer usable.
+	 * 
+	 * @throws IOException if the output can't be cleaned up
+	 */
+	public default void abort() throws IOException {
+		close();
+	}
 }
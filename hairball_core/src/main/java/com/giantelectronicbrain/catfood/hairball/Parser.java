@@ -17,6 +17,7 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,17 +42,23 @@ import com.giantelectronicbrain.catfood.hairball.tokens.Emit;
  * The parser can handle one or two special scenarios as well. Note that a couple
  * of its behaviors can be vectored, this is still a TBD area.
  * 
+ * A parse can be recorded, and the Recording replayed later to produce the same
+ * output again without tokenizing or looking anything up, for example with different
+ * values in its variables.
+ * 
  * @author tharter
  *
  */
 
 public class Parser {
-	private static final Logger log = Hairball.PLATFORM.getLogger(Parser.class.getName());
+	private Logger log = DefaultPlatform.INSTANCE.getLogger(Parser.class.getName());
 
 	private boolean interpreting = true;
 	private ParserContext currentContext;
 	private Token emit = Emit.INSTANCE;
 	private ParserBehavior parserBehavior = this::executeWord;
+	private Recording recording = null;
+	private int running = 0; // words being run while recording, what they do isn't top level
 		
 	public static interface ParserBehavior {
 		public abstract boolean handle(Word word) throws HairballException, IOException;
@@ -104,7 +111,8 @@ public class Parser {
 	
 	/**
 	 * Set the current context for this parser. Also returns the old context
-	 * so that it could be restored later.
+	 * so that it could be restored later. Logging goes to the context's platform
+	 * from here on.
 	 * 
 	 * @param currentContext the new parser context
 	 * @return the previous context, or null
@@ -112,6 +120,7 @@ public class Parser {
 	public ParserContext setParserContext(ParserContext currentContext) {
 		ParserContext temp = this.currentContext;
 		this.currentContext = currentContext;
+		if(currentContext != null) log = currentContext.getPlatform().getLogger(Parser.class.getName());
 		return temp;
 	}
 	
@@ -127,7 +136,10 @@ public class Parser {
 	 * @throws HairballException 
 	 */
 	public ParserContext parse() throws IOException, HairballException {
-		IWordStream wordStream = currentContext.getWordStream();
+		return parse(currentContext.getWordStream());
+	}
+	
+	private ParserContext parse(IWordStream wordStream) throws IOException, HairballException {
 		try {
 			Word word = wordStream.getNextWord();
 			while(word != null) {
@@ -144,6 +156,69 @@ public class Parser {
 		}
 	}
 
+	/**
+	 * Parse the current input word stream, just as parse does, recording what is done
+	 * at top level so that it can be replayed.
+	 * 
+	 * @return the recording, which may not be replayable if the input changed the dictionary
+	 * @throws IOException
+	 * @throws HairballException
+	 */
+	public Recording record() throws IOException, HairballException {
+		IWordStream wordStream = currentContext.getWordStream();
+		Dictionary dictionary = currentContext.getDictionary();
+		Recording newRecording = new Recording(wordStream,dictionary);
+		ParserContext recordedContext = currentContext;
+		recordedContext.setWordStream(newRecording.recorder(wordStream));
+		recording = newRecording;
+		try {
+			parse(wordStream);
+		} finally {
+			recording = null;
+			recordedContext.setWordStream(wordStream);
+		}
+		if(dictionary.getVersion() != newRecording.getDictionaryVersion())
+			newRecording.invalidate("changed the dictionary");
+		return newRecording;
+	}
+	
+	/**
+	 * Replay a recording to the given output. The variables named in the bindings are set
+	 * first. Afterwards the parser goes back to its current context, so the same recording
+	 * can be replayed any number of times.
+	 * 
+	 * @param toReplay the recording
+	 * @param output where the output goes
+	 * @param bindings values for variables the recorded input uses, keyed by name
+	 * @return the context the recording was replayed in
+	 * @throws IOException
+	 * @throws HairballException if the recording can't be replayed against this dictionary,
+	 * or a word fails
+	 */
+	public ParserContext replay(Recording toReplay, Output output, Map<String,Object> bindings) throws IOException, HairballException {
+		Dictionary dictionary = currentContext.getDictionary();
+		Interpreter interpreter = currentContext.getInterpreter();
+		toReplay.check(dictionary);
+		ParserContext replayContext = new ParserContext(toReplay.player(),dictionary,interpreter,output,this,currentContext.getPlatform());
+		ParserContext oldContext = setParserContext(replayContext);
+		interpreter.setParserContext(replayContext);
+		try {
+			interpret();
+			toReplay.bind(interpreter, bindings);
+			toReplay.run(interpreter, emit);
+			return replayContext;
+		} catch (HairballException he) {
+			throw new HairballException(he.getMessage()+" in replay of "+toReplay.getSource(),he);
+		} finally {
+			setParserContext(oldContext);
+			interpreter.setParserContext(oldContext);
+		}
+	}
+	
+	private boolean isRecording() {
+		return recording != null && running == 0;
+	}
+	
 	private String makeParserExceptionMessage(HairballException he, IWordStream wordStream) {
 		String source = wordStream.getSource();
 		int lineNumber = wordStream.getLine();
@@ -173,6 +248,15 @@ public class Parser {
 		return currentContext;
 	}
 	
+	/**
+	 * Find out whether the parser is in interpreting mode.
+	 * 
+	 * @return true if interpreting, false if compiling
+	 */
+	public boolean isInterpreting() {
+		return interpreting;
+	}
+	
 	/**
 	 * Execute the runtime behavior of the current word.
 	 * 
@@ -185,7 +269,17 @@ public class Parser {
 		if(definition != null) {
 			flushLitAccum();
 			Token runTime = definition.getRunTime();
-			rv = currentContext.getInterpreter().execute(runTime);
+			if(isRecording()) {
+				recording.execute(word, definition);
+				running++;
+				try {
+					rv = currentContext.getInterpreter().execute(runTime);
+				} finally {
+					running--;
+				}
+			} else {
+				rv = currentContext.getInterpreter().execute(runTime);
+			}
 		} else {
 			if(!isNumber(word))
 				handleLiteralWord(word);
@@ -199,6 +293,7 @@ public class Parser {
 			try {
 				Integer v = Integer.valueOf(value.substring(1));
 				currentContext.getInterpreter().push(v);
+				if(isRecording()) recording.push(v);
 				flushLitAccum();
 				return true;
 			} catch(NumberFormatException e) {
@@ -216,6 +311,7 @@ public class Parser {
 	 */
 	public boolean compileWord(Word word) throws HairballException {
 		boolean rv = true;
+		if(isRecording()) recording.invalidate("compiles at top level");
 		Definition definition = currentContext.getDictionary().lookUp(word);
 		if(definition != null) {
 			flushLitAccum();
@@ -246,6 +342,7 @@ public class Parser {
 			LiteralToken token = new LiteralToken("accumLiteral",litAccum.toString());
 			litAccum = new StringBuilder();
 			if(interpreting) {
+				if(isRecording()) recording.literal(token);
 				token.execute(currentContext.getInterpreter());
 				emit.execute(currentContext.getInterpreter());
 			} else {
@@ -18,6 +18,8 @@ package com.giantelectronicbrain.catfood.hairball;
 
 import java.io.IOException;
 
+import com.giantelectronicbrain.catfood.IPlatform;
+
 /**
  * Container for the configuration state of the Parser. This lets us set up
  * parsers and much more easily pass initialization and state around.
@@ -31,9 +33,10 @@ public class ParserContext {
 	private Interpreter interpreter;
 	private Output output;
 	private Parser parser;
+	private final IPlatform platform;
 	
 	/**
-	 * Create a new ParserContext.
+	 * Create a new ParserContext on the default platform.
 	 * 
 	 * @param wordStream the input wordStream for this parser
 	 * @param rootDictionary the dictionary used by this parser
@@ -43,11 +46,29 @@ public class ParserContext {
 	 */
 	public ParserContext(IWordStream wordStream, Dictionary rootDictionary, 
 			Interpreter interpreter, Output output, Parser parser) {
+		this(wordStream, rootDictionary, interpreter, output, parser, DefaultPlatform.INSTANCE);
+	}
+
+	/**
+	 * Create a new ParserContext. The platform belongs to the engine the context is
+	 * for, so contexts made for nested input, such as included files, should be given
+	 * the platform of the context they are nested in.
+	 * 
+	 * @param wordStream the input wordStream for this parser
+	 * @param rootDictionary the dictionary used by this parser
+	 * @param interpreter the interpreter to execute words on
+	 * @param output the output stream for the parser
+	 * @param parser a pointer to the parser itself
+	 * @param platform the platform of the engine this context is for
+	 */
+	public ParserContext(IWordStream wordStream, Dictionary rootDictionary, 
+			Interpreter interpreter, Output output, Parser parser, IPlatform platform) {
 		this.wordStream = wordStream;
 		this.dictionary = rootDictionary;
 		this.interpreter = interpreter;
 		this.output = output;
 		this.parser = parser;
+		this.platform = platform;
 	}
 
 	/**
@@ -69,6 +90,15 @@ public class ParserContext {
 		return this.parser;
 	}
 	
+	/**
+	 * Get the platform of the engine this context is for.
+	 * 
+	 * @return the platform
+	 */
+	public IPlatform getPlatform() {
+		return platform;
+	}
+	
 	/**
 	 * Get the output.
 	 * 
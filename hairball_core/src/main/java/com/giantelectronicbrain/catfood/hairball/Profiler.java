@@ -0,0 +1,205 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A word level profiler. When an Interpreter has a profiler, every InterpreterToken
+ * and NativeToken it dispatches is timed. For each token name we keep the number of
+ * calls, the time spent in the token itself (self time) and the time spent in it
+ * and everything it called (inclusive time). We also keep self time for each distinct
+ * nesting path, which can be dumped in the 'collapsed stack' format that flame graph
+ * tools read.
+ * 
+ * Compiled tokens are not used while profiling, so times are for interpreted code.
+ * 
+ * @author tharter
+ *
+ */
+public class Profiler {
+	private final Map<String,Stats> stats = new HashMap<>();
+	private final Map<String,Long> paths = new LinkedHashMap<>();
+	private final List<Frame> frames = new ArrayList<>();
+	private boolean enabled = true;
+
+	/**
+	 * Statistics for one token name.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	public static class Stats {
+		private final String name;
+		private long calls = 0;
+		private long selfNanos = 0;
+		private long inclusiveNanos = 0;
+		private int active = 0; // recursion depth, so inclusive time isn't counted twice
+		
+		private Stats(String name) {
+			this.name = name;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public long getCalls() {
+			return calls;
+		}
+		
+		public long getSelfNanos() {
+			return selfNanos;
+		}
+		
+		public long getInclusiveNanos() {
+			return inclusiveNanos;
+		}
+	}
+	
+	/**
+	 * A token which is being executed.
+	 * 
+	 * @author tharter
+	 *
+	 */
+	public static class Frame {
+		private final Stats stats;
+		private final String path;
+		private final long start;
+		private long childNanos = 0;
+		
+		private Frame(Stats stats, String path, long start) {
+			this.stats = stats;
+			this.path = path;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * Turn recording on or off. Tokens already being timed are still finished off
+	 * when recording is turned off.
+	 * 
+	 * @param enabled true to record
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * Test if the profiler is recording.
+	 * 
+	 * @return true if recording
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Note that a token is about to be executed. The frame returned has to be
+	 * given back to exit when it is done.
+	 * 
+	 * @param token the token
+	 * @return a frame, or null if the token isn't being profiled
+	 */
+	public Frame enter(Token token) {
+		if(!enabled || !(token instanceof InterpreterToken || token instanceof NativeToken)) return null;
+		String name = token.getName();
+		Stats tokenStats = stats.get(name);
+		if(tokenStats == null) {
+			tokenStats = new Stats(name);
+			stats.put(name, tokenStats);
+		}
+		tokenStats.calls++;
+		tokenStats.active++;
+		String path = frames.isEmpty() ? name : frames.get(frames.size() - 1).path + ";" + name;
+		Frame frame = new Frame(tokenStats, path, System.nanoTime());
+		frames.add(frame);
+		return frame;
+	}
+	
+	/**
+	 * Note that a token has finished executing, normally or not.
+	 * 
+	 * @param frame the frame returned by enter
+	 */
+	public void exit(Frame frame) {
+		long elapsed = System.nanoTime() - frame.start;
+		int index = frames.lastIndexOf(frame);
+		while(frames.size() > index) frames.remove(frames.size() - 1);
+		long self = elapsed - frame.childNanos;
+		frame.stats.selfNanos += self;
+		if(--frame.stats.active == 0) frame.stats.inclusiveNanos += elapsed;
+		if(!frames.isEmpty()) frames.get(frames.size() - 1).childNanos += elapsed;
+		Long pathNanos = paths.get(frame.path);
+		paths.put(frame.path, pathNanos == null ? self : pathNanos + self);
+	}
+
+	/**
+	 * Get the statistics gathered so far, ordered by self time, largest first.
+	 * 
+	 * @return list of statistics
+	 */
+	public List<Stats> getStats() {
+		List<Stats> result = new ArrayList<>(stats.values());
+		result.sort((a,b) -> Long.compare(b.selfNanos, a.selfNanos));
+		return result;
+	}
+	
+	/**
+	 * Produce a readable report, one line per token name, ordered by self time.
+	 * Times are in microseconds.
+	 * 
+	 * @return the report
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(pad("calls",12)).append(pad("self us",14)).append(pad("total us",14)).append("  word\n");
+		for(Stats stat : getStats()) {
+			sb.append(pad(Long.toString(stat.calls),12))
+				.append(pad(Long.toString(stat.selfNanos / 1000),14))
+				.append(pad(Long.toString(stat.inclusiveNanos / 1000),14))
+				.append("  ").append(stat.name).append("\n");
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Produce the self time of each nesting path in collapsed stack format, that is
+	 * the names on the path separated by semicolons, a space, and the time in
+	 * microseconds, one path per line.
+	 * 
+	 * @return collapsed stacks
+	 */
+	public String collapsedStacks() {
+		StringBuilder sb = new StringBuilder();
+		paths.forEach((path,nanos) -> {
+			sb.append(path.replace(' ', '_')).append(" ").append(nanos / 1000).append("\n");
+		});
+		return sb.toString();
+	}
+	
+	private static String pad(String value, int width) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = value.length(); i < width; i++) sb.append(' ');
+		return sb.append(value).toString();
+	}
+}
@@ -0,0 +1,353 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recording of a document run at top level by a Parser. It holds, in order, the runtime
+ * tokens executed, the numbers pushed and the runs of literal text emitted, along with
+ * whatever the words read from the input while they ran. Replaying it gives the same
+ * output as parsing the document again, without tokenizing the input or looking up
+ * any words, so a template can be rendered many times with different variable values.
+ * 
+ * A recording is only good for as long as the source is unchanged and the dictionary
+ * is at the version it was recorded against. A document which defines, forgets or
+ * compiles anything at top level changes the dictionary as it runs, so its recording
+ * can't be replayed. Words which parse another input, such as included files, read
+ * that input again when they are replayed.
+ * 
+ * @author tharter
+ *
+ */
+public class Recording {
+	private static final int EXECUTE = 0;
+	private static final int PUSH = 1;
+	private static final int LITERAL = 2;
+	private static final Object NO_WORD = new Object(); // stands in for null from getNextWord
+	
+	private final String source;
+	private final String location;
+	private final long dictionaryVersion;
+	private int[] ops = new int[16];
+	private Object[] args = new Object[16];
+	private int size = 0;
+	private final List<Object> input = new ArrayList<>();
+	private final Map<Word,Definition> resolved = new HashMap<>();
+	private String notReplayable = null;
+	
+	/**
+	 * Start a recording of the given input.
+	 * 
+	 * @param wordStream the input being recorded
+	 * @param dictionary the dictionary words are looked up in
+	 */
+	Recording(IWordStream wordStream, Dictionary dictionary) {
+		this.source = wordStream.getSource();
+		this.location = wordStream.getCurrentLocation();
+		this.dictionaryVersion = dictionary.getVersion();
+	}
+	
+	private void add(int op, Object arg) {
+		if(size == ops.length) {
+			int[] newOps = new int[size * 2];
+			Object[] newArgs = new Object[size * 2];
+			System.arraycopy(ops, 0, newOps, 0, size);
+			System.arraycopy(args, 0, newArgs, 0, size);
+			ops = newOps;
+			args = newArgs;
+		}
+		ops[size] = op;
+		args[size] = arg;
+		size++;
+	}
+	
+	/**
+	 * Record the execution of a word's runtime behavior.
+	 * 
+	 * @param word the word
+	 * @param definition what it was found to be
+	 */
+	void execute(Word word, Definition definition) {
+		resolved.put(word, definition);
+		add(EXECUTE, definition.getRunTime());
+	}
+	
+	/**
+	 * Record a number being pushed.
+	 * 
+	 * @param number the number
+	 */
+	void push(Object number) {
+		add(PUSH, number);
+	}
+	
+	/**
+	 * Record a run of literal text being emitted.
+	 * 
+	 * @param literal the token which pushes the text
+	 */
+	void literal(LiteralToken literal) {
+		add(LITERAL, literal);
+	}
+	
+	/**
+	 * Mark this recording as one which can't be replayed.
+	 * 
+	 * @param reason why not, for the exception thrown by replay
+	 */
+	void invalidate(String reason) {
+		if(notReplayable == null) notReplayable = reason;
+	}
+	
+	/**
+	 * Check this recording before replaying it.
+	 * 
+	 * @param dictionary the dictionary it will be replayed against
+	 * @throws HairballException if it can't be replayed
+	 */
+	void check(Dictionary dictionary) throws HairballException {
+		if(notReplayable != null)
+			throw new HairballException("Recording of "+source+" can't be replayed, it "+notReplayable);
+		if(dictionary.getVersion() != dictionaryVersion)
+			throw new HairballException("Recording of "+source+" is stale, the dictionary has changed");
+	}
+	
+	/**
+	 * Set variables used by the recorded document before it is replayed. Each name must be
+	 * a variable which the document used at top level.
+	 * 
+	 * @param interpreter interpreter to run on
+	 * @param bindings values keyed by variable name, such as /TITLE
+	 * @throws HairballException if a name isn't a variable the document used
+	 */
+	void bind(Interpreter interpreter, Map<String,Object> bindings) throws HairballException {
+		for(Map.Entry<String,Object> binding : bindings.entrySet()) {
+			Definition definition = resolved.get(new Word(binding.getKey()));
+			if(definition == null)
+				throw new HairballException("Recording of "+source+" doesn't use "+binding.getKey());
+			interpreter.execute(definition.getRunTime());
+			Object variable = interpreter.pop();
+			if(!(variable instanceof VariableToken))
+				throw new HairballException(binding.getKey()+" is not a variable");
+			((VariableToken) variable).setData(interpreter, binding.getValue());
+		}
+	}
+	
+	/**
+	 * Run the recording.
+	 * 
+	 * @param interpreter interpreter to run on
+	 * @param emit token used to emit literal text
+	 * @throws HairballException if a token fails
+	 */
+	void run(Interpreter interpreter, Token emit) throws HairballException {
+		for(int i = 0; i < size; i++) {
+			switch(ops[i]) {
+			case EXECUTE:
+				if(!interpreter.execute((Token) args[i])) return;
+				break;
+			case PUSH:
+				interpreter.push(args[i]);
+				break;
+			default:
+				((Token) args[i]).execute(interpreter);
+				emit.execute(interpreter);
+			}
+		}
+	}
+	
+	/**
+	 * Test if this recording can be replayed against a dictionary.
+	 * 
+	 * @param dictionary the dictionary
+	 * @return true if it can
+	 */
+	public boolean isReplayableOn(Dictionary dictionary) {
+		return notReplayable == null && dictionary.getVersion() == dictionaryVersion;
+	}
+	
+	/**
+	 * Get the name of the recorded source.
+	 * 
+	 * @return source name
+	 */
+	public String getSource() {
+		return source;
+	}
+	
+	/**
+	 * Get the version of the dictionary this was recorded against.
+	 * 
+	 * @return dictionary version
+	 */
+	public long getDictionaryVersion() {
+		return dictionaryVersion;
+	}
+	
+	/**
+	 * Get the number of steps recorded.
+	 * 
+	 * @return number of steps
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Wrap the recorded input so that everything words read from it is kept for replay.
+	 * 
+	 * @param wordStream the recorded input
+	 * @return the wrapped input
+	 */
+	IWordStream recorder(IWordStream wordStream) {
+		return new IWordStream() {
+			@Override
+			public String getCurrentLocation() {
+				return wordStream.getCurrentLocation();
+			}
+
+			@Override
+			public String getSource() {
+				return wordStream.getSource();
+			}
+
+			@Override
+			public int getLine() {
+				return wordStream.getLine();
+			}
+
+			@Override
+			public int getColumn() {
+				return wordStream.getColumn();
+			}
+
+			@Override
+			public void close() throws IOException {
+				wordStream.close();
+			}
+
+			@Override
+			public Word getNextWord() throws IOException {
+				Word word = wordStream.getNextWord();
+				input.add(word == null ? NO_WORD : word);
+				return word;
+			}
+
+			@Override
+			public String getToMatching(String match) throws IOException {
+				String text = wordStream.getToMatching(match);
+				input.add(text);
+				return text;
+			}
+
+			@Override
+			public boolean hasMoreTokens() throws IOException {
+				boolean more = wordStream.hasMoreTokens();
+				input.add(Boolean.valueOf(more));
+				return more;
+			}
+
+			@Override
+			public String getToDelimiter(String match) throws IOException {
+				String text = wordStream.getToDelimiter(match);
+				input.add(text);
+				return text;
+			}
+		};
+	}
+	
+	/**
+	 * Make an input which gives words back what they read while being recorded.
+	 * 
+	 * @return the input
+	 */
+	IWordStream player() {
+		return new IWordStream() {
+			private int next = 0;
+			
+			private Object next() throws IOException {
+				if(next == input.size())
+					throw new IOException("Replay of "+source+" read past the recorded input");
+				return input.get(next++);
+			}
+			
+			private String nextText() throws IOException {
+				Object value = next();
+				if(value != null && !(value instanceof String)) throw outOfStep();
+				return (String) value;
+			}
+			
+			private IOException outOfStep() {
+				return new IOException("Replay of "+source+" read its input differently than the recording");
+			}
+			
+			@Override
+			public String getCurrentLocation() {
+				return location;
+			}
+
+			@Override
+			public String getSource() {
+				return source;
+			}
+
+			@Override
+			public int getLine() {
+				return 0;
+			}
+
+			@Override
+			public int getColumn() {
+				return 0;
+			}
+
+			@Override
+			public void close() throws IOException {
+			}
+
+			@Override
+			public Word getNextWord() throws IOException {
+				Object value = next();
+				if(value == NO_WORD) return null;
+				if(!(value instanceof Word)) throw outOfStep();
+				return (Word) value;
+			}
+
+			@Override
+			public String getToMatching(String match) throws IOException {
+				return nextText();
+			}
+
+			@Override
+			public boolean hasMoreTokens() throws IOException {
+				Object value = next();
+				if(!(value instanceof Boolean)) throw outOfStep();
+				return ((Boolean) value).booleanValue();
+			}
+
+			@Override
+			public String getToDelimiter(String match) throws IOException {
+				return nextText();
+			}
+		};
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An output with named regions, which can be filled in after the text around them
+ * has been written, so something like a table of contents can be produced in a
+ * single pass. A region is reserved at the current point of the output, and any
+ * time later, before or after it is reserved, output can be sent into it. Regions
+ * can be reserved inside other regions.
+ * 
+ * Everything is held as a rope of byte chunks until the output is closed, when the
+ * chunks are written to the underlying output in order. Text is only encoded once
+ * and the bytes are only copied once more on their way out, no strings are
+ * concatenated. Since nothing is final until then, flush does nothing.
+ * 
+ * @author tharter
+ *
+ */
+public class RegionOutput implements Output {
+	private static final int CHUNK_SIZE = 8192;
+	private static final byte[] SPACE = { ' ' };
+	
+	private final Output output;
+	private final Rope main = new Rope("main");
+	private final Map<String,Rope> regions = new HashMap<>();
+	private final List<Rope> targets = new ArrayList<>(); // regions entered, most recent last
+	private Rope target = main;
+	
+	/**
+	 * A chunk of encoded text. Text isn't split across chunks.
+	 */
+	private static class Chunk {
+		private final byte[] bytes;
+		private int length = 0;
+		
+		private Chunk(int size) {
+			bytes = new byte[size];
+		}
+	}
+	
+	/**
+	 * A sequence of chunks and other ropes.
+	 */
+	private static class Rope {
+		private final String name;
+		private final List<Object> pieces = new ArrayList<>();
+		private Chunk current = null;
+		private Rope parent = null;
+		private boolean placed = false;
+		
+		private Rope(String name) {
+			this.name = name;
+		}
+		
+		private void append(byte[] bytes, int offset, int length) {
+			if(current == null || current.bytes.length - current.length < length) {
+				current = new Chunk(Math.max(CHUNK_SIZE, length));
+				pieces.add(current);
+			}
+			System.arraycopy(bytes, offset, current.bytes, current.length, length);
+			current.length += length;
+		}
+		
+		private void insert(Rope region) {
+			pieces.add(region);
+			current = null;
+		}
+	}
+	
+	/**
+	 * Create a region output which writes to another output when it is closed.
+	 * 
+	 * @param output the output which everything ends up in
+	 */
+	public RegionOutput(Output output) {
+		this.output = output;
+	}
+	
+	/**
+	 * Get the region output of a parser context, first putting a region output in front
+	 * of the context's output if it doesn't already have one.
+	 * 
+	 * @param context the context
+	 * @return its region output
+	 */
+	public static RegionOutput of(ParserContext context) {
+		Output current = context.getOutput();
+		if(current instanceof RegionOutput) return (RegionOutput) current;
+		RegionOutput regionOutput = new RegionOutput(current);
+		context.setOutput(regionOutput);
+		return regionOutput;
+	}
+	
+	private Rope region(String name) {
+		Rope region = regions.get(name);
+		if(region == null) {
+			region = new Rope(name);
+			regions.put(name, region);
+		}
+		return region;
+	}
+	
+	/**
+	 * Reserve a place for a region at the current point in the output.
+	 * 
+	 * @param name the region name
+	 * @throws IOException if the region has already been placed, or would end up
+	 * inside itself
+	 */
+	public void reserve(String name) throws IOException {
+		Rope region = region(name);
+		if(region.placed) throw new IOException("Region "+name+" has already been placed");
+		for(Rope outer = target; outer != null; outer = outer.parent)
+			if(outer == region) throw new IOException("Region "+name+" can't be placed inside itself");
+		region.placed = true;
+		region.parent = target;
+		target.insert(region);
+	}
+	
+	/**
+	 * Send output into a region until leave is called.
+	 * 
+	 * @param name the region name
+	 */
+	public void enter(String name) {
+		targets.add(target);
+		target = region(name);
+	}
+	
+	/**
+	 * Go back to sending output wherever it went before the last call to enter.
+	 * 
+	 * @throws IOException if no region has been entered
+	 */
+	public void leave() throws IOException {
+		if(targets.isEmpty()) throw new IOException("Not in a region");
+		target = targets.remove(targets.size() - 1);
+	}
+	
+	/**
+	 * Get a stream which writes into the current region, or the main output.
+	 */
+	@Override
+	public OutputStream getOutputStream() {
+		return new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				target.append(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] bytes, int offset, int length) throws IOException {
+				target.append(bytes, offset, length);
+			}
+		};
+	}
+
+	@Override
+	public void space() throws IOException {
+		target.append(SPACE, 0, 1);
+	}
+
+	@Override
+	public void emit(String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		target.append(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Write everything out to the underlying output, and close it.
+	 * 
+	 * @throws IOException if output was sent to a region which was never placed
+	 */
+	@Override
+	public void close() throws IOException {
+		for(Rope region : regions.values())
+			if(!region.placed && !region.pieces.isEmpty())
+				throw new IOException("Region "+region.name+" has output but was never placed");
+		OutputStream stream = null;
+		try {
+			stream = output.getOutputStream();
+		} catch (UnsupportedOperationException e) {
+			// emit the chunks as text instead
+		}
+		write(main, stream);
+		output.close();
+	}
+	
+	private void write(Rope rope, OutputStream stream) throws IOException {
+		for(Object piece : rope.pieces) {
+			if(piece instanceof Rope) {
+				write((Rope) piece, stream);
+			} else {
+				Chunk chunk = (Chunk) piece;
+				if(stream != null)
+					stream.write(chunk.bytes, 0, chunk.length);
+				else
+					output.emit(new String(chunk.bytes, 0, chunk.length, StandardCharsets.UTF_8));
+			}
+		}
+	}
+}
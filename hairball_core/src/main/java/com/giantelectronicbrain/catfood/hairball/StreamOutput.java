@@ -27,7 +27,7 @@ import java.util.logging.Logger;
  *
  */
 public class StreamOutput implements Output {
-	private static final Logger log = Hairball.PLATFORM.getLogger(StreamOutput.class.getName());
+	private static final Logger log = DefaultPlatform.INSTANCE.getLogger(StreamOutput.class.getName());
 
 	private final OutputStream out;
 	
@@ -52,6 +52,11 @@ public class StreamOutput implements Output {
 		out.write(output.getBytes(StandardCharsets.UTF_8));
 	}
 
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
 	@Override
 	public void close() throws IOException {
 //TODO: uncomment this. We will need to make a 'ConsoleOutput' which doesn't close
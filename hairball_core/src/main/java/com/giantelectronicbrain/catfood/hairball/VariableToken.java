@@ -53,4 +53,32 @@ public class VariableToken extends LiteralToken {
 	public void setData(Object data) {
 		this.data = data;
 	}
+
+	/**
+	 * Get the value of this variable as the engine running on the given interpreter
+	 * sees it. A forked engine has its own value once it has stored one, see
+	 * Dictionary.store.
+	 * 
+	 * @param interpreter the interpreter
+	 * @return the value
+	 */
+	public Object getData(Interpreter interpreter) {
+		ParserContext context = interpreter.getParserContext();
+		return context == null ? data : context.getDictionary().fetch(this);
+	}
+
+	/**
+	 * Change the value of this variable for the engine running on the given
+	 * interpreter only.
+	 * 
+	 * @param interpreter the interpreter
+	 * @param data new data
+	 */
+	public void setData(Interpreter interpreter, Object data) {
+		ParserContext context = interpreter.getParserContext();
+		if(context == null)
+			this.data = data;
+		else
+			context.getDictionary().store(this, data);
+	}
 }
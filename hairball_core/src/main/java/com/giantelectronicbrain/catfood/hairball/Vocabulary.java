@@ -16,18 +16,38 @@
 */
 package com.giantelectronicbrain.catfood.hairball;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A vocabulary is a collection of hairball Definitions.
  * 
+ * Vocabularies can be forked cheaply. A fork shares its definitions with the
+ * vocabulary it was forked from until either one of them is changed, at which
+ * point the one being changed takes its own copy. Changes are therefore never
+ * visible across a fork.
+ * 
+ * A vocabulary can be built on top of a FrozenVocabulary, which is searched after
+ * the vocabulary's own definitions. New definitions always go into the vocabulary
+ * itself, so the frozen base is never changed and can be shared.
+ * 
+ * Listeners can be registered to hear about new definitions, they are not
+ * carried over to forks.
+ * 
  * @author tharter
  *
  */
 public class Vocabulary implements IVocabulary {
 	private final String name;
-	private final Map<Word,Definition> definitions = new HashMap<>(); 
+	private final FrozenVocabulary base;
+	private final Object lineage; // the same for a vocabulary and all of its forks
+	private Map<Word,Definition> definitions;
+	private volatile boolean shared = false; // true if definitions may be seen by another vocabulary
+	private final List<IVocabularyListener> listeners = new ArrayList<>(1);
 
 	/**
 	 * Create an empty vocabulary with the given name.
@@ -35,12 +55,40 @@ public class Vocabulary implements IVocabulary {
 	 * @param name name of this vocabulary
 	 */
 	public Vocabulary(String name) {
+		this(name,null);
+	}
+
+	/**
+	 * Create a vocabulary with the given name on top of a frozen base.
+	 * 
+	 * @param name name of this vocabulary
+	 * @param base definitions to fall back to, or null
+	 */
+	public Vocabulary(String name, FrozenVocabulary base) {
+		this(name,base,new HashMap<>(),new Object());
+	}
+
+	/**
+	 * Create a vocabulary which shares the given definitions. They will be
+	 * copied before any change is made.
+	 * 
+	 * @param name name of this vocabulary
+	 * @param base definitions to fall back to, or null
+	 * @param definitions definitions to share
+	 * @param lineage lineage of the vocabulary this is a fork of
+	 */
+	private Vocabulary(String name, FrozenVocabulary base, Map<Word,Definition> definitions, Object lineage) {
 		this.name = name;
+		this.base = base;
+		this.definitions = definitions;
+		this.lineage = lineage;
 	}
 
 	@Override
 	public Definition lookUp(Word word) {
-		return definitions.get(word);
+		Definition def = definitions.get(word);
+		if(def == null && base != null) def = base.lookUp(word);
+		return def;
 	}
 	
 	/**
@@ -50,7 +98,139 @@ public class Vocabulary implements IVocabulary {
 	 * @param newDefinition
 	 */
 	public void add(Definition newDefinition) {
+		if(shared) {
+			this.definitions = new HashMap<>(this.definitions);
+			this.shared = false;
+		}
 		this.definitions.put(newDefinition.getName(), newDefinition);
+		for(int i = 0; i < listeners.size(); i++)
+			listeners.get(i).definitionAdded(this, newDefinition);
+	}
+
+	/**
+	 * Remove a definition from the vocabulary, so any definition it was hiding in
+	 * the base can be seen again. Definitions in the base can't be removed.
+	 * 
+	 * @param word the word to remove
+	 * @return the definition removed, or null if the word wasn't defined here
+	 */
+	public Definition remove(Word word) {
+		if(!definitions.containsKey(word)) return null;
+		if(shared) {
+			this.definitions = new HashMap<>(this.definitions);
+			this.shared = false;
+		}
+		Definition removed = this.definitions.remove(word);
+		for(int i = 0; i < listeners.size(); i++)
+			listeners.get(i).definitionRemoved(this, removed);
+		return removed;
+	}
+
+	/**
+	 * Put the definitions back to the way they are in a saved fork of this vocabulary,
+	 * or of any vocabulary in its lineage. The saved fork must be one which nobody
+	 * changes, such as the ones a Dictionary.Mark keeps, since its definitions are
+	 * shared rather than copied. Listeners are not told, whoever restores a
+	 * vocabulary must take care of that.
+	 * 
+	 * @param saved the saved fork
+	 */
+	void restore(Vocabulary saved) {
+		definitions = saved.definitions;
+		shared = true;
+	}
+
+	/**
+	 * Get the lineage of this vocabulary. A vocabulary and every fork made of it, or
+	 * of its forks, have the same lineage, so it says which vocabulary in a forked
+	 * dictionary stands in for one in the original.
+	 * 
+	 * @return the lineage
+	 */
+	Object getLineage() {
+		return lineage;
+	}
+
+	/**
+	 * Get all of the definitions in this vocabulary, including those from the base
+	 * which haven't been redefined. The collection can't be modified.
+	 * 
+	 * @return the definitions
+	 */
+	public Collection<Definition> getDefinitions() {
+		if(base == null) return getOwnDefinitions();
+		List<Definition> all = new ArrayList<>(definitions.values());
+		for(Definition def : base.getDefinitions())
+			if(!definitions.containsKey(def.getName())) all.add(def);
+		return Collections.unmodifiableCollection(all);
+	}
+
+	/**
+	 * Get the definitions which were added to this vocabulary, leaving out the base.
+	 * The collection can't be modified.
+	 * 
+	 * @return the definitions
+	 */
+	public Collection<Definition> getOwnDefinitions() {
+		return Collections.unmodifiableCollection(definitions.values());
+	}
+
+	/**
+	 * Get the frozen vocabulary this one is built on.
+	 * 
+	 * @return the base, or null if there isn't one
+	 */
+	public FrozenVocabulary getBase() {
+		return base;
+	}
+
+	/**
+	 * Add a listener which will be told about every definition added to this
+	 * vocabulary from now on. Adding the same listener twice has no effect.
+	 * 
+	 * @param listener the listener
+	 */
+	public void addListener(IVocabularyListener listener) {
+		for(IVocabularyListener existing : listeners)
+			if(existing == listener) return;
+		listeners.add(listener);
+	}
+
+	/**
+	 * Stop telling a listener about new definitions.
+	 * 
+	 * @param listener the listener
+	 */
+	public void removeListener(IVocabularyListener listener) {
+		for(int i = 0; i < listeners.size(); i++)
+			if(listeners.get(i) == listener) {
+				listeners.remove(i);
+				return;
+			}
+	}
+
+	/**
+	 * Fork this vocabulary. The new vocabulary has the same name and
+	 * definitions, but changes made to either one will not be seen by the
+	 * other. Nothing is copied until one of them is changed.
+	 * 
+	 * @return the new vocabulary
+	 */
+	@Override
+	public Vocabulary fork() {
+		Vocabulary forked = new Vocabulary(name,base,definitions,lineage);
+		forked.shared = true;
+		share();
+		return forked;
+	}
+
+	/**
+	 * Get ready to be forked. Once this has been called, forking only reads this
+	 * vocabulary until it is next changed, so forks can be made from several threads
+	 * at once.
+	 */
+	void share() {
+		if(!shared) shared = true;
 	}
 
 	@Override
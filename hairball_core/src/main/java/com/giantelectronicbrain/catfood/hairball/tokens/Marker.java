@@ -0,0 +1,59 @@
+/**
+ * This software is Copyright (C) 2021 Tod G. Harter. All rights reserved.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.giantelectronicbrain.catfood.hairball.tokens;
+
+import com.giantelectronicbrain.catfood.hairball.Dictionary;
+import com.giantelectronicbrain.catfood.hairball.HairballException;
+import com.giantelectronicbrain.catfood.hairball.Interpreter;
+import com.giantelectronicbrain.catfood.hairball.Token;
+
+/**
+ * The runtime behavior of a word made by /MARKER. It rolls the dictionary back to
+ * the way it was just before the marker was defined, which forgets the marker too.
+ * A marker defined in a prelude may run in any fork of the engine which loaded it,
+ * in which case only the fork's dictionary is rolled back.
+ *
+ * @author tharter
+ *
+ */
+public class Marker implements Token {
+	private final String name;
+	private final Dictionary.Mark mark;
+	
+	/**
+	 * Create a marker token.
+	 * 
+	 * @param name name of the marker word
+	 * @param mark the mark to roll back to
+	 */
+	public Marker(String name, Dictionary.Mark mark) {
+		this.name = name;
+		this.mark = mark;
+	}
+	
+	@Override
+	public boolean execute(Interpreter interpreter) throws HairballException {
+		interpreter.getParserContext().getDictionary().rollBack(mark);
+		return true;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+}
@@ -17,6 +17,7 @@
 package com.giantelectronicbrain.catfood.hairball;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -25,6 +26,8 @@ import static org.junit.Assert.fail;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Stack;
 import java.util.logging.Logger;
 
@@ -68,7 +71,6 @@ public class HairballWordsTest {
 	 */
 	public static Hairball setUp(String inputData, OutputStream out) {
 		TestPlatform tp = new TestPlatform();
-		Hairball.PLATFORM = tp;
 		Output output = new StreamOutput(out);
 		IWordStream input = null;
 //		try {
@@ -91,7 +93,6 @@ public class HairballWordsTest {
 	
 	@Test
 	public void testVersion() throws IOException, HairballException {
-		Hairball.VERSION = "N/A"; // just for testing purposes
 		OutputStream out = new ByteArrayOutputStream();
 		Hairball uut = setUp("/VERSION",out);
 		uut.execute();
@@ -720,5 +721,186 @@ public class HairballWordsTest {
 		String output = out.toString();
 		assertEquals("<HTML><HEAD><TITLE>this is a test</TITLE></HEAD><BODY>Some fooby wooby</BODY></HTML>",output);		
 	}
+	
+	@Test
+	public void testProfileOnOff() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("/: /EM <em> :/ /: /TWICE /EM /EM :/\n" +
+								"/EM /PROFILE-ON /TWICE /EM /PROFILE-OFF /TWICE",out);
+		ParserContext ctx = uut.execute();
+		assertEquals("<em><em><em><em><em><em>",out.toString());
+		Profiler profiler = ctx.getInterpreter().getProfiler();
+		assertNotNull(profiler);
+		long twiceCalls = 0, emCalls = 0;
+		for(Profiler.Stats stats : profiler.getStats()) {
+			if(stats.getName().equals("/TWICE")) twiceCalls = stats.getCalls();
+			if(stats.getName().equals("/EM")) {
+				emCalls = stats.getCalls();
+				assertTrue(stats.getInclusiveNanos() >= stats.getSelfNanos());
+			}
+		}
+		assertEquals(1,twiceCalls);
+		assertEquals(3,emCalls);
+		String stacks = profiler.collapsedStacks();
+		assertTrue(stacks.contains("/TWICE;/EM "));
+		assertTrue(profiler.report().contains("/TWICE"));
+	}
+	
+	@Test
+	public void testManyIfThenBlocks() throws IOException, HairballException {
+		StringBuilder program = new StringBuilder("/: /TEST ");
+		StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 2000; i++) {
+			program.append("/DUP /IF x /THEN /NOT ");
+			if(i % 2 == 0) expected.append("x");
+		}
+		program.append("/DROP :/ /TRUE /TEST");
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp(program.toString(),out);
+		uut.execute();
+		assertEquals(expected.toString(),out.toString());
+		assertEquals(0,uut.getParamStack().size());
+	}
+	
+	@Test
+	public void testMarkerRollsBack() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("/: /A a :/ /MARKER CLEAN /: /B b :/ /NEWVOCABULARY TEMP /B CLEAN /A",out);
+		ParserContext ctx = uut.execute();
+		assertEquals("ba",out.toString());
+		Dictionary dict = ctx.getDictionary();
+		assertNotNull(dict.lookUp(new Word("/A")));
+		assertNull(dict.lookUp(new Word("/B")));
+		assertNull(dict.lookUp(new Word("CLEAN")));
+		assertNull(dict.findVocabulary("TEMP"));
+	}
+	
+	@Test
+	public void testForksKeepTheirOwnVariables() throws IOException, HairballException {
+		Hairball prototype = setUp("/VARIABLE /COUNT #0 /COUNT /V! /: /ID /COUNT /V@ /1+ /COUNT /V! /COUNT /V@ /. :/",
+				new ByteArrayOutputStream());
+		prototype.execute();
+		for(int i = 0; i < 2; i++) {
+			OutputStream out = new ByteArrayOutputStream();
+			Hairball forked = prototype.fork();
+			forked.setIO(new StringWordStream("/ID /ID"), new StreamOutput(out));
+			forked.execute();
+			assertEquals("12",out.toString());
+			Hairball forkOfFork = forked.fork();
+			out = new ByteArrayOutputStream();
+			forkOfFork.setIO(new StringWordStream("/ID"), new StreamOutput(out));
+			forkOfFork.execute();
+			assertEquals("3",out.toString());
+		}
+		OutputStream out = new ByteArrayOutputStream();
+		prototype.setInput(new StringWordStream("/ID"));
+		prototype.getParser().getContext().setOutput(new StreamOutput(out));
+		prototype.execute();
+		assertEquals("1",out.toString());
+	}
+	
+	@Test
+	public void testMarkerInForksLeavesPrototypeAlone() throws IOException, HairballException {
+		Hairball prototype = setUp("/: /A a :/ /MARKER CLEAN /: /B b :/",new ByteArrayOutputStream());
+		prototype.execute();
+		for(int i = 0; i < 2; i++) {
+			OutputStream out = new ByteArrayOutputStream();
+			Hairball forked = prototype.fork();
+			forked.setIO(new StringWordStream("/B /: /C c :/ /NEWVOCABULARY TEMP CLEAN /A"), new StreamOutput(out));
+			Dictionary dict = forked.execute().getDictionary();
+			assertEquals("ba",out.toString());
+			assertNull(dict.lookUp(new Word("/B")));
+			assertNull(dict.lookUp(new Word("/C")));
+			assertNull(dict.lookUp(new Word("CLEAN")));
+		}
+		Dictionary dict = prototype.getParser().getContext().getDictionary();
+		assertNotNull(dict.lookUp(new Word("/A")));
+		assertNotNull(dict.lookUp(new Word("/B")));
+		assertNotNull(dict.getCurrent().lookUp(new Word("/B")));
+		assertNotNull(dict.lookUp(new Word("CLEAN")));
+		assertNull(dict.lookUp(new Word("/C")));
+		assertNull(dict.findVocabulary("TEMP"));
+	}
+	
+	@Test
+	public void testForget() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("/: /A a :/ /MARKER CLEAN /: /B b :/ /: /C c :/ /FORGET /C /B /FORGET CLEAN /A",out);
+		ParserContext ctx = uut.execute();
+		assertEquals("ba",out.toString());
+		Dictionary dict = ctx.getDictionary();
+		assertNotNull(dict.lookUp(new Word("/A")));
+		assertNull(dict.lookUp(new Word("/B")));
+		assertNull(dict.lookUp(new Word("/C")));
+		assertNull(dict.lookUp(new Word("CLEAN")));
+	}
+	
+	@Test
+	public void testDictStats() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("/: /A a :/ /DICTSTATS",out);
+		uut.execute();
+		String stats = (String) uut.getParamStack().pop();
+		assertTrue(stats.contains("HAIRBALL: 3 definitions"));
+		assertTrue(stats.contains("(shared built in words)"));
+	}
+
+	@Test
+	public void testRecordAndReplay() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("/VARIABLE /TITLE /\" first \"/ /TITLE /V!",out);
+		uut.execute();
+		uut.setInput(new StringWordStream("<h1> /TITLE /V@ /. </h1> /\" quoted text \"/ /. #3 /DROP done"));
+		Recording recording = uut.record();
+		String recorded = out.toString();
+		assertTrue(recorded.contains("first"));
+		assertTrue(recording.isReplayableOn(uut.getParser().getContext().getDictionary()));
+		
+		OutputStream replayed = new ByteArrayOutputStream();
+		Map<String,Object> bindings = new HashMap<>();
+		bindings.put("/TITLE", "second");
+		uut.replay(recording, new StreamOutput(replayed), bindings);
+		assertEquals(recorded.replace("first", "second"),replayed.toString());
+		assertEquals(0,uut.getParamStack().size());
+	}
+	
+	@Test
+	public void testRecordingWhichDefinesIsNotReplayable() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("/: /A a :/ /A",out);
+		Recording recording = uut.record();
+		assertEquals("a",out.toString());
+		assertFalse(recording.isReplayableOn(uut.getParser().getContext().getDictionary()));
+		try {
+			uut.replay(recording, new StreamOutput(new ByteArrayOutputStream()), new HashMap<>());
+			fail("replayed a recording which changed the dictionary");
+		} catch(HairballException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRegions() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("<ul> /REGION\" toc \"/ </ul> "
+				+ "/TO-REGION\" toc \"/ <li>One</li> /END-REGION <h1>One</h1> "
+				+ "/TO-REGION\" toc \"/ <li>Two</li> /END-REGION <h1>Two</h1>",out);
+		ParserContext ctx = uut.execute();
+		assertEquals("<ul>",out.toString()); // everything after the first region is held back
+		ctx.close();
+		assertEquals("<ul><li>One</li><li>Two</li></ul><h1>One</h1><h1>Two</h1>",out.toString());
+	}
+	
+	@Test
+	public void testRegionInsideItself() throws IOException, HairballException {
+		OutputStream out = new ByteArrayOutputStream();
+		Hairball uut = setUp("/TO-REGION\" a \"/ /REGION\" a \"/",out);
+		try {
+			uut.execute();
+			fail("region was placed inside itself");
+		} catch(HairballException e) {
+			// expected
+		}
+	}
 
 }
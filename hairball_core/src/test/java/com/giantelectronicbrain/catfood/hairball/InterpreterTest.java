@@ -26,8 +26,6 @@ import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 
-import com.giantelectronicbrain.catfood.hairball.WordUtilities.TestPlatform;
-
 /**
  * Test the hairball inner interpreter.
  * 
@@ -47,7 +45,6 @@ public class InterpreterTest {
 	
 	@Before
 	public void setUp() {
-		Hairball.PLATFORM = new TestPlatform();
 		lastExecuted = -1;
 		this.uut = new Interpreter();
 		
@@ -179,5 +176,29 @@ public class InterpreterTest {
 		assertEquals(previous,uut.currentContext());
 	}
 	
+	@Test
+	public void testTokenLimitStopsRunawayLoop() {
+		InterpreterToken spin = new InterpreterToken("spin");
+		spin.add(firstToken);
+		spin.add(new NativeToken("again",(interp) -> { interp.setIp(0); return true; }));
+		uut.setTokenLimit(1000);
+		try {
+			uut.execute(spin);
+			fail("runaway loop was not stopped");
+		} catch(HairballException e) {
+			assertEquals(1001,uut.getTokensExecuted());
+		}
+	}
+	
+	@Test
+	public void testSliceCallsYieldHandler() throws HairballException {
+		List<Long> yields = new ArrayList<>();
+		uut.setSlice(2, (interp) -> yields.add(interp.getTokensExecuted()));
+		uut.start(context);
+		assertEquals(3,lastExecuted);
+		assertEquals(3,uut.getTokensExecuted());
+		assertEquals(1,yields.size());
+		assertEquals(Long.valueOf(2),yields.get(0));
+	}
 	
 }
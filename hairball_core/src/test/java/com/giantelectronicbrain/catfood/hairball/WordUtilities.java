@@ -58,7 +58,6 @@ public class WordUtilities {
 	 */
 	public static Hairball setUp(String inputData, OutputStream out) {
 		TestPlatform tp = new TestPlatform();
-		Hairball.PLATFORM = tp;
 		Output output = new StreamOutput(out);
 		IWordStream input = new StringWordStream(inputData);
 		return new Hairball(tp, input, output);